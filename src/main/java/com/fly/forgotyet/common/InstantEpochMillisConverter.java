@@ -0,0 +1,22 @@
+package com.fly.forgotyet.common;
+
+import javax.persistence.AttributeConverter;
+import javax.persistence.Converter;
+import java.time.Instant;
+
+/**
+ * Instant <-> BIGINT 毫秒时间戳：8 字节定长，比较 / 排序 / 建索引都是整数运算，读写不再过时区换算
+ */
+@Converter
+public class InstantEpochMillisConverter implements AttributeConverter<Instant, Long> {
+
+    @Override
+    public Long convertToDatabaseColumn(Instant attribute) {
+        return attribute == null ? null : attribute.toEpochMilli();
+    }
+
+    @Override
+    public Instant convertToEntityAttribute(Long dbData) {
+        return dbData == null ? null : Instant.ofEpochMilli(dbData);
+    }
+}
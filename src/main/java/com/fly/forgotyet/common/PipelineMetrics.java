@@ -0,0 +1,104 @@
+package com.fly.forgotyet.common;
+
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Tags;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import lombok.RequiredArgsConstructor;
+import org.springframework.stereotype.Component;
+
+import java.util.concurrent.TimeUnit;
+import java.util.function.ToDoubleFunction;
+
+/**
+ * 提醒链路的 Micrometer 指标，统一在这里起名和打标签，业务代码只管调用。
+ * 全部以 forgotyet. 开头，经 /actuator/prometheus 暴露；标签只用低基数的值（模型、阶段、bucket、结果），不带用户和事件 id
+ * 各服务自己的 stats() 仍然保留，给管理接口看明细；这里给容量规划和 SLO 告警用
+ */
+@Component
+@RequiredArgsConstructor
+public class PipelineMetrics {
+
+    public static final String OK = "success";
+    public static final String FAIL = "failure";
+
+    private final MeterRegistry registry;
+
+    /**
+     * 测试和离线工具用：指标写进内存，不暴露
+     */
+    public static PipelineMetrics noop() {
+        return new PipelineMetrics(new SimpleMeterRegistry());
+    }
+
+    // ================== LLM ==================
+
+    public void llmCall(String operation, String provider, long nanos, boolean ok) {
+        registry.timer("forgotyet.llm.latency", Tags.of("operation", operation, "provider", provider, "outcome", outcome(ok)))
+                .record(nanos, TimeUnit.NANOSECONDS);
+    }
+
+    public void llmFailover(String operation) {
+        registry.counter("forgotyet.llm.failover", "operation", operation).increment();
+    }
+
+    /**
+     * 我们自己的截止预算用完（reason=deadline）或调用线程池满（reason=rejected）：不是供应商的错，不进 latency / failover
+     */
+    public void llmBudgetExpired(String operation, String provider, String reason) {
+        registry.counter("forgotyet.llm.budget.expired", "operation", operation, "provider", provider, "reason", reason).increment();
+    }
+
+    public void llmTokens(String operation, String model, long prompt, long completion, long cached) {
+        registry.counter("forgotyet.llm.tokens", "operation", operation, "model", model, "type", "prompt").increment(prompt);
+        registry.counter("forgotyet.llm.tokens", "operation", operation, "model", model, "type", "completion").increment(completion);
+        registry.counter("forgotyet.llm.tokens", "operation", operation, "model", model, "type", "cached").increment(cached);
+    }
+
+    // ================== 收录 ==================
+
+    public void stage(String stage, long millis) {
+        registry.timer("forgotyet.intake.stage", "stage", stage).record(millis, TimeUnit.MILLISECONDS);
+    }
+
+    // ================== 调度 / 投递 ==================
+
+    /**
+     * 实际触发时间 - triggerTime；补发的单独打标签，不拉高准点触发的分位数
+     */
+    public void fireLag(String bucket, boolean catchUp, long millis) {
+        registry.timer("forgotyet.scheduler.fire.lag", "bucket", bucket, "catchUp", String.valueOf(catchUp))
+                .record(Math.max(0, millis), TimeUnit.MILLISECONDS);
+    }
+
+    public void cancellation(String source) {
+        registry.counter("forgotyet.scheduler.cancellations", "source", source).increment();
+    }
+
+    public void emailSend(long nanos, boolean ok) {
+        registry.timer("forgotyet.email.send", "outcome", outcome(ok)).record(nanos, TimeUnit.NANOSECONDS);
+        if (!ok) {
+            registry.counter("forgotyet.email.failures").increment();
+        }
+    }
+
+    // ================== 入口 ==================
+
+    public void asr(long nanos, boolean ok) {
+        registry.timer("forgotyet.asr.latency", "outcome", outcome(ok)).record(nanos, TimeUnit.NANOSECONDS);
+    }
+
+    public void rateLimited(String limit) {
+        registry.counter("forgotyet.ratelimit.rejected", "limit", limit).increment();
+    }
+
+    /**
+     * 抓取时才求值；obj 由调用方持有强引用（Micrometer 对 gauge 对象是弱引用）
+     */
+    public <T> void gauge(String name, T obj, ToDoubleFunction<T> fn) {
+        registry.gauge(name, Tags.empty(), obj, fn);
+    }
+
+    private static String outcome(boolean ok) {
+        return ok ? OK : FAIL;
+    }
+}
@@ -0,0 +1,81 @@
+package com.fly.forgotyet.common;
+
+import cn.hutool.crypto.SecureUtil;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+/**
+ * 预编译的 Prompt 模板：加载配置时切成“字面量 + 占位符”，每次调用只做拼接，不再整段 replace。
+ * - 占位符形如 {currentTime} / {raw_input}；JSON 示例里的花括号不受影响
+ * - 没有占位符的模板每次返回同一个字符串，前缀逐字节稳定，供应商侧的前缀缓存才能命中
+ * - version 取模板内容的哈希，改了 Prompt 就是新版本，用量按版本分开统计
+ */
+public class PromptTemplate {
+
+    private static final Pattern VAR = Pattern.compile("\\{([A-Za-z_][A-Za-z0-9_]*)}");
+
+    private final String text;
+    private final String[] literals; // 比占位符多一段
+    private final String[] names;
+    private final String version;
+
+    private PromptTemplate(String text, String[] literals, String[] names) {
+        this.text = text;
+        this.literals = literals;
+        this.names = names;
+        this.version = SecureUtil.sha256(text).substring(0, 8);
+    }
+
+    public static PromptTemplate compile(String text) {
+        String t = text == null ? "" : text;
+        List<String> literals = new ArrayList<>();
+        List<String> names = new ArrayList<>();
+        Matcher m = VAR.matcher(t);
+        int last = 0;
+        while (m.find()) {
+            literals.add(t.substring(last, m.start()));
+            names.add(m.group(1));
+            last = m.end();
+        }
+        literals.add(t.substring(last));
+        return new PromptTemplate(t, literals.toArray(new String[0]), names.toArray(new String[0]));
+    }
+
+    /**
+     * 缺的变量原样保留占位符，方便在日志里一眼看出来
+     */
+    public String render(Map<String, String> vars) {
+        if (names.length == 0) {
+            return text;
+        }
+        StringBuilder sb = new StringBuilder(text.length() + 64);
+        for (int i = 0; i < names.length; i++) {
+            sb.append(literals[i]);
+            String v = vars.get(names[i]);
+            sb.append(v != null ? v : "{" + names[i] + "}");
+        }
+        sb.append(literals[names.length]);
+        return sb.toString();
+    }
+
+    public boolean uses(String name) {
+        for (String n : names) {
+            if (n.equals(name)) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    public boolean isStatic() {
+        return names.length == 0;
+    }
+
+    public String getVersion() {
+        return version;
+    }
+}
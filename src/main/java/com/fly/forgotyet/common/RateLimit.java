@@ -0,0 +1,53 @@
+package com.fly.forgotyet.common;
+
+import java.lang.annotation.Documented;
+import java.lang.annotation.ElementType;
+import java.lang.annotation.Repeatable;
+import java.lang.annotation.Retention;
+import java.lang.annotation.RetentionPolicy;
+import java.lang.annotation.Target;
+
+/**
+ * 声明式限流：标在 Controller 方法上，由 RateLimitInterceptor 统一拦截
+ * 可以叠加多条（例如：同一邮箱每分钟 1 次 + 同一 IP 每分钟 5 次），任意一条超限即拒绝
+ */
+@Documented
+@Target(ElementType.METHOD)
+@Retention(RetentionPolicy.RUNTIME)
+@Repeatable(RateLimit.List.class)
+public @interface RateLimit {
+
+    /** 桶的命名空间，不同接口互不影响 */
+    String name();
+
+    /** 桶容量（允许的瞬时突发） */
+    int capacity();
+
+    /** 每分钟补充的令牌数（长期平均速率） */
+    int refillPerMinute();
+
+    /** 按什么维度限流 */
+    KeyType key() default KeyType.IP;
+
+    /** key=PARAM 时取哪个请求参数 */
+    String param() default "";
+
+    /** 超限时返回给用户的提示 */
+    String message() default "请求太频繁，请稍后再试";
+
+    enum KeyType {
+        /** 客户端真实 IP（考虑 Nginx 代理） */
+        IP,
+        /** 登录用户（Token 里的邮箱），未登录退回 IP */
+        USER,
+        /** 指定请求参数（邮箱/手机号），缺失退回 IP */
+        PARAM
+    }
+
+    @Documented
+    @Target(ElementType.METHOD)
+    @Retention(RetentionPolicy.RUNTIME)
+    @interface List {
+        RateLimit[] value();
+    }
+}
@@ -0,0 +1,97 @@
+package com.fly.forgotyet.common;
+
+import java.util.concurrent.atomic.AtomicLongArray;
+
+/**
+ * 滚动布隆过滤器：两代位图，每过一个窗口把老的一代清空变成新的一代。
+ * - 查询看两代，所以一个元素至少能被记住一个窗口、至多两个窗口
+ * - 位图用 AtomicLongArray，置位是 CAS，读写都不加锁
+ * 只回答“肯定没有 / 可能有”，“可能有”的还得回库确认
+ */
+public class RotatingBloomFilter {
+
+    private final int bits;
+    private final int hashes;
+    private final long windowMillis;
+
+    private volatile AtomicLongArray current;
+    private volatile AtomicLongArray previous;
+    private volatile long currentSince;
+
+    /**
+     * @param expectedPerWindow 一个窗口内预计写入的元素数
+     * @param fpp               期望误判率
+     */
+    public RotatingBloomFilter(int expectedPerWindow, double fpp, long windowMillis) {
+        int n = Math.max(1, expectedPerWindow);
+        double p = Math.min(0.5, Math.max(1e-6, fpp));
+        // m = -n ln p / (ln2)^2，k = m/n ln2
+        long m = (long) Math.ceil(-n * Math.log(p) / (Math.log(2) * Math.log(2)));
+        this.bits = (int) Math.min(Integer.MAX_VALUE - 63, Math.max(64, m));
+        this.hashes = Math.max(1, (int) Math.round((double) bits / n * Math.log(2)));
+        this.windowMillis = windowMillis;
+        this.current = new AtomicLongArray((bits + 63) / 64);
+        this.previous = new AtomicLongArray((bits + 63) / 64);
+        this.currentSince = System.currentTimeMillis();
+    }
+
+    public void put(long hash64) {
+        rotateIfDue();
+        AtomicLongArray words = current;
+        int h1 = (int) hash64;
+        int h2 = (int) (hash64 >>> 32);
+        for (int i = 0; i < hashes; i++) {
+            int bit = index(h1 + i * h2);
+            int w = bit >>> 6;
+            long mask = 1L << bit;
+            long old;
+            do {
+                old = words.get(w);
+                if ((old & mask) != 0) {
+                    break;
+                }
+            } while (!words.compareAndSet(w, old, old | mask));
+        }
+    }
+
+    public boolean mightContain(long hash64) {
+        rotateIfDue();
+        return contains(current, hash64) || contains(previous, hash64);
+    }
+
+    public int sizeInBytes() {
+        return ((bits + 63) / 64) * 8 * 2;
+    }
+
+    private boolean contains(AtomicLongArray words, long hash64) {
+        int h1 = (int) hash64;
+        int h2 = (int) (hash64 >>> 32);
+        for (int i = 0; i < hashes; i++) {
+            int bit = index(h1 + i * h2);
+            if ((words.get(bit >>> 6) & (1L << bit)) == 0) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    private int index(int combined) {
+        return (combined & Integer.MAX_VALUE) % bits;
+    }
+
+    private void rotateIfDue() {
+        long now = System.currentTimeMillis();
+        if (now - currentSince < windowMillis) {
+            return;
+        }
+        synchronized (this) {
+            if (now - currentSince < windowMillis) {
+                return;
+            }
+            // 超过两个窗口没人用：两代都已过期
+            previous = now - currentSince >= 2 * windowMillis ? new AtomicLongArray(current.length()) : current;
+            current = new AtomicLongArray(previous.length());
+            currentSince = now;
+        }
+    }
+}
@@ -0,0 +1,64 @@
+package com.fly.forgotyet.common;
+
+import lombok.RequiredArgsConstructor;
+import org.springframework.stereotype.Component;
+
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * 分阶段耗时：排队 / 认领 / LLM 解析 / 计划 / 落库 各记一份次数、总耗时、最大值
+ * 只做累加，不存明细；看慢在哪一段用。同一份数据也记到 forgotyet.intake.stage，分位数看 Prometheus
+ */
+@Component
+@RequiredArgsConstructor
+public class StageTimer {
+
+    private final PipelineMetrics metrics;
+
+    private final Map<String, Stage> stages = new ConcurrentHashMap<>();
+
+    public void record(String stage, long millis) {
+        long ms = Math.max(0, millis);
+        stages.computeIfAbsent(stage, k -> new Stage()).add(ms);
+        metrics.stage(stage, ms);
+    }
+
+    /**
+     * 从 startNanos 到现在，返回新的起点，方便一段接一段地记
+     */
+    public long lap(String stage, long startNanos) {
+        long now = System.nanoTime();
+        record(stage, (now - startNanos) / 1_000_000);
+        Tracer.span(stage, startNanos, now); // 当前线程有 trace 的话顺带记一个 span
+        return now;
+    }
+
+    public Map<String, Object> snapshot() {
+        Map<String, Object> m = new LinkedHashMap<>();
+        stages.forEach((name, s) -> {
+            long count = s.count.sum();
+            Map<String, Object> one = new LinkedHashMap<>();
+            one.put("count", count);
+            one.put("avgMs", count == 0 ? 0 : s.totalMs.sum() / count);
+            one.put("maxMs", s.maxMs.get());
+            m.put(name, one);
+        });
+        return m;
+    }
+
+    private static class Stage {
+        final LongAdder count = new LongAdder();
+        final LongAdder totalMs = new LongAdder();
+        final AtomicLong maxMs = new AtomicLong();
+
+        void add(long ms) {
+            count.increment();
+            totalMs.add(ms);
+            maxMs.accumulateAndGet(ms, Math::max);
+        }
+    }
+}
@@ -0,0 +1,203 @@
+package com.fly.forgotyet.common;
+
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Component;
+
+import java.time.Clock;
+import java.util.Iterator;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * 无锁令牌桶限流器
+ * - 每个桶的状态打包进一个 AtomicLong：高 40 位 = 上次补充时间(ms)，低 24 位 = 剩余令牌(千分之一个)
+ *   取令牌/补令牌都是一次 CAS，同一个 key 的并发请求不会像 get-then-put 那样漏过去
+ * - 桶按 key 哈希分散到多个分段 Map，每段有容量上限，后台定时清掉已补满的空闲桶
+ */
+@Slf4j
+@Component
+public class TokenBucketRateLimiter {
+
+    private static final int TOKEN_BITS = 24;
+    private static final long TOKEN_MASK = (1L << TOKEN_BITS) - 1;
+    private static final long ONE_TOKEN = 1000;
+
+    // 单桶容量上限：低 24 位能表示的令牌数
+    public static final int MAX_CAPACITY = (int) (TOKEN_MASK / ONE_TOKEN);
+
+    private static final int STRIPES = 16;
+    private static final int DEFAULT_MAX_KEYS = 100_000;
+
+    private final Clock clock;
+    private final long epochBase;
+    private final int maxKeysPerStripe;
+
+    @SuppressWarnings("unchecked")
+    private final Map<String, Bucket>[] stripes = new Map[STRIPES];
+
+    @Autowired
+    public TokenBucketRateLimiter(Clock clock) {
+        this(clock, DEFAULT_MAX_KEYS);
+    }
+
+    public TokenBucketRateLimiter(Clock clock, int maxKeys) {
+        this.clock = clock;
+        this.epochBase = clock.millis();
+        this.maxKeysPerStripe = Math.max(1, maxKeys / STRIPES);
+        for (int i = 0; i < STRIPES; i++) {
+            stripes[i] = new ConcurrentHashMap<>();
+        }
+    }
+
+    /**
+     * 尝试取一个令牌
+     *
+     * @return 0 表示放行；大于 0 表示被拒绝，值为距离下一个令牌的毫秒数（用于 Retry-After）
+     */
+    public long tryAcquire(String name, String key, int capacity, int refillPerMinute) {
+        long now = now();
+        return bucket(name, key, capacity, refillPerMinute, now).tryAcquire(now);
+    }
+
+    /**
+     * 归还一个令牌（例如请求命中缓存、未真正消耗下游资源）
+     */
+    public void refund(String name, String key) {
+        String k = name + '\u0000' + key;
+        Bucket b = stripe(k).get(k);
+        if (b != null) {
+            b.refund();
+        }
+    }
+
+    /**
+     * 后台清理：令牌已补满的桶和新建的桶没有区别，直接丢掉
+     */
+    @Scheduled(fixedDelay = 60_000)
+    public void evictIdle() {
+        long now = now();
+        int removed = 0;
+        for (Map<String, Bucket> stripe : stripes) {
+            removed += evictIdle(stripe, now);
+        }
+        if (removed > 0) {
+            log.debug("🧹 限流桶清理: 移除 {} 个空闲桶，剩余 {}", removed, size());
+        }
+    }
+
+    public int size() {
+        int n = 0;
+        for (Map<String, Bucket> stripe : stripes) {
+            n += stripe.size();
+        }
+        return n;
+    }
+
+    private Bucket bucket(String name, String key, int capacity, int refillPerMinute, long now) {
+        String k = name + '\u0000' + key;
+        Map<String, Bucket> stripe = stripe(k);
+        Bucket b = stripe.get(k);
+        if (b != null) {
+            return b;
+        }
+        if (stripe.size() >= maxKeysPerStripe) {
+            makeRoom(stripe, now);
+        }
+        return stripe.computeIfAbsent(k, x -> new Bucket(capacity, refillPerMinute, now));
+    }
+
+    private void makeRoom(Map<String, Bucket> stripe, long now) {
+        if (evictIdle(stripe, now) > 0) {
+            return;
+        }
+        // 全都不空闲：淘汰任意一个，保证内存有界（被淘汰的 key 相当于拿到一个新桶）
+        Iterator<String> it = stripe.keySet().iterator();
+        if (it.hasNext()) {
+            it.next();
+            it.remove();
+        }
+    }
+
+    private int evictIdle(Map<String, Bucket> stripe, long now) {
+        int removed = 0;
+        for (Iterator<Bucket> it = stripe.values().iterator(); it.hasNext(); ) {
+            if (it.next().isFull(now)) {
+                it.remove();
+                removed++;
+            }
+        }
+        return removed;
+    }
+
+    private Map<String, Bucket> stripe(String k) {
+        int h = k.hashCode();
+        h ^= (h >>> 16);
+        return stripes[h & (STRIPES - 1)];
+    }
+
+    private long now() {
+        return clock.millis() - epochBase;
+    }
+
+    static final class Bucket {
+        private final long capacity;       // 单位：千分之一令牌
+        private final int refillPerMinute;
+        private final AtomicLong state;
+
+        Bucket(int capacity, int refillPerMinute, long now) {
+            if (capacity <= 0 || capacity > MAX_CAPACITY || refillPerMinute <= 0) {
+                throw new IllegalArgumentException("invalid bucket: capacity=" + capacity + ", refill=" + refillPerMinute);
+            }
+            this.capacity = capacity * ONE_TOKEN;
+            this.refillPerMinute = refillPerMinute;
+            this.state = new AtomicLong(pack(now, this.capacity));
+        }
+
+        long tryAcquire(long now) {
+            for (;;) {
+                long s = state.get();
+                long last = s >>> TOKEN_BITS;
+                long t = Math.max(now, last); // 时钟回拨时不倒退
+                long available = refilled(s, t);
+
+                if (available < ONE_TOKEN) {
+                    // 还差多少毫秒攒够 1 个令牌
+                    return Math.max(1, ((ONE_TOKEN - available) * 60 + refillPerMinute - 1) / refillPerMinute);
+                }
+                if (state.compareAndSet(s, pack(t, available - ONE_TOKEN))) {
+                    return 0;
+                }
+            }
+        }
+
+        void refund() {
+            for (;;) {
+                long s = state.get();
+                long tokens = Math.min(capacity, (s & TOKEN_MASK) + ONE_TOKEN);
+                if (state.compareAndSet(s, pack(s >>> TOKEN_BITS, tokens))) {
+                    return;
+                }
+            }
+        }
+
+        boolean isFull(long now) {
+            long s = state.get();
+            return refilled(s, Math.max(now, s >>> TOKEN_BITS)) >= capacity;
+        }
+
+        private long refilled(long s, long t) {
+            long elapsed = t - (s >>> TOKEN_BITS);
+            long tokens = s & TOKEN_MASK;
+            // refillPerMinute 个/分钟 = refillPerMinute * 1000 千分令牌 / 60000ms
+            long gained = elapsed >= capacity * 60 ? capacity : elapsed * refillPerMinute / 60;
+            return Math.min(capacity, tokens + gained);
+        }
+
+        private static long pack(long time, long tokens) {
+            return (time << TOKEN_BITS) | tokens;
+        }
+    }
+}
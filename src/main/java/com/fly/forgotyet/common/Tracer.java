@@ -0,0 +1,214 @@
+package com.fly.forgotyet.common;
+
+import org.slf4j.MDC;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicReferenceArray;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * 轻量链路追踪：一次收录解析 / 一次补时间 / 一次触发 是一条 trace，里面按阶段记 span（相对起点的偏移 + 耗时）。
+ * - 当前 trace 放在 ThreadLocal，业务代码用静态的 {@link #lap} / {@link #tag} 记，不用层层传参；没有 trace 时什么都不做
+ * - traceId 写进 MDC，同一条链路的日志能串起来
+ * - 总耗时超过阈值的才留下，写进无锁环形缓冲（AtomicReferenceArray + 游标取模），满了覆盖最老的；管理接口按耗时倒序看
+ * - 采样关掉（enabled=false）时 begin 直接返回空 scope，不分配、不碰 MDC；没采中的只有 MDC，不记 span
+ */
+@Component
+public class Tracer {
+
+    public static final String MDC_KEY = "traceId";
+    private static final int MAX_SPANS = 64;
+
+    private static final ThreadLocal<Trace> CURRENT = new ThreadLocal<>();
+    private static final Scope NOOP = () -> { };
+
+    private final boolean enabled;
+    private final double sampleRate;
+    private final long slowThresholdNanos;
+    private final AtomicReferenceArray<Map<String, Object>> ring;
+    private final int mask;
+    private final AtomicLong cursor = new AtomicLong();
+
+    private final LongAdder started = new LongAdder();
+    private final LongAdder sampled = new LongAdder();
+    private final LongAdder kept = new LongAdder();
+
+    public Tracer(@Value("${tracing.enabled:true}") boolean enabled,
+                  @Value("${tracing.sample-rate:1.0}") double sampleRate,
+                  @Value("${tracing.slow-threshold-ms:1000}") long slowThresholdMs,
+                  @Value("${tracing.capacity:128}") int capacity) {
+        this.enabled = enabled;
+        this.sampleRate = sampleRate;
+        this.slowThresholdNanos = slowThresholdMs * 1_000_000;
+        int size = Integer.highestOneBit(Math.max(2, capacity) * 2 - 1); // 向上取 2 的幂，取模变成按位与
+        this.ring = new AtomicReferenceArray<>(size);
+        this.mask = size - 1;
+    }
+
+    /**
+     * 开始一条 trace；用 try-with-resources 包住整段链路
+     *
+     * @param subject 关联的业务 id（事件 id），不要放邮箱等个人信息
+     */
+    public Scope begin(String operation, Object subject) {
+        if (!enabled) {
+            return NOOP;
+        }
+        started.increment();
+        String traceId = Long.toHexString(ThreadLocalRandom.current().nextLong() >>> 16);
+        String previousMdc = MDC.get(MDC_KEY);
+        MDC.put(MDC_KEY, traceId);
+        if (sampleRate < 1.0 && ThreadLocalRandom.current().nextDouble() >= sampleRate) {
+            return () -> restoreMdc(previousMdc);
+        }
+        sampled.increment();
+        Trace trace = new Trace(traceId, operation, subject, CURRENT.get(), previousMdc);
+        CURRENT.set(trace);
+        return trace;
+    }
+
+    /**
+     * 记一段从 startNanos 到现在的 span，返回现在，方便一段接一段地记（和 StageTimer.lap 一个用法）
+     */
+    public static long lap(String name, long startNanos) {
+        long now = System.nanoTime();
+        span(name, startNanos, now);
+        return now;
+    }
+
+    public static void span(String name, long startNanos, long endNanos) {
+        Trace t = CURRENT.get();
+        if (t != null && t.spans.size() < MAX_SPANS) {
+            t.spans.add(new Span(name, startNanos, endNanos));
+        }
+    }
+
+    public static void tag(String key, Object value) {
+        Trace t = CURRENT.get();
+        if (t != null) {
+            t.tags.put(key, value);
+        }
+    }
+
+    /**
+     * 最慢的若干条（缓冲里都是超过阈值的近期 trace）
+     */
+    public List<Map<String, Object>> slowest(int limit) {
+        List<Map<String, Object>> all = new ArrayList<>(ring.length());
+        for (int i = 0; i < ring.length(); i++) {
+            Map<String, Object> r = ring.get(i);
+            if (r != null) {
+                all.add(r);
+            }
+        }
+        all.sort(Comparator.comparingLong((Map<String, Object> r) -> (Long) r.get("totalMs")).reversed());
+        return all.subList(0, Math.min(Math.max(0, limit), all.size()));
+    }
+
+    public Map<String, Object> stats() {
+        Map<String, Object> m = new LinkedHashMap<>();
+        m.put("enabled", enabled);
+        m.put("sampleRate", sampleRate);
+        m.put("slowThresholdMs", slowThresholdNanos / 1_000_000);
+        m.put("capacity", ring.length());
+        m.put("started", started.sum());
+        m.put("sampled", sampled.sum());
+        m.put("kept", kept.sum());
+        return m;
+    }
+
+    private void offer(Map<String, Object> record) {
+        kept.increment();
+        ring.set((int) (cursor.getAndIncrement() & mask), record);
+    }
+
+    private static void restoreMdc(String previous) {
+        if (previous == null) {
+            MDC.remove(MDC_KEY);
+        } else {
+            MDC.put(MDC_KEY, previous);
+        }
+    }
+
+    public interface Scope extends AutoCloseable {
+        @Override
+        void close();
+    }
+
+    private static class Span {
+        final String name;
+        final long startNanos;
+        final long endNanos;
+
+        Span(String name, long startNanos, long endNanos) {
+            this.name = name;
+            this.startNanos = startNanos;
+            this.endNanos = endNanos;
+        }
+    }
+
+    private class Trace implements Scope {
+        final String traceId;
+        final String operation;
+        final Object subject;
+        final Trace parent;
+        final String previousMdc;
+        final Instant startedAt = Instant.now();
+        final long startNanos = System.nanoTime();
+        final List<Span> spans = new ArrayList<>();
+        final Map<String, Object> tags = new LinkedHashMap<>();
+
+        Trace(String traceId, String operation, Object subject, Trace parent, String previousMdc) {
+            this.traceId = traceId;
+            this.operation = operation;
+            this.subject = subject;
+            this.parent = parent;
+            this.previousMdc = previousMdc;
+        }
+
+        @Override
+        public void close() {
+            long total = System.nanoTime() - startNanos;
+            if (parent == null) {
+                CURRENT.remove();
+            } else {
+                CURRENT.set(parent);
+            }
+            restoreMdc(previousMdc);
+            if (total >= slowThresholdNanos) {
+                offer(toRecord(total));
+            }
+        }
+
+        // 只有要留下的才转成 Map，快的 trace 不多花这一份
+        Map<String, Object> toRecord(long totalNanos) {
+            Map<String, Object> m = new LinkedHashMap<>();
+            m.put("traceId", traceId);
+            m.put("operation", operation);
+            m.put("subject", subject);
+            m.put("thread", Thread.currentThread().getName());
+            m.put("startedAt", startedAt.toString());
+            m.put("totalMs", totalNanos / 1_000_000);
+            m.put("tags", tags);
+            List<Map<String, Object>> list = new ArrayList<>(spans.size());
+            for (Span s : spans) {
+                Map<String, Object> one = new LinkedHashMap<>();
+                one.put("name", s.name);
+                one.put("atMs", (s.startNanos - startNanos) / 1_000_000);
+                one.put("ms", (s.endNanos - s.startNanos) / 1_000_000);
+                list.add(one);
+            }
+            m.put("spans", list);
+            return m;
+        }
+    }
+}
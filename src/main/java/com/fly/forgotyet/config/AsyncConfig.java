@@ -0,0 +1,137 @@
+package com.fly.forgotyet.config;
+
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.aop.interceptor.AsyncUncaughtExceptionHandler;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+import org.springframework.scheduling.annotation.AsyncConfigurer;
+import org.springframework.scheduling.concurrent.ThreadPoolTaskExecutor;
+
+import java.util.concurrent.Executor;
+import java.util.concurrent.ThreadPoolExecutor;
+
+/**
+ * 线程池统一在这里配：Spring 默认的异步线程池队列是无界的，突发流量下只会越堆越多。
+ * - eventExecutor：事件解析专用，线程数 = intake.workers，队列有界，满了直接拒绝（行还在库里，轮询会再捡起来）
+ * - triggerExecutor：提醒到点后的投递（文案 + 发信），不占调度线程，认领续约和其他定时任务不被拖住
+ * - voiceUploadExecutor：读语音上传体（最多 2MB，弱网下很慢），请求线程在控制器返回后就归还
+ * - llmCallExecutor：安抚文案的模型调用，调用方按截止时间等结果；不排队，线程占满就直接拒绝（调用方兜底）
+ * - reminderMailExecutor：提醒邮件（@Async("reminderMailExecutor")），满了直接拒绝，触发链路回退后由补发重投
+ * - 其他 @Async（验证码邮件等）：有界队列，满了由调用线程自己执行，天然限速
+ */
+@Slf4j
+@Configuration
+public class AsyncConfig implements AsyncConfigurer {
+
+    @Value("${async.core-size:2}")
+    private int asyncCoreSize;
+
+    @Value("${async.max-size:8}")
+    private int asyncMaxSize;
+
+    @Value("${async.queue-capacity:200}")
+    private int asyncQueueCapacity;
+
+    @Bean
+    public ThreadPoolTaskExecutor eventExecutor(@Value("${intake.workers:4}") int workers,
+                                                @Value("${intake.queue-capacity:64}") int queueCapacity) {
+        ThreadPoolTaskExecutor executor = new ThreadPoolTaskExecutor();
+        executor.setCorePoolSize(Math.max(1, workers));
+        executor.setMaxPoolSize(Math.max(1, workers));
+        executor.setQueueCapacity(Math.max(1, queueCapacity));
+        executor.setThreadNamePrefix("fy-event-");
+        executor.setDaemon(true);
+        executor.setRejectedExecutionHandler(new ThreadPoolExecutor.AbortPolicy());
+        // 停机不等在途解析：租约过期后由其他节点 / 重启后的自己接着做
+        executor.setWaitForTasksToCompleteOnShutdown(false);
+        executor.initialize();
+        return executor;
+    }
+
+    @Bean
+    public ThreadPoolTaskExecutor triggerExecutor(SchedulerProperties props) {
+        ThreadPoolTaskExecutor executor = new ThreadPoolTaskExecutor();
+        executor.setCorePoolSize(Math.max(1, props.getFireThreads()));
+        executor.setMaxPoolSize(Math.max(1, props.getFireThreads()));
+        executor.setQueueCapacity(Math.max(1, props.getFireQueueCapacity()));
+        executor.setThreadNamePrefix("fy-fire-");
+        executor.setDaemon(true);
+        executor.setRejectedExecutionHandler(new ThreadPoolExecutor.AbortPolicy());
+        // 停机不等在途投递：没发完的行停在 SENDING，租约过期后由补发扫描放回 SILENT
+        executor.setWaitForTasksToCompleteOnShutdown(false);
+        executor.initialize();
+        return executor;
+    }
+
+    @Bean
+    public ThreadPoolTaskExecutor voiceUploadExecutor(@Value("${voice.upload-threads:8}") int threads,
+                                                      @Value("${voice.upload-queue-capacity:32}") int queueCapacity) {
+        ThreadPoolTaskExecutor executor = new ThreadPoolTaskExecutor();
+        executor.setCorePoolSize(Math.max(1, threads));
+        executor.setMaxPoolSize(Math.max(1, threads));
+        executor.setQueueCapacity(Math.max(1, queueCapacity));
+        executor.setThreadNamePrefix("fy-upload-");
+        executor.setDaemon(true);
+        executor.setRejectedExecutionHandler(new ThreadPoolExecutor.AbortPolicy());
+        executor.setWaitForTasksToCompleteOnShutdown(false);
+        executor.initialize();
+        return executor;
+    }
+
+    @Bean
+    public ThreadPoolTaskExecutor llmCallExecutor(@Value("${llm.soother-threads:8}") int threads) {
+        ThreadPoolTaskExecutor executor = new ThreadPoolTaskExecutor();
+        executor.setCorePoolSize(Math.max(1, threads));
+        executor.setMaxPoolSize(Math.max(1, threads));
+        executor.setQueueCapacity(0); // 不排队：排在后面的等到了也过了截止时间
+        executor.setThreadNamePrefix("fy-llm-");
+        executor.setDaemon(true);
+        executor.setRejectedExecutionHandler(new ThreadPoolExecutor.AbortPolicy());
+        executor.setWaitForTasksToCompleteOnShutdown(false);
+        executor.initialize();
+        return executor;
+    }
+
+    /**
+     * 注册成 Bean：停机时由容器关闭，waitForTasksToCompleteOnShutdown 才生效
+     */
+    @Bean
+    public ThreadPoolTaskExecutor asyncExecutor() {
+        ThreadPoolTaskExecutor executor = new ThreadPoolTaskExecutor();
+        executor.setCorePoolSize(Math.max(1, asyncCoreSize));
+        executor.setMaxPoolSize(Math.max(asyncCoreSize, asyncMaxSize));
+        executor.setQueueCapacity(Math.max(1, asyncQueueCapacity));
+        executor.setThreadNamePrefix("fy-async-");
+        executor.setRejectedExecutionHandler(new ThreadPoolExecutor.CallerRunsPolicy());
+        executor.setWaitForTasksToCompleteOnShutdown(true);
+        executor.setAwaitTerminationSeconds(10);
+        return executor;
+    }
+
+    /**
+     * 提醒邮件专用：和 asyncExecutor 同样的规格，但满了直接拒绝，不在触发线程上同步跑 SMTP，由调度侧回退重投
+     */
+    @Bean
+    public ThreadPoolTaskExecutor reminderMailExecutor() {
+        ThreadPoolTaskExecutor executor = new ThreadPoolTaskExecutor();
+        executor.setCorePoolSize(Math.max(1, asyncCoreSize));
+        executor.setMaxPoolSize(Math.max(asyncCoreSize, asyncMaxSize));
+        executor.setQueueCapacity(Math.max(1, asyncQueueCapacity));
+        executor.setThreadNamePrefix("fy-mail-");
+        executor.setRejectedExecutionHandler(new ThreadPoolExecutor.AbortPolicy());
+        executor.setWaitForTasksToCompleteOnShutdown(true);
+        executor.setAwaitTerminationSeconds(10);
+        return executor;
+    }
+
+    @Override
+    public Executor getAsyncExecutor() {
+        return asyncExecutor();
+    }
+
+    @Override
+    public AsyncUncaughtExceptionHandler getAsyncUncaughtExceptionHandler() {
+        return (ex, method, params) -> log.error("❌ 异步任务异常: {}", method.getName(), ex);
+    }
+}
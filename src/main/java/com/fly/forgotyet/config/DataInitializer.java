@@ -1,12 +1,18 @@
 package com.fly.forgotyet.config;
 
+import com.fly.forgotyet.common.PromptTemplate;
 import com.fly.forgotyet.entity.AppConfig;
 import com.fly.forgotyet.repository.AppConfigRepository;
 import com.fly.forgotyet.service.ConfigService;
+import com.fly.forgotyet.service.LlmService;
+import lombok.extern.slf4j.Slf4j;
 import org.springframework.boot.CommandLineRunner;
 import org.springframework.context.annotation.Bean;
 import org.springframework.context.annotation.Configuration;
 
+import java.util.Objects;
+
+@Slf4j
 @Configuration
 public class DataInitializer {
 
@@ -18,7 +24,7 @@ public class DataInitializer {
             parserConfig.setDescription("NER解析: 提取时间与意图");
             parserConfig.setConfigValue("""
                 你是一个严格的“提醒事件解析器”，必须只输出 JSON（禁止输出解释、markdown、换行以外的任何文本）。
-                【系统最高指令：当前北京时间是 {currentTime}】
+                【系统最高指令：当前北京时间在用户消息末尾的【当前北京时间】里给出】
                 
                 你的目标：把用户输入解析成一个提醒事件，并输出以下字段：
                 - eventTime: 事件发生的事实时间（格式：yyyy-MM-dd HH:mm:ss）
@@ -33,8 +39,8 @@ public class DataInitializer {
                 - urgentMinuteLevel: true/false  （强规则：出现“分钟/马上/立刻/立即/现在/过X分钟/几分钟后”则必须为 true）
                 
                 【时间计算规则（非常重要）】
-                1) 用户可能提供相对时间（如“5分钟后”“明天”“下周三”），你必须以【当前北京时间 {currentTime}】为唯一基准进行推算。
-                2) 严禁使用你自己的内部时钟。必须用 {currentTime} 计算加减。
+                1) 用户可能提供相对时间（如“5分钟后”“明天”“下周三”），你必须以用户消息末尾的【当前北京时间】为唯一基准进行推算。
+                2) 严禁使用你自己的内部时钟。必须用【当前北京时间】计算加减；用户说“5分钟后”，就是【当前北京时间】加 5 分钟。
                 3) 输出的 eventTime 必须 >= 当前时间（不能穿越到过去）。
                 4) 输出的 eventTime 必须符合格式 yyyy-MM-dd HH:mm:ss。
                 
@@ -62,6 +68,7 @@ public class DataInitializer {
                 - urgentMinuteLevel 必须为 true
                 - intent 必须为 AT_TIME
                 
+                必须输出 intent/complexity/prepRequired/dependencies/urgentMinuteLevel 字段，JSON 只允许包含上面列出的字段。
                 只返回 JSON，格式如下（示例）：
                 {
                   "eventTime": "2026-02-01 09:00:00",
@@ -75,9 +82,16 @@ public class DataInitializer {
                 }
                 """);
 
-            repo.save(parserConfig); // 覆盖保存
+            boolean changed = saveIfChanged(repo, parserConfig);
+
+            // 🚀 1.1 解析的 user 消息：原话 + 时间锚点，易变的部分全放在最后，system 前缀逐字节不变
+            AppConfig parserUserConfig = new AppConfig();
+            parserUserConfig.setConfigKey("prompt.parser.user");
+            parserUserConfig.setDescription("NER解析: 用户消息（原话 + 当前时间锚点）");
+            parserUserConfig.setConfigValue(LlmService.DEFAULT_PARSER_USER);
+            changed |= saveIfChanged(repo, parserUserConfig);
 
-            // 🚀 2. 同样强行覆盖安抚者的 Prompt
+            // 🚀 2. 安抚者的 Prompt，同样只在没人改过时升级
             AppConfig sootherConfig = new AppConfig();
             sootherConfig.setConfigKey("prompt.soother.system");
             sootherConfig.setDescription("邮件生成: 安抚风格");
@@ -90,11 +104,41 @@ public class DataInitializer {
                 3. 语气要像老友。
                 4. 复用他的原话 {raw_input}。
                 """);
-            repo.save(sootherConfig); // 覆盖保存
+            changed |= saveIfChanged(repo, sootherConfig);
 
-            // 3. 刷新缓存
-            System.out.println(">>> 数据初始化完成，最新 Prompt 已覆盖数据库，正在刷新缓存...");
-            configService.refreshCache();
+            // 3. 只有内容真的变了才写库 + 刷新缓存（ConfigService 启动时已加载过一次）
+            if (changed) {
+                log.info(">>> 数据初始化完成，内置 Prompt 已写入数据库，正在刷新配置快照...");
+                configService.refreshCache();
+            }
         };
     }
+
+    /**
+     * 内置 Prompt 只在“没人改过”时覆盖：库里内容的哈希等于上次写入的内置版本（seedVersion）才升级，
+     * 管理员在库里改过的保留，不再每次启动被代码冲掉
+     */
+    private static boolean saveIfChanged(AppConfigRepository repo, AppConfig latest) {
+        String seed = PromptTemplate.compile(latest.getConfigValue()).getVersion();
+        latest.setSeedVersion(seed);
+        AppConfig existing = repo.findById(latest.getConfigKey()).orElse(null);
+        if (existing != null) {
+            // 老数据没有 seedVersion：以前每次启动都强制覆盖，可以当作内置版本
+            String current = PromptTemplate.compile(existing.getConfigValue()).getVersion();
+            if (existing.getSeedVersion() != null && !current.equals(existing.getSeedVersion())) {
+                if (!seed.equals(existing.getSeedVersion())) {
+                    log.warn("⚠️ {} 已被管理员修改 ({})，保留库里版本，未覆盖内置版本 {}", latest.getConfigKey(), current, seed);
+                }
+                return false;
+            }
+            if (latest.getConfigValue().equals(existing.getConfigValue())
+                    && Objects.equals(latest.getDescription(), existing.getDescription())
+                    && seed.equals(existing.getSeedVersion())) {
+                return false;
+            }
+        }
+        repo.save(latest); // 首次写入或升级内置版本
+        log.info(">>> 内置 Prompt {} 已写入版本 {}", latest.getConfigKey(), seed);
+        return true;
+    }
 }
@@ -0,0 +1,157 @@
+package com.fly.forgotyet.config;
+
+import cn.hutool.json.JSONUtil;
+import com.fly.forgotyet.entity.PlanReason;
+import com.fly.forgotyet.enums.Dependency;
+import lombok.RequiredArgsConstructor;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.stereotype.Component;
+
+import javax.annotation.PostConstruct;
+import javax.persistence.EntityManagerFactory;
+import java.sql.Timestamp;
+import java.time.ZoneId;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+/**
+ * 行布局迁移：时间列从 TIMESTAMP 换成毫秒时间戳、依赖从 JSON 换成位掩码、计划说明从长字符串拆成结构化字段。
+ * ddl-auto=update 只会加新列不会删旧列，旧库启动时在这里把数据搬到新列，然后删掉旧列。
+ * 旧列不存在就什么都不做，所以重复启动是幂等的；t_event 与 t_event_archive 同一套布局，一起迁。
+ * trigger_reason 是“数据还没搬”的标记：搬完后第一个删它，之后哪一步失败，下次启动也只会把剩下的旧列删完，不会再按旧列去搬数据。
+ */
+@Slf4j
+@Component
+@RequiredArgsConstructor
+public class EventRowMigration {
+
+    private static final String[] TABLES = {"t_event", "t_event_archive"};
+    // 守卫列 trigger_reason 必须排第一个删
+    private static final String GUARD_COLUMN = "trigger_reason";
+    private static final String[] LEGACY_COLUMNS = {
+            GUARD_COLUMN, "event_time", "trigger_time", "lease_until", "dependencies_json"};
+    private static final Pattern BIAS = Pattern.compile("biasSteps=(-?\\d+)");
+    private static final int BATCH = 500;
+
+    private final JdbcTemplate jdbcTemplate;
+    // 仅用于保证 Hibernate 已经完成 ddl-auto（新列已建好）
+    private final EntityManagerFactory entityManagerFactory;
+
+    @PostConstruct
+    public void migrate() {
+        for (String table : TABLES) {
+            List<String> present = new ArrayList<>();
+            for (String col : LEGACY_COLUMNS) {
+                if (hasColumn(table, col)) {
+                    present.add(col);
+                }
+            }
+            if (present.isEmpty()) {
+                continue;
+            }
+            long start = System.currentTimeMillis();
+            int rows = 0;
+            // 守卫列还在 = 一列旧列都还没删过，copyRows 的 SELECT 要的列都在
+            if (present.contains(GUARD_COLUMN)) {
+                rows = copyRows(table);
+                // 空字符串在新布局里没有对应的枚举值，统一置空
+                for (String col : new String[]{"trigger_bucket", "trigger_intent", "complexity"}) {
+                    jdbcTemplate.update("update " + table + " set " + col + " = null where " + col + " = ''");
+                }
+            }
+            for (String col : present) {
+                jdbcTemplate.execute("alter table " + table + " drop column " + col);
+            }
+            log.info("🧱 {} 行布局迁移完成：{} 行，耗时 {} ms", table, rows, System.currentTimeMillis() - start);
+        }
+    }
+
+    private int copyRows(String table) {
+        List<Object[]> args = new ArrayList<>(BATCH);
+        int[] total = {0};
+        jdbcTemplate.query("select id, event_time, trigger_time, lease_until, dependencies_json, trigger_reason, "
+                + "prep_required from " + table, rs -> {
+            String[] reason = splitReason(rs.getString("trigger_reason"));
+            int depMask = readDeps(rs.getString("dependencies_json"));
+            int flags = legacyFlags(reason[1], rs.getBoolean("prep_required"), depMask);
+            args.add(new Object[]{
+                    toMillis(rs.getTimestamp("event_time")),
+                    toMillis(rs.getTimestamp("trigger_time")),
+                    toMillis(rs.getTimestamp("lease_until")),
+                    depMask,
+                    reason[0],
+                    reason[0] == null ? null : flags,
+                    reason[0] == null ? null : parseBias(reason[1]),
+                    rs.getLong("id")});
+            if (args.size() >= BATCH) {
+                total[0] += flush(table, args);
+            }
+        });
+        total[0] += flush(table, args);
+        return total[0];
+    }
+
+    private int flush(String table, List<Object[]> args) {
+        if (args.isEmpty()) {
+            return 0;
+        }
+        jdbcTemplate.batchUpdate("update " + table + " set event_at = ?, trigger_at = ?, lease_until_at = ?, "
+                + "dependency_mask = ?, reason_time = ?, reason_flags = ?, reason_bias = ? where id = ?", args);
+        int n = args.size();
+        args.clear();
+        return n;
+    }
+
+    private boolean hasColumn(String table, String column) {
+        Integer n = jdbcTemplate.queryForObject(
+                "select count(*) from information_schema.columns where lower(table_name) = ? and lower(column_name) = ?",
+                Integer.class, table, column);
+        return n != null && n > 0;
+    }
+
+    private static Long toMillis(Timestamp ts) {
+        // 旧列存的是服务器本地时间
+        return ts == null ? null : ts.toLocalDateTime().atZone(ZoneId.systemDefault()).toInstant().toEpochMilli();
+    }
+
+    private static int readDeps(String json) {
+        if (json == null || json.isBlank()) {
+            return 0;
+        }
+        try {
+            return Dependency.toMask(JSONUtil.parseArray(json).toList(String.class));
+        } catch (Exception e) {
+            return 0;
+        }
+    }
+
+    /**
+     * 旧格式 "timeSource | intent=..., finalBucket=..."：前半段是时间来源，后半段由标记位重新渲染
+     */
+    private static String[] splitReason(String reason) {
+        if (reason == null) {
+            return new String[]{null, ""};
+        }
+        int i = reason.indexOf(" | ");
+        String head = i < 0 ? reason : reason.substring(0, i);
+        String tail = i < 0 ? "" : reason.substring(i + 3);
+        return new String[]{head.length() > 64 ? head.substring(0, 64) : head, tail};
+    }
+
+    private static int legacyFlags(String tail, boolean prepRequired, int depMask) {
+        int flags = 0;
+        if (prepRequired) flags |= PlanReason.PREP_REQUIRED;
+        if (depMask != 0) flags |= PlanReason.HAS_DEPS;
+        if (tail.startsWith("forced")) flags |= PlanReason.URGENT_MINUTE;
+        if (tail.contains("fallback=soon")) flags |= PlanReason.FALLBACK_SOON;
+        return flags;
+    }
+
+    private static int parseBias(String tail) {
+        Matcher m = BIAS.matcher(tail);
+        return m.find() ? Integer.parseInt(m.group(1)) : 0;
+    }
+}
@@ -0,0 +1,42 @@
+package com.fly.forgotyet.config;
+
+import lombok.RequiredArgsConstructor;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.stereotype.Component;
+
+import javax.annotation.PostConstruct;
+import javax.persistence.EntityManagerFactory;
+
+/**
+ * 主键从 IDENTITY 迁到池化序列：ddl-auto 新建的 seq_event 从 1 开始，会和老数据撞主键。
+ * 启动时（表结构更新之后、端口开放之前）检查一次，下一个号段会和 max(id) 重叠就整体推过去。
+ * 只在落后时才 RESTART：多副本各自持有号段，无条件重置会让号段重叠。
+ */
+@Slf4j
+@Component
+@RequiredArgsConstructor
+public class EventSequenceInitializer {
+
+    private static final int ALLOCATION_SIZE = 50; // 与 Event 上的 @SequenceGenerator 保持一致
+
+    private final JdbcTemplate jdbcTemplate;
+    // 仅用于保证 Hibernate 已经完成 ddl-auto（序列已建好）
+    private final EntityManagerFactory entityManagerFactory;
+
+    @PostConstruct
+    public void alignSequence() {
+        Long maxId = jdbcTemplate.queryForObject(
+                "select greatest(coalesce((select max(id) from t_event), 0), " +
+                        "coalesce((select max(id) from t_event_archive), 0))", Long.class);
+        Long next = jdbcTemplate.queryForObject("select next value for seq_event", Long.class);
+        // pooled 优化器把取到的值当号段上界，实际发出 next-50+1 .. next：号段下界越过 max 才算安全
+        if (maxId == null || next == null || next - ALLOCATION_SIZE >= maxId) {
+            return;
+        }
+        // 重启值 = max + 号段 + 1，号段下界才会越过 max
+        long restart = maxId + ALLOCATION_SIZE + 1;
+        jdbcTemplate.execute("alter sequence seq_event restart with " + restart);
+        log.info("🔢 seq_event 落后于 max(id)={}，已推进到 {}", maxId, restart);
+    }
+}
@@ -0,0 +1,144 @@
+package com.fly.forgotyet.config;
+
+import com.fly.forgotyet.common.JsonUtil;
+import com.fly.forgotyet.common.PipelineMetrics;
+import com.fly.forgotyet.common.R;
+import com.fly.forgotyet.common.RateLimit;
+import com.fly.forgotyet.common.TokenBucketRateLimiter;
+import com.fly.forgotyet.service.AuthService;
+import lombok.RequiredArgsConstructor;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.http.HttpStatus;
+import org.springframework.http.MediaType;
+import org.springframework.stereotype.Component;
+import org.springframework.web.method.HandlerMethod;
+import org.springframework.web.servlet.HandlerInterceptor;
+
+import javax.servlet.http.HttpServletRequest;
+import javax.servlet.http.HttpServletResponse;
+import java.lang.reflect.Method;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * 统一处理 @RateLimit：进入 Controller 前取令牌，超限直接 429 + Retry-After
+ */
+@Slf4j
+@Component
+@RequiredArgsConstructor
+public class RateLimitInterceptor implements HandlerInterceptor {
+
+    private static final String ACQUIRED_ATTR = RateLimitInterceptor.class.getName() + ".acquired";
+
+    private final TokenBucketRateLimiter rateLimiter;
+    private final AuthService authService;
+    private final PipelineMetrics metrics;
+
+    // 只有从这些地址（前置 Nginx）进来的请求才看转发头；直连的客户端自己填的 X-Forwarded-For 一律不信
+    @Value("${rate-limit.trusted-proxies:127.0.0.1,0:0:0:0:0:0:0:1}")
+    private Set<String> trustedProxies;
+
+    // 方法上的注解解析一次就缓存
+    private final Map<Method, RateLimit[]> limitsCache = new ConcurrentHashMap<>();
+
+    @Override
+    public boolean preHandle(HttpServletRequest request, HttpServletResponse response, Object handler) throws Exception {
+        if (!(handler instanceof HandlerMethod)) {
+            return true;
+        }
+        RateLimit[] limits = limitsCache.computeIfAbsent(((HandlerMethod) handler).getMethod(),
+                m -> m.getAnnotationsByType(RateLimit.class));
+        if (limits.length == 0) {
+            return true;
+        }
+
+        List<String[]> acquired = new ArrayList<>(limits.length);
+        for (RateLimit limit : limits) {
+            String key = resolveKey(limit, request);
+            long waitMillis = rateLimiter.tryAcquire(limit.name(), key, limit.capacity(), limit.refillPerMinute());
+            if (waitMillis > 0) {
+                // 前面已经拿到的令牌还回去，被拒绝的请求不应该消耗额度
+                acquired.forEach(a -> rateLimiter.refund(a[0], a[1]));
+                log.warn("⚠️ 触发防刷风控 [{}] key={} 请求太频繁", limit.name(), key);
+                metrics.rateLimited(limit.name());
+                reject(response, limit.message(), waitMillis);
+                return false;
+            }
+            acquired.add(new String[]{limit.name(), key});
+        }
+        request.setAttribute(ACQUIRED_ATTR, acquired);
+        return true;
+    }
+
+    /**
+     * Controller 判断本次请求没有真正消耗下游资源（例如命中缓存）时，把对应桶的令牌还回去
+     * 一个接口叠了多条限流时只还省下的那一种：语音建事件命中 ASR 缓存，LLM 解析照样要花
+     */
+    @SuppressWarnings("unchecked")
+    public void refund(HttpServletRequest request, String name) {
+        Object acquired = request.getAttribute(ACQUIRED_ATTR);
+        if (acquired instanceof List) {
+            ((List<String[]>) acquired).removeIf(a -> {
+                if (!a[0].equals(name)) {
+                    return false;
+                }
+                rateLimiter.refund(a[0], a[1]);
+                return true;
+            });
+        }
+    }
+
+    private String resolveKey(RateLimit limit, HttpServletRequest request) {
+        switch (limit.key()) {
+            case USER:
+                try {
+                    return "user:" + authService.resolveEmail(request);
+                } catch (Exception e) {
+                    return "ip:" + getClientIp(request); // 未登录：退回 IP，Controller 自己会拒绝
+                }
+            case PARAM:
+                String v = request.getParameter(limit.param());
+                if (v != null && !v.isBlank()) {
+                    return limit.param() + ":" + v.trim().toLowerCase();
+                }
+                return "ip:" + getClientIp(request);
+            default:
+                return "ip:" + getClientIp(request);
+        }
+    }
+
+    private void reject(HttpServletResponse response, String message, long waitMillis) throws Exception {
+        response.setStatus(HttpStatus.TOO_MANY_REQUESTS.value());
+        response.setHeader("Retry-After", String.valueOf(Math.max(1, (waitMillis + 999) / 1000)));
+        response.setContentType(MediaType.APPLICATION_JSON_VALUE);
+        response.setCharacterEncoding(StandardCharsets.UTF_8.name());
+        response.getWriter().write(JsonUtil.toJson(R.error(message)));
+    }
+
+    // 获取真实IP的工具方法 (考虑了 Nginx 代理的情况)
+    // 直连：就是 remoteAddr；经可信代理：优先代理写的 X-Real-IP，否则取 X-Forwarded-For 最右边那个（代理自己追加的），
+    // 最左边的是客户端随便填的，拿它当 key 换个头就能绕过按 IP 的限流
+    private String getClientIp(HttpServletRequest request) {
+        String remote = request.getRemoteAddr();
+        if (!trustedProxies.contains(remote)) {
+            return remote;
+        }
+        String realIp = request.getHeader("X-Real-IP");
+        if (realIp != null && !realIp.isBlank()) {
+            return realIp.trim();
+        }
+        String forwarded = request.getHeader("X-Forwarded-For");
+        if (forwarded != null && !forwarded.isBlank()) {
+            String last = forwarded.substring(forwarded.lastIndexOf(',') + 1).trim();
+            if (!last.isEmpty()) {
+                return last;
+            }
+        }
+        return remote;
+    }
+}
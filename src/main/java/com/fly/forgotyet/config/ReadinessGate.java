@@ -0,0 +1,64 @@
+package com.fly.forgotyet.config;
+
+import lombok.RequiredArgsConstructor;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.boot.availability.AvailabilityChangeEvent;
+import org.springframework.boot.availability.ReadinessState;
+import org.springframework.context.ApplicationEventPublisher;
+import org.springframework.context.event.EventListener;
+import org.springframework.stereotype.Component;
+import org.springframework.web.servlet.HandlerInterceptor;
+
+import javax.servlet.http.HttpServletRequest;
+import javax.servlet.http.HttpServletResponse;
+import java.lang.management.ManagementFactory;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+/**
+ * 就绪闸门：端口起来不等于能干活，后台任务恢复完成之前 readiness 保持 REFUSING_TRAFFIC。
+ * 顺便记录 JVM 启动 -> 端口可用 / 恢复完成 / 首个请求 的耗时，方便对比优化前后。
+ */
+@Slf4j
+@Component
+@RequiredArgsConstructor
+public class ReadinessGate implements HandlerInterceptor {
+
+    private final ApplicationEventPublisher publisher;
+
+    private volatile boolean recovered = false;
+    private final AtomicBoolean firstRequestSeen = new AtomicBoolean(false);
+
+    /**
+     * Spring Boot 在 ApplicationReadyEvent 之后会自动发布 ACCEPTING_TRAFFIC，恢复没完成就压回去
+     * 与 markReady 互斥，避免“先放行后又被压回”的乱序
+     */
+    @EventListener
+    public synchronized void onReadinessChange(AvailabilityChangeEvent<ReadinessState> event) {
+        if (event.getState() == ReadinessState.ACCEPTING_TRAFFIC && !recovered) {
+            log.info("⏳ 端口已就绪（JVM 启动后 {} ms），后台恢复中，暂不接流量", sinceJvmStart());
+            AvailabilityChangeEvent.publish(publisher, this, ReadinessState.REFUSING_TRAFFIC);
+        }
+    }
+
+    public synchronized void markReady() {
+        recovered = true;
+        AvailabilityChangeEvent.publish(publisher, this, ReadinessState.ACCEPTING_TRAFFIC);
+        log.info("🟢 [启动] 恢复完成，开始接流量（JVM 启动后 {} ms）", sinceJvmStart());
+    }
+
+    public boolean isReady() {
+        return recovered;
+    }
+
+    @Override
+    public boolean preHandle(HttpServletRequest request, HttpServletResponse response, Object handler) {
+        if (!firstRequestSeen.get() && firstRequestSeen.compareAndSet(false, true)) {
+            log.info("📨 [启动] 首个请求 {} 到达（JVM 启动后 {} ms）", request.getRequestURI(), sinceJvmStart());
+        }
+        return true;
+    }
+
+    private static long sinceJvmStart() {
+        return System.currentTimeMillis() - ManagementFactory.getRuntimeMXBean().getStartTime();
+    }
+}
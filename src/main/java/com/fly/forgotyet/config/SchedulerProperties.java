@@ -0,0 +1,48 @@
+package com.fly.forgotyet.config;
+
+import lombok.Data;
+import org.springframework.boot.context.properties.ConfigurationProperties;
+import org.springframework.stereotype.Component;
+
+@Data
+@Component
+@ConfigurationProperties(prefix = "scheduler")
+public class SchedulerProperties {
+    /** 集群内唯一的节点标识；留空时开着快照就生成一个并持久化到快照文件旁边（重启后不变），否则用 hostname-pid */
+    private String nodeId;
+    /** 触发权租约时长：节点宕机后，其他节点最多等这么久接管 */
+    private int leaseSeconds = 60;
+    /** 认领/续约循环间隔（必须明显小于租约时长） */
+    private long claimIntervalMs = 15000;
+    /** 只认领这段时间内要触发的事件，更远的留给后续循环，各节点自然分摊 */
+    private int lookaheadMinutes = 60;
+    /** 每轮最多认领多少条 */
+    private int claimBatchSize = 200;
+    /** 触发投递线程数：定时器线程只负责到点，文案生成 + 发信都在这个池子里跑 */
+    private int fireThreads = 8;
+    /** 触发投递排队上限：满了摘掉挂载，由补发扫描接着处理 */
+    private int fireQueueCapacity = 2000;
+
+    /** 补发：积压排空速率（条/秒），避免停机恢复后把 LLM / SMTP 一下子打爆 */
+    private double catchUpRatePerSecond = 2.0;
+    /** 补发：同时在途的投递数 */
+    private int catchUpConcurrency = 2;
+    /** 补发：周期性扫描间隔（覆盖集群接管宽限期之外漏掉的任务） */
+    private long catchUpScanMs = 300000;
+
+    /** 调度快照：挂载表的 mmap 追加日志，重启时不查库即可恢复内存时钟 */
+    private boolean snapshotEnabled = true;
+    /** 快照文件，默认放在 H2 数据文件旁边 */
+    private String snapshotPath = "./data/schedule.snap";
+    /** 快照映射大小，写满后压缩；32MB ≈ 130 万条记录 */
+    private int snapshotMaxBytes = 32 * 1024 * 1024;
+
+    /** 投递截止：触发后最多晚这么久发出（分钟级提前量），文案生成只能用这段预算 */
+    private long deliverySlackMinuteMs = 5000;
+    /** 投递截止：小时级提前量 */
+    private long deliverySlackHourMs = 30000;
+    /** 投递截止：天级提前量 */
+    private long deliverySlackDayMs = 120000;
+    /** 截止前留给邮件交付的余量，LLM 预算要扣掉这段 */
+    private long deliveryReserveMs = 300;
+}
@@ -0,0 +1,42 @@
+package com.fly.forgotyet.config;
+
+import lombok.RequiredArgsConstructor;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+import org.springframework.web.multipart.MultipartResolver;
+import org.springframework.web.multipart.support.StandardServletMultipartResolver;
+import org.springframework.web.servlet.config.annotation.InterceptorRegistry;
+import org.springframework.web.servlet.config.annotation.WebMvcConfigurer;
+
+import javax.servlet.http.HttpServletRequest;
+
+@Configuration
+@RequiredArgsConstructor
+public class WebMvcConfig implements WebMvcConfigurer {
+
+    private final RateLimitInterceptor rateLimitInterceptor;
+    private final ReadinessGate readinessGate;
+
+    // 语音上传由 VoiceService 直接流式读取请求体，这些路径不能让容器先把 multipart 解析掉
+    private static final String STREAMING_UPLOAD_PREFIX = "/fy-api/api/voice/";
+
+    /**
+     * 容器 multipart 对其他接口照常生效，只有语音上传跳过
+     */
+    @Bean
+    public MultipartResolver multipartResolver() {
+        return new StandardServletMultipartResolver() {
+            @Override
+            public boolean isMultipart(HttpServletRequest request) {
+                return !request.getRequestURI().startsWith(request.getContextPath() + STREAMING_UPLOAD_PREFIX)
+                        && super.isMultipart(request);
+            }
+        };
+    }
+
+    @Override
+    public void addInterceptors(InterceptorRegistry registry) {
+        registry.addInterceptor(readinessGate).addPathPatterns("/fy-api/**");
+        registry.addInterceptor(rateLimitInterceptor).addPathPatterns("/fy-api/**");
+    }
+}
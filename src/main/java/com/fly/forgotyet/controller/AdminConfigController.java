@@ -2,24 +2,50 @@ package com.fly.forgotyet.controller;
 
 import com.fly.forgotyet.common.R;
 import com.fly.forgotyet.service.ConfigService;
+import com.fly.forgotyet.service.LlmUsageMeter;
 import lombok.RequiredArgsConstructor;
+import org.springframework.web.bind.annotation.GetMapping;
 import org.springframework.web.bind.annotation.PostMapping;
 import org.springframework.web.bind.annotation.RequestMapping;
 import org.springframework.web.bind.annotation.RestController;
 
+import java.util.LinkedHashMap;
+import java.util.Map;
+
 @RestController
 @RequestMapping("/fy-api/admin/config")
 @RequiredArgsConstructor
 public class AdminConfigController {
 
     private final ConfigService configService;
+    private final LlmUsageMeter llmUsageMeter;
 
     /**
-     * 手动刷新缓存
+     * 手动刷新：立即重载本节点的配置快照（不调也会在一个轮询周期内自动生效）
      */
     @PostMapping("/refresh")
     public R<String> refresh() {
         configService.refreshCache();
         return R.success("Prompt配置已热更新");
     }
+
+    /**
+     * 当前配置快照版本、各模板版本、最近的版本切换记录；多副本对一下 version 就知道收敛没有
+     */
+    @GetMapping("/version")
+    public R<Map<String, Object>> version() {
+        return R.success(configService.stats());
+    }
+
+    /**
+     * 按 Prompt 版本的 token 用量 / 前缀缓存命中 / 耗时，改 Prompt 前后对比用
+     */
+    @GetMapping("/prompt-usage")
+    public R<Map<String, Object>> promptUsage() {
+        Map<String, Object> m = new LinkedHashMap<>();
+        m.put("configVersion", configService.snapshot().getVersion());
+        m.put("versions", configService.templateVersions());
+        m.put("usage", llmUsageMeter.stats());
+        return R.success(m);
+    }
 }
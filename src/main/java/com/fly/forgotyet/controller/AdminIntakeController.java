@@ -0,0 +1,65 @@
+package com.fly.forgotyet.controller;
+
+import com.fly.forgotyet.common.R;
+import com.fly.forgotyet.service.EventIntakeService;
+import com.fly.forgotyet.service.LlmService;
+import com.fly.forgotyet.service.ReparseService;
+import lombok.RequiredArgsConstructor;
+import org.springframework.web.bind.annotation.GetMapping;
+import org.springframework.web.bind.annotation.PostMapping;
+import org.springframework.web.bind.annotation.RequestMapping;
+import org.springframework.web.bind.annotation.RestController;
+
+import java.util.Map;
+
+@RestController
+@RequestMapping("/fy-api/admin/intake")
+@RequiredArgsConstructor
+public class AdminIntakeController {
+
+    private final EventIntakeService eventIntakeService;
+    private final ReparseService reparseService;
+    private final LlmService llmService;
+
+    /**
+     * 收录队列深度、最老一条的等待时长、在途解析数
+     */
+    @GetMapping
+    public R<Map<String, Object>> stats() {
+        return R.success(eventIntakeService.stats());
+    }
+
+    /**
+     * 手动触发一次认领（不用等下一轮轮询）
+     */
+    @PostMapping("/drain")
+    public R<Map<String, Object>> drainNow() {
+        eventIntakeService.poll();
+        return R.success(eventIntakeService.stats());
+    }
+
+    /**
+     * 解析输出的本地修复率（按修复类型），以及各模型的健康度
+     */
+    @GetMapping("/parser")
+    public R<Map<String, Object>> parserStats() {
+        return R.success(llmService.parseStats());
+    }
+
+    /**
+     * 重解析队列：模型故障期间收下的原话、模型健康度
+     */
+    @GetMapping("/reparse")
+    public R<Map<String, Object>> reparseStats() {
+        return R.success(reparseService.stats());
+    }
+
+    /**
+     * 手动放一批重解析（模型不可用时只放一条探针）
+     */
+    @PostMapping("/reparse/drain")
+    public R<Map<String, Object>> reparseNow() {
+        reparseService.drain();
+        return R.success(reparseService.stats());
+    }
+}
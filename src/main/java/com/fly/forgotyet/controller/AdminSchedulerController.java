@@ -0,0 +1,77 @@
+package com.fly.forgotyet.controller;
+
+import com.fly.forgotyet.common.R;
+import com.fly.forgotyet.service.CatchUpService;
+import com.fly.forgotyet.service.DeliveryAnalytics;
+import com.fly.forgotyet.service.DeliveryDeadlines;
+import com.fly.forgotyet.service.SootherCache;
+import com.fly.forgotyet.service.TriggerLoadSmoother;
+import lombok.RequiredArgsConstructor;
+import org.springframework.web.bind.annotation.GetMapping;
+import org.springframework.web.bind.annotation.PostMapping;
+import org.springframework.web.bind.annotation.RequestMapping;
+import org.springframework.web.bind.annotation.RequestParam;
+import org.springframework.web.bind.annotation.RestController;
+
+import java.util.Map;
+
+@RestController
+@RequestMapping("/fy-api/admin/scheduler")
+@RequiredArgsConstructor
+public class AdminSchedulerController {
+
+    private final CatchUpService catchUpService;
+    private final SootherCache sootherCache;
+    private final DeliveryDeadlines deliveryDeadlines;
+    private final TriggerLoadSmoother triggerLoadSmoother;
+    private final DeliveryAnalytics deliveryAnalytics;
+
+    /**
+     * 补发积压 & 最近一次排空耗时
+     */
+    @GetMapping("/catch-up")
+    public R<Map<String, Object>> catchUpStats() {
+        return R.success(catchUpService.stats());
+    }
+
+    /**
+     * 手动触发一次逾期扫描
+     */
+    @PostMapping("/catch-up")
+    public R<Map<String, Object>> catchUpNow() {
+        catchUpService.scan();
+        return R.success(catchUpService.stats());
+    }
+
+    /**
+     * 安抚文案缓存命中率 & 每天省下的 LLM 调用
+     */
+    @GetMapping("/soother-cache")
+    public R<Map<String, Object>> sootherCacheStats() {
+        return R.success(sootherCache.stats());
+    }
+
+    /**
+     * 按 bucket 的投递截止达成情况：超时次数、最大超时、走兜底模板的次数
+     */
+    @GetMapping("/deadlines")
+    public R<Map<String, Object>> deadlineStats() {
+        return R.success(deliveryDeadlines.stats());
+    }
+
+    /**
+     * 整点削峰：挪动了多少、平均提前多少秒、未来 24 小时的每分钟峰值
+     */
+    @GetMapping("/load")
+    public R<Map<String, Object>> loadStats() {
+        return R.success(triggerLoadSmoother.stats());
+    }
+
+    /**
+     * 触发准确度：最近 days 天按 bucket / intent 的实际触发、交给 SMTP 的延迟分位数，以及早 / 刚好 / 晚反馈占比
+     */
+    @GetMapping("/analytics")
+    public R<Map<String, Object>> analytics(@RequestParam(defaultValue = "30") int days) {
+        return R.success(deliveryAnalytics.report(Math.min(days, 365)));
+    }
+}
@@ -0,0 +1,31 @@
+package com.fly.forgotyet.controller;
+
+import com.fly.forgotyet.common.R;
+import com.fly.forgotyet.common.Tracer;
+import lombok.RequiredArgsConstructor;
+import org.springframework.web.bind.annotation.GetMapping;
+import org.springframework.web.bind.annotation.RequestMapping;
+import org.springframework.web.bind.annotation.RequestParam;
+import org.springframework.web.bind.annotation.RestController;
+
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+@RestController
+@RequestMapping("/fy-api/admin/traces")
+@RequiredArgsConstructor
+public class AdminTraceController {
+
+    private final Tracer tracer;
+
+    /**
+     * 最近超过阈值的慢链路，按总耗时倒序；每条带各阶段的偏移和耗时，traceId 可以拿去搜日志
+     */
+    @GetMapping
+    public R<Map<String, Object>> slowest(@RequestParam(defaultValue = "20") int limit) {
+        Map<String, Object> m = new LinkedHashMap<>();
+        m.put("stats", tracer.stats());
+        m.put("traces", tracer.slowest(Math.min(limit, 200)));
+        return R.success(m);
+    }
+}
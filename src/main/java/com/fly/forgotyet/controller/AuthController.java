@@ -1,6 +1,7 @@
 package com.fly.forgotyet.controller;
 
 import com.fly.forgotyet.common.R;
+import com.fly.forgotyet.common.RateLimit;
 import com.fly.forgotyet.service.AliyunPnvsSmsService;
 import com.fly.forgotyet.service.AuthService;
 import lombok.RequiredArgsConstructor;
@@ -15,7 +16,11 @@ public class AuthController {
 
     // ====== 邮箱登录（原有） ======
 
+    // 每封验证码都是一次 SMTP 发送：同一邮箱每分钟 1 次，同一 IP 每分钟 5 次
     @PostMapping("/send-code")
+    @RateLimit(name = "email-code", key = RateLimit.KeyType.PARAM, param = "email",
+            capacity = 1, refillPerMinute = 1, message = "验证码已发送，请 1 分钟后再试")
+    @RateLimit(name = "email-code-ip", capacity = 5, refillPerMinute = 5)
     public R<String> sendCode(@RequestParam String email) {
         authService.sendCode(email);
         return R.success("验证码已发送");
@@ -30,7 +35,11 @@ public class AuthController {
     // 说明：为了不破坏你“邮件提醒”链路，短信登录阶段先要求传 email 作为提醒邮箱。
     // 后续你做 PWA Push 后，可以把 email 变成可选。
 
+    // 短信按条计费：同一手机号每分钟 1 次，同一 IP 每分钟 5 次
     @PostMapping("/sms/send-code")
+    @RateLimit(name = "sms-code", key = RateLimit.KeyType.PARAM, param = "phone",
+            capacity = 1, refillPerMinute = 1, message = "验证码已发送，请 1 分钟后再试")
+    @RateLimit(name = "sms-code-ip", capacity = 5, refillPerMinute = 5)
     public R<String> sendSmsCode(@RequestParam String phone) {
         if (phone == null || phone.trim().isEmpty()) return R.error("手机号不能为空");
         aliyunPnvsSmsService.sendCode(phone.trim());
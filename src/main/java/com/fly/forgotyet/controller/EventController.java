@@ -1,19 +1,26 @@
 package com.fly.forgotyet.controller;
 
 import com.fly.forgotyet.common.R;
+import com.fly.forgotyet.common.RateLimit;
 import com.fly.forgotyet.entity.Event;
+import com.fly.forgotyet.enums.Complexity;
+import com.fly.forgotyet.enums.EventStatus;
+import com.fly.forgotyet.enums.TriggerBucket;
 import com.fly.forgotyet.enums.TriggerFeedback;
+import com.fly.forgotyet.enums.TriggerIntent;
+import com.fly.forgotyet.service.AuthService;
+import com.fly.forgotyet.service.EventIntakeService;
 import com.fly.forgotyet.service.EventService;
-import io.jsonwebtoken.Claims;
-import io.jsonwebtoken.Jwts;
-import io.jsonwebtoken.security.Keys;
 import lombok.Data;
 import lombok.RequiredArgsConstructor;
+import org.springframework.http.HttpStatus;
 import org.springframework.web.bind.annotation.*;
 
-import javax.crypto.SecretKey;
 import javax.servlet.http.HttpServletRequest;
+import javax.servlet.http.HttpServletResponse;
+import java.time.Instant;
 import java.time.LocalDateTime;
+import java.time.ZoneId;
 import java.util.List;
 import java.util.stream.Collectors;
 
@@ -23,19 +30,33 @@ import java.util.stream.Collectors;
 public class EventController {
 
     private final EventService eventService;
+    private final EventIntakeService eventIntakeService;
+    private final AuthService authService;
 
-    // 和 AuthService 里保持一致的密钥
-    private static final String SECRET_STR = "ForgotYet2026SuperSecretKeyForJWTAuth!!";
-    private static final SecretKey KEY = Keys.hmacShaKeyFor(SECRET_STR.getBytes());
-
+    // 每次收录都会打一次 LLM：同一用户允许突发 10 条，之后每分钟 6 条
     @PostMapping("/add")
-    public R<String> addEvent(@RequestBody EventRequest request, HttpServletRequest httpRequest) {
+    @RateLimit(name = "event-add", key = RateLimit.KeyType.USER, capacity = 10, refillPerMinute = 6,
+            message = "记得太快啦，先歇一会儿再告诉我吧")
+    public R<String> addEvent(@RequestBody EventRequest request,
+                              @RequestHeader(value = "Idempotency-Key", required = false) String idempotencyKey,
+                              HttpServletRequest httpRequest,
+                              HttpServletResponse httpResponse) {
         if (request.getContent() == null || request.getContent().trim().isEmpty()) {
             return R.error("内容不能为空");
         }
 
+        // 过载保护：预计排队太久就不收，带上 Retry-After 让客户端稍后再来
+        long retryAfter = eventIntakeService.retryAfterSeconds();
+        if (retryAfter > 0) {
+            httpResponse.setStatus(HttpStatus.SERVICE_UNAVAILABLE.value());
+            httpResponse.setHeader("Retry-After", String.valueOf(retryAfter));
+            return R.error("排队的事情有点多，稍等一会儿再告诉我吧");
+        }
+
         String email = extractEmailFromToken(httpRequest);
-        eventService.createEvent(request.getContent(), email);
+        // 原话先落库（PARSING）再回应，解析由收录工作池在后台完成，重启也不会丢
+        // 双击 / 重试：同一个幂等键或时间窗内的同一句话只收一次，回应保持一致
+        eventIntakeService.submit(request.getContent(), email, idempotencyKey);
 
         return R.success("已收录。不用再挂念它，去享受生活吧。");
     }
@@ -91,30 +112,9 @@ public class EventController {
 
 
 
-    // 解析 Token 的辅助方法
+    // 解析 Token 的辅助方法（签名校验统一在 AuthService）
     private String extractEmailFromToken(HttpServletRequest request) {
-        String authHeader = request.getHeader("Authorization");
-        if (authHeader == null || !authHeader.startsWith("Bearer ")) {
-            throw new RuntimeException("未登录或 Token 失效");
-        }
-        String token = authHeader.substring(7);
-
-        try {
-            Claims claims = Jwts.parser()
-                    .verifyWith(KEY)
-                    .build()
-                    .parseSignedClaims(token)
-                    .getPayload();
-
-            // ✅ 兼容短信登录：优先用 claim.email；没有再退回 subject
-            Object email = claims.get("email");
-            if (email != null && !String.valueOf(email).isBlank()) {
-                return String.valueOf(email);
-            }
-            return claims.getSubject();
-        } catch (Exception e) {
-            throw new RuntimeException("Token 解析失败，请重新登录");
-        }
+        return authService.resolveEmail(request);
     }
 
 
@@ -135,25 +135,26 @@ public class EventController {
         private String rawInput;
         private LocalDateTime eventTime;
         private LocalDateTime triggerTime;
-        private String status;
+        private EventStatus status;
         private TriggerFeedback feedback;
         private String triggerReason;
 
         // ✅ 新增：验证 triggerTime 用
-        private String triggerBucket;
-        private String triggerIntent;
-        private String complexity;
+        private TriggerBucket triggerBucket;
+        private TriggerIntent triggerIntent;
+        private Complexity complexity;
         private Boolean prepRequired;
 
         public static EventListItem from(Event e) {
             EventListItem i = new EventListItem();
             i.setId(e.getId());
             i.setRawInput(e.getRawInput());
-            i.setEventTime(e.getEventTime());
-            i.setTriggerTime(e.getTriggerTime());
+            // 库里是毫秒时间戳，接口保持本地时间格式不变
+            i.setEventTime(toLocal(e.getEventTime()));
+            i.setTriggerTime(toLocal(e.getTriggerTime()));
             i.setStatus(e.getStatus());
             i.setFeedback(e.getFeedback());
-            i.setTriggerReason(e.getTriggerReason());
+            i.setTriggerReason(e.renderTriggerReason());
 
             // ✅ 新增字段映射
             i.setTriggerBucket(e.getTriggerBucket());
@@ -163,6 +164,10 @@ public class EventController {
 
             return i;
         }
+
+        private static LocalDateTime toLocal(Instant t) {
+            return t == null ? null : LocalDateTime.ofInstant(t, ZoneId.systemDefault());
+        }
     }
 
 }
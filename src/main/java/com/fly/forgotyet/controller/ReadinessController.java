@@ -0,0 +1,29 @@
+package com.fly.forgotyet.controller;
+
+import com.fly.forgotyet.common.R;
+import com.fly.forgotyet.config.ReadinessGate;
+import lombok.RequiredArgsConstructor;
+import org.springframework.http.HttpStatus;
+import org.springframework.http.ResponseEntity;
+import org.springframework.web.bind.annotation.GetMapping;
+import org.springframework.web.bind.annotation.RequestMapping;
+import org.springframework.web.bind.annotation.RestController;
+
+@RestController
+@RequestMapping("/fy-api")
+@RequiredArgsConstructor
+public class ReadinessController {
+
+    private final ReadinessGate readinessGate;
+
+    /**
+     * 就绪探针：任务恢复完成前返回 503，负载均衡据此决定是否转发
+     */
+    @GetMapping("/ready")
+    public ResponseEntity<R<String>> ready() {
+        if (readinessGate.isReady()) {
+            return ResponseEntity.ok(R.success("READY"));
+        }
+        return ResponseEntity.status(HttpStatus.SERVICE_UNAVAILABLE).body(R.error("RECOVERING"));
+    }
+}
@@ -1,18 +1,29 @@
 package com.fly.forgotyet.controller;
 
-import cn.hutool.cache.CacheUtil;
-import cn.hutool.cache.impl.TimedCache;
 import com.fly.forgotyet.common.R;
+import com.fly.forgotyet.enums.TriggerBucket;
+import com.fly.forgotyet.common.RateLimit;
+import com.fly.forgotyet.config.RateLimitInterceptor;
+import com.fly.forgotyet.service.AuthService;
+import com.fly.forgotyet.service.EventIntakeService;
+import com.fly.forgotyet.service.VoicePipelineService;
 import com.fly.forgotyet.service.VoiceService;
+import lombok.Data;
 import lombok.RequiredArgsConstructor;
 import lombok.extern.slf4j.Slf4j;
+import org.springframework.http.HttpStatus;
+import org.springframework.web.bind.annotation.GetMapping;
+import org.springframework.web.bind.annotation.PathVariable;
 import org.springframework.web.bind.annotation.PostMapping;
+import org.springframework.web.bind.annotation.RequestHeader;
 import org.springframework.web.bind.annotation.RequestMapping;
-import org.springframework.web.bind.annotation.RequestParam;
 import org.springframework.web.bind.annotation.RestController;
-import org.springframework.web.multipart.MultipartFile;
 
 import javax.servlet.http.HttpServletRequest;
+import javax.servlet.http.HttpServletResponse;
+import java.time.LocalDateTime;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
 
 @Slf4j
 @RestController
@@ -21,51 +32,125 @@ import javax.servlet.http.HttpServletRequest;
 public class VoiceController {
 
     private final VoiceService voiceService;
-
-    // 🚀 内存级防刷锁：存放每个 IP 的请求次数，1 分钟自动过期清理
-    // 容量 1000，过期时间 60 秒
-    private static final TimedCache<String, Integer> IP_RATE_LIMITER = CacheUtil.newTimedCache(60 * 1000);
+    private final VoicePipelineService voicePipelineService;
+    private final EventIntakeService eventIntakeService;
+    private final AuthService authService;
+    private final RateLimitInterceptor rateLimitInterceptor;
 
     /**
      * 接收前端语音文件 -> 转成文字返回
+     * 返回 CompletableFuture：Servlet 异步响应，读上传体和 ASR 调用期间请求线程都已归还给 Tomcat
+     * 防刷：每个 IP 每分钟最多 5 次
      */
     @PostMapping("/transcribe")
-    public R<String> transcribe(@RequestParam("file") MultipartFile file, HttpServletRequest request) {
+    @RateLimit(name = "voice", capacity = 5, refillPerMinute = 5, message = "您说得太快啦，请休息 1 分钟再试~")
+    public CompletableFuture<R<String>> transcribe(HttpServletRequest request) {
+        // 1. 流式读取音频（边读边算指纹）+ 空文件拦截，在上传线程池上做
+        return voiceService.receiveAsync(request)
+                .thenCompose(clip -> {
+                    if (clip == null) {
+                        return CompletableFuture.completedFuture(R.<String>error("音频文件不能为空"));
+                    }
+
+                    // 2. 弱网重传的同一段音频：直接返回，并把令牌还回去，不占用频率额度
+                    String cached = voiceService.cachedTranscript(clip);
+                    if (cached != null) {
+                        rateLimitInterceptor.refund(request, "voice");
+                        return CompletableFuture.completedFuture(R.success(cached));
+                    }
+
+                    // 3. 调用云端转换（异步）
+                    return voiceService.transcribeAsync(clip)
+                            .thenApply(R::success)
+                            .exceptionally(e -> {
+                                log.error("语音转换异常", e);
+                                return R.error("语音识别暂时忙碌，请直接打字输入");
+                            });
+                })
+                .exceptionally(this::uploadFailed);
+    }
 
-        // 1. 获取用户真实 IP (考虑了 Nginx 代理的情况)
-        String ip = getClientIp(request);
+    /**
+     * 语音一步建事件：上传语音后立即返回受理号，转写/解析/计划/调度在服务端串行完成
+     * ASR 和 /transcribe 共用同一个 IP 额度；建事件要打 LLM，和 /event/add 共用同一个用户额度和排队准入
+     */
+    @PostMapping("/event")
+    @RateLimit(name = "voice", capacity = 5, refillPerMinute = 5, message = "您说得太快啦，请休息 1 分钟再试~")
+    @RateLimit(name = "event-add", key = RateLimit.KeyType.USER, capacity = 10, refillPerMinute = 6,
+            message = "记得太快啦，先歇一会儿再告诉我吧")
+    public CompletableFuture<R<String>> voiceEvent(@RequestHeader(value = "Idempotency-Key", required = false) String idempotencyKey,
+                                                   HttpServletRequest request,
+                                                   HttpServletResponse response) {
+        String email = authService.resolveEmail(request);
 
-        // 2. 检查频率：每分钟最多 5 次
-        Integer count = IP_RATE_LIMITER.get(ip, false);
-        if (count != null && count >= 5) {
-            log.warn("⚠️ 触发防刷风控，IP: {} 请求太频繁", ip);
-            return R.error("您说得太快啦，请休息 1 分钟再试~");
+        // 过载保护：和 /event/add 一样，预计排队太久就不收，连上传体都不读
+        long retryAfter = eventIntakeService.retryAfterSeconds();
+        if (retryAfter > 0) {
+            response.setStatus(HttpStatus.SERVICE_UNAVAILABLE.value());
+            response.setHeader("Retry-After", String.valueOf(retryAfter));
+            return CompletableFuture.completedFuture(R.error("排队的事情有点多，稍等一会儿再告诉我吧"));
         }
 
-        // 3. 记录次数
-        IP_RATE_LIMITER.put(ip, count == null ? 1 : count + 1);
+        return voiceService.receiveAsync(request)
+                .thenApply(clip -> {
+                    if (clip == null) {
+                        return R.<String>error("音频文件不能为空");
+                    }
+                    // 重传的同一段音频会命中指纹缓存：只还 ASR 额度，建事件照样扣
+                    if (voiceService.cachedTranscript(clip) != null) {
+                        rateLimitInterceptor.refund(request, "voice");
+                    }
+                    return R.success(voicePipelineService.accept(clip, email, idempotencyKey));
+                })
+                .exceptionally(this::uploadFailed);
+    }
 
-        // 4. 空文件拦截
-        if (file.isEmpty()) {
-            return R.error("音频文件不能为空");
+    private <T> R<T> uploadFailed(Throwable e) {
+        Throwable cause = e instanceof CompletionException && e.getCause() != null ? e.getCause() : e;
+        if (cause instanceof IllegalArgumentException) {
+            return R.error(cause.getMessage());
         }
+        log.error("语音上传解析异常", cause);
+        return R.error("音频上传失败，请重试");
+    }
 
-        // 5. 调用云端转换
-        try {
-            String text = voiceService.transcribeAudio(file);
-            return R.success(text);
-        } catch (Exception e) {
-            log.error("语音转换异常", e);
-            return R.error("语音识别暂时忙碌，请直接打字输入");
+    /**
+     * 查询语音建事件的进度与最终计划
+     */
+    @GetMapping("/event/{acceptId}")
+    public R<VoiceEventStatus> voiceEventStatus(@PathVariable("acceptId") String acceptId,
+                                                HttpServletRequest request) {
+        String email = authService.resolveEmail(request);
+        VoicePipelineService.Ticket ticket = voicePipelineService.lookup(acceptId, email);
+        if (ticket == null) {
+            return R.error("受理单不存在或已过期");
         }
+        return R.success(VoiceEventStatus.from(ticket));
     }
 
-    // 获取真实IP的工具方法
-    private String getClientIp(HttpServletRequest request) {
-        String ip = request.getHeader("X-Forwarded-For");
-        if (ip == null || ip.length() == 0 || "unknown".equalsIgnoreCase(ip)) {
-            ip = request.getRemoteAddr();
+    @Data
+    public static class VoiceEventStatus {
+        private String acceptId;
+        private String stage;
+        private String text;
+        private String message;
+
+        private Long eventId;
+        private LocalDateTime eventTime;
+        private LocalDateTime triggerTime;
+        private TriggerBucket triggerBucket;
+
+        public static VoiceEventStatus from(VoicePipelineService.Ticket t) {
+            VoiceEventStatus s = new VoiceEventStatus();
+            s.setAcceptId(t.getAcceptId());
+            s.setStage(t.getStage());
+            s.setText(t.getText());
+            s.setMessage(t.getMessage());
+            s.setEventId(t.getEventId());
+            s.setEventTime(t.getEventTime());
+            s.setTriggerTime(t.getTriggerTime());
+            s.setTriggerBucket(t.getTriggerBucket());
+            return s;
         }
-        return ip.contains(",") ? ip.split(",")[0] : ip;
     }
 }
@@ -4,6 +4,8 @@ import lombok.Data;
 import javax.persistence.Column;
 import javax.persistence.Entity;
 import javax.persistence.Id;
+import javax.persistence.PrePersist;
+import javax.persistence.PreUpdate;
 import javax.persistence.Table;
 
 @Data
@@ -19,4 +21,22 @@ public class AppConfig {
     private String configValue;
 
     private String description;
-}
\ No newline at end of file
+
+    /**
+     * 最后修改时间（epoch 毫秒），配置热更新的指纹之一
+     */
+    private Long updatedAt;
+
+    /**
+     * 代码内置默认值的版本（内容哈希）：和当前内容的哈希一致说明没人改过，发版时可以覆盖；
+     * 不一致说明管理员改过，启动时保留
+     */
+    @Column(length = 16)
+    private String seedVersion;
+
+    @PrePersist
+    @PreUpdate
+    void touch() {
+        updatedAt = System.currentTimeMillis();
+    }
+}
@@ -0,0 +1,61 @@
+package com.fly.forgotyet.entity;
+
+import com.fly.forgotyet.enums.TriggerBucket;
+import com.fly.forgotyet.enums.TriggerIntent;
+import lombok.Data;
+import org.springframework.data.domain.Persistable;
+
+import javax.persistence.*;
+import java.time.LocalDate;
+
+/**
+ * 投递分析的增量汇总：每天 × bucket × intent × 指标 × 分档 一行计数
+ * - fire_lag / send_lag：bin 是延迟分档（见 DeliveryAnalytics.LAG_BOUNDS_MS），用来算分位数
+ * - feedback：label 是 TriggerFeedback 的枚举名（不用序号，枚举调整顺序不影响历史计数），bin 固定 0
+ * - send_failed：bin 固定 0
+ * 只做 +delta，不回扫 t_event；行数只和天数有关，和事件量无关
+ * 实现 Persistable 且总是“新”的：save 直接 INSERT，撞主键说明别的副本先建了行，由调用方改走累加，不会 merge 覆盖计数
+ */
+@Data
+@Entity
+@Table(name = "t_delivery_rollup", indexes = {
+        @Index(name = "idx_rollup_day", columnList = "statDay")
+})
+public class DeliveryRollup implements Persistable<String> {
+
+    // statDay|bucket|intent|metric|bin（feedback 为 label）
+    @Id
+    @Column(length = 80)
+    private String rollupKey;
+
+    @Column(nullable = false)
+    private LocalDate statDay;
+
+    @Enumerated(EnumType.STRING)
+    @Column(length = 8)
+    private TriggerBucket bucket;
+
+    @Enumerated(EnumType.STRING)
+    @Column(length = 16)
+    private TriggerIntent intent;
+
+    @Column(length = 16, nullable = false)
+    private String metric;
+
+    private int bin;
+
+    @Column(length = 16)
+    private String label;
+
+    private long hits;
+
+    @Override
+    public String getId() {
+        return rollupKey;
+    }
+
+    @Override
+    public boolean isNew() {
+        return true;
+    }
+}
@@ -1,21 +1,32 @@
 package com.fly.forgotyet.entity;
 
+import com.fly.forgotyet.common.InstantEpochMillisConverter;
+import com.fly.forgotyet.enums.Complexity;
+import com.fly.forgotyet.enums.EventStatus;
+import com.fly.forgotyet.enums.TriggerBucket;
 import com.fly.forgotyet.enums.TriggerFeedback;
+import com.fly.forgotyet.enums.TriggerIntent;
 import lombok.Data;
 import org.springframework.data.annotation.CreatedDate;
 import org.springframework.data.jpa.domain.support.AuditingEntityListener;
 
 import javax.persistence.*;
+import java.time.Instant;
 import java.time.LocalDateTime;
 
 @Data
 @Entity
-@Table(name = "t_event")
+@Table(name = "t_event", indexes = {
+        @Index(name = "uk_event_dedupe", columnList = "dedupeKey", unique = true)
+})
 @EntityListeners(AuditingEntityListener.class)
 public class Event {
 
+    // 池化序列：一次取 50 个号，插入不再需要立即回读自增主键，Hibernate 才能走 JDBC 批量
+    // 旧库上线时由 EventSequenceInitializer 把序列推到 max(id) 之后
     @Id
-    @GeneratedValue(strategy = GenerationType.IDENTITY)
+    @GeneratedValue(strategy = GenerationType.SEQUENCE, generator = "event_seq")
+    @SequenceGenerator(name = "event_seq", sequenceName = "seq_event", allocationSize = 50)
     private Long id;
 
     // 用户的原话 (核心资产)
@@ -23,15 +34,20 @@ public class Event {
     @Column(columnDefinition = "TEXT", nullable = false)
     private String rawInput;
 
-    // 事件发生的实际时间 (LLM 解析出来的)
-    private LocalDateTime eventTime;
+    // 事件发生的实际时间 (LLM 解析出来的)，毫秒时间戳
+    @Convert(converter = InstantEpochMillisConverter.class)
+    @Column(name = "event_at")
+    private Instant eventTime;
 
-    // 触发通知的时间 (计算出来的，通常是 eventTime - 24h)
-    private LocalDateTime triggerTime;
+    // 触发通知的时间 (计算出来的，通常是 eventTime - 24h)，毫秒时间戳
+    @Convert(converter = InstantEpochMillisConverter.class)
+    @Column(name = "trigger_at")
+    private Instant triggerTime;
 
-    // 状态: SILENT (默认), DELIVERED (已发送), CANCELLED (取消)
-    @Column(nullable = false)
-    private String status;
+    // 状态机见 EventStatus
+    @Enumerated(EnumType.STRING)
+    @Column(length = 16, nullable = false)
+    private EventStatus status;
 
     // 用户邮箱 (暂时代替用户ID)
     @Column(nullable = false)
@@ -42,22 +58,72 @@ public class Event {
     private LocalDateTime createTime;
 
     // 回放字段（便于后续偏好进化/统计）
-    private String triggerBucket;
-    private String triggerIntent;
-    private String complexity;
+    @Enumerated(EnumType.STRING)
+    @Column(length = 8)
+    private TriggerBucket triggerBucket;
+
+    @Enumerated(EnumType.STRING)
+    @Column(length = 16)
+    private TriggerIntent triggerIntent;
+
+    @Enumerated(EnumType.STRING)
+    @Column(length = 8)
+    private Complexity complexity;
 
     private Boolean prepRequired;
 
-    // 依赖项（JSON）
-    @Column(length = 2000)
-    private String dependenciesJson;
+    // 依赖项位图（见 Dependency）
+    @Column(columnDefinition = "int default 0 not null")
+    private int dependencyMask;
 
-    // 解释：为什么选这个 bucket（debug 用）
-    @Column(length = 2000)
-    private String triggerReason;
+    // 解释：为什么选这个 bucket（结构化存，展示时渲染）
+    @Embedded
+    private PlanReason planReason;
 
     @Enumerated(EnumType.STRING)
     @Column(length = 16)
     private TriggerFeedback feedback;
 
+    // 投递时间线：实际触发 / 文案就绪 / 交给 SMTP，和 triggerTime 对比看漂移
+    @Convert(converter = InstantEpochMillisConverter.class)
+    @Column(name = "fired_at")
+    private Instant firedAt;
+
+    @Convert(converter = InstantEpochMillisConverter.class)
+    @Column(name = "content_ready_at")
+    private Instant contentReadyAt;
+
+    @Convert(converter = InstantEpochMillisConverter.class)
+    @Column(name = "sent_at")
+    private Instant sentAt;
+
+    // 收录去重键：(用户, 幂等键) 或 (用户, 归一化原话, 时间窗) 的哈希；取消时释放
+    @Column(length = 32)
+    private String dedupeKey;
+
+    // 集群调度：当前持有触发权的节点 + 租约到期时间（过期后其他节点可接管）
+    @Column(length = 64)
+    private String claimOwner;
+
+    @Convert(converter = InstantEpochMillisConverter.class)
+    @Column(name = "lease_until_at")
+    private Instant leaseUntil;
+
+    // 乐观锁：整行 save 时，如果期间发生过状态流转，直接失败而不是覆盖
+    // 状态流转走 EventRepository 里的条件 UPDATE，会同步 +1
+    @Version
+    @Column(columnDefinition = "bigint default 0 not null")
+    private Long version;
+
+    public boolean is(EventStatus s) {
+        return status == s;
+    }
+
+    /**
+     * 给前端 / 日志看的计划说明（与迁移前的 triggerReason 格式一致）
+     */
+    public String renderTriggerReason() {
+        return planReason == null ? null
+                : planReason.render(triggerIntent, complexity, triggerBucket, dependencyMask);
+    }
 }
@@ -0,0 +1,136 @@
+package com.fly.forgotyet.entity;
+
+import com.fly.forgotyet.common.InstantEpochMillisConverter;
+import com.fly.forgotyet.enums.Complexity;
+import com.fly.forgotyet.enums.EventStatus;
+import com.fly.forgotyet.enums.TriggerBucket;
+import com.fly.forgotyet.enums.TriggerFeedback;
+import com.fly.forgotyet.enums.TriggerIntent;
+import lombok.Data;
+
+import javax.persistence.*;
+import java.time.Instant;
+import java.time.LocalDateTime;
+
+/**
+ * 冷表：已终结（DELIVERED / CANCELED / EXPIRED）且超过保留期的事件，从 t_event 挪过来
+ * 主键沿用原事件 id；不再参与调度，所以没有租约 / 乐观锁字段
+ */
+@Data
+@Entity
+@Table(name = "t_event_archive", indexes = {
+        @Index(name = "idx_archive_user_time", columnList = "userEmail, createTime"),
+        @Index(name = "idx_archive_user_status_time", columnList = "userEmail, status, createTime")
+})
+public class EventArchive {
+
+    @Id
+    private Long id;
+
+    @Column(columnDefinition = "TEXT", nullable = false)
+    private String rawInput;
+
+    @Convert(converter = InstantEpochMillisConverter.class)
+    @Column(name = "event_at")
+    private Instant eventTime;
+
+    @Convert(converter = InstantEpochMillisConverter.class)
+    @Column(name = "trigger_at")
+    private Instant triggerTime;
+
+    @Enumerated(EnumType.STRING)
+    @Column(length = 16, nullable = false)
+    private EventStatus status;
+
+    @Column(nullable = false)
+    private String userEmail;
+
+    private LocalDateTime createTime;
+
+    @Enumerated(EnumType.STRING)
+    @Column(length = 8)
+    private TriggerBucket triggerBucket;
+
+    @Enumerated(EnumType.STRING)
+    @Column(length = 16)
+    private TriggerIntent triggerIntent;
+
+    @Enumerated(EnumType.STRING)
+    @Column(length = 8)
+    private Complexity complexity;
+
+    private Boolean prepRequired;
+
+    @Column(columnDefinition = "int default 0 not null")
+    private int dependencyMask;
+
+    @Embedded
+    private PlanReason planReason;
+
+    @Enumerated(EnumType.STRING)
+    @Column(length = 16)
+    private TriggerFeedback feedback;
+
+    @Convert(converter = InstantEpochMillisConverter.class)
+    @Column(name = "fired_at")
+    private Instant firedAt;
+
+    @Convert(converter = InstantEpochMillisConverter.class)
+    @Column(name = "content_ready_at")
+    private Instant contentReadyAt;
+
+    @Convert(converter = InstantEpochMillisConverter.class)
+    @Column(name = "sent_at")
+    private Instant sentAt;
+
+    // 归档时间
+    private LocalDateTime archivedAt;
+
+    public static EventArchive from(Event e, LocalDateTime archivedAt) {
+        EventArchive a = new EventArchive();
+        a.setId(e.getId());
+        a.setRawInput(e.getRawInput());
+        a.setEventTime(e.getEventTime());
+        a.setTriggerTime(e.getTriggerTime());
+        a.setStatus(e.getStatus());
+        a.setUserEmail(e.getUserEmail());
+        a.setCreateTime(e.getCreateTime());
+        a.setTriggerBucket(e.getTriggerBucket());
+        a.setTriggerIntent(e.getTriggerIntent());
+        a.setComplexity(e.getComplexity());
+        a.setPrepRequired(e.getPrepRequired());
+        a.setDependencyMask(e.getDependencyMask());
+        a.setPlanReason(e.getPlanReason());
+        a.setFeedback(e.getFeedback());
+        a.setFiredAt(e.getFiredAt());
+        a.setContentReadyAt(e.getContentReadyAt());
+        a.setSentAt(e.getSentAt());
+        a.setArchivedAt(archivedAt);
+        return a;
+    }
+
+    /**
+     * 只读视图：历史列表 / 偏好统计直接复用 Event 的读路径（不会被保存回 t_event）
+     */
+    public Event toEvent() {
+        Event e = new Event();
+        e.setId(id);
+        e.setRawInput(rawInput);
+        e.setEventTime(eventTime);
+        e.setTriggerTime(triggerTime);
+        e.setStatus(status);
+        e.setUserEmail(userEmail);
+        e.setCreateTime(createTime);
+        e.setTriggerBucket(triggerBucket);
+        e.setTriggerIntent(triggerIntent);
+        e.setComplexity(complexity);
+        e.setPrepRequired(prepRequired);
+        e.setDependencyMask(dependencyMask);
+        e.setPlanReason(planReason);
+        e.setFeedback(feedback);
+        e.setFiredAt(firedAt);
+        e.setContentReadyAt(contentReadyAt);
+        e.setSentAt(sentAt);
+        return e;
+    }
+}
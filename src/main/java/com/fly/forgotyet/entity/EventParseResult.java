@@ -38,6 +38,9 @@ public class EventParseResult {
     /** 是否属于“分钟级 / 立即”强规则 */
     private boolean urgentMinuteLevel;
 
+    /** 主备模型都没拿到结果：valid=false 是因为故障，不是因为输入模糊（不来自 LLM 输出） */
+    private boolean providerOutage;
+
     /* ================= 可选：debug / 回放 ================= */
 
     /** 原始用户输入（可选） */
@@ -0,0 +1,81 @@
+package com.fly.forgotyet.entity;
+
+import com.fly.forgotyet.enums.Complexity;
+import com.fly.forgotyet.enums.TriggerBucket;
+import com.fly.forgotyet.enums.TriggerIntent;
+import lombok.Data;
+
+import javax.persistence.Column;
+import javax.persistence.Embeddable;
+
+/**
+ * 触发计划的“为什么”：结构化存储，替代原来拼好的 2000 字符说明
+ * 展示给前端时再按原来的格式渲染（render），接口字段不变
+ */
+@Data
+@Embeddable
+public class PlanReason {
+
+    public static final int PREP_REQUIRED = 1;
+    public static final int HAS_DEPS = 1 << 1;
+    public static final int URGENT_MINUTE = 1 << 2;
+    public static final int FALLBACK_SOON = 1 << 3;
+    public static final int TIME_ASSUMED = 1 << 4;
+
+    // 时间来源：llm_eventTime_used / fuzzy_assumed:... / fuzzy_pending:... / pending:...
+    @Column(name = "reason_time", length = 64)
+    private String timeSource;
+
+    @Column(name = "reason_flags")
+    private Byte flags;
+
+    @Column(name = "reason_bias")
+    private Byte biasSteps;
+
+    // 只给迁移过来的历史说明 / 异常兜底用，新事件为空
+    @Column(name = "reason_note", length = 255)
+    private String note;
+
+    public static PlanReason of(String timeSource, int flags, int biasSteps) {
+        PlanReason r = new PlanReason();
+        r.setTimeSource(timeSource);
+        r.setFlags((byte) flags);
+        r.setBiasSteps((byte) biasSteps);
+        return r;
+    }
+
+    public static PlanReason pending(String timeSource) {
+        return of(timeSource, 0, 0);
+    }
+
+    public boolean has(int flag) {
+        return flags != null && (flags & flag) != 0;
+    }
+
+    /**
+     * 按历史格式渲染：timeSource | intent=..., complexity=..., ...
+     */
+    public String render(TriggerIntent intent, Complexity complexity, TriggerBucket bucket, int dependencyMask) {
+        StringBuilder sb = new StringBuilder(timeSource == null ? "" : timeSource);
+        if (bucket != null) {
+            sb.append(" | ");
+            if (has(URGENT_MINUTE)) {
+                sb.append("forced urgentMinuteLevel => bucket=").append(bucket);
+            } else {
+                sb.append("intent=").append(intent)
+                        .append(", complexity=").append(complexity)
+                        .append(", prepRequired=").append(has(PREP_REQUIRED))
+                        .append(", deps=").append(Integer.bitCount(dependencyMask))
+                        .append(", biasSteps=").append(biasSteps == null ? 0 : biasSteps)
+                        .append(", finalBucket=").append(bucket);
+            }
+            if (has(FALLBACK_SOON)) {
+                sb.append(", fallback=soon");
+            }
+        }
+        if (note != null && !note.isBlank()) {
+            sb.append(" | ").append(note);
+        }
+        return sb.toString();
+    }
+}
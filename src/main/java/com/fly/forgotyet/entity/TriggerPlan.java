@@ -19,5 +19,6 @@ public class TriggerPlan {
     // debug / 回放
     private boolean forcedImmediate;
     private boolean fallbackNowPlus1m;
+    private int biasSteps;
     private String reason;
 }
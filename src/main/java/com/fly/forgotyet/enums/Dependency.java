@@ -0,0 +1,70 @@
+package com.fly.forgotyet.enums;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * 准备依赖项：落库时压成一个 int 位图，替代原来 2000 字符的 JSON 列
+ */
+public enum Dependency {
+    /** 人：同事 / 客户 / 家人 / 约人 */
+    PEOPLE(1, "people"),
+
+    /** 票：机票 / 火车票 / 门票 / 预订 */
+    TICKETS(1 << 1, "tickets"),
+
+    /** 材料：证件 / 文件 / 打印 / 物料 */
+    MATERIALS(1 << 2, "materials"),
+
+    /** LLM 给了认不出的依赖：只记“有”，不记具体是什么 */
+    OTHER(1 << 3, "other");
+
+    private final int bit;
+    private final String code;
+
+    Dependency(int bit, String code) {
+        this.bit = bit;
+        this.code = code;
+    }
+
+    public int bit() {
+        return bit;
+    }
+
+    public String code() {
+        return code;
+    }
+
+    public static int toMask(List<String> codes) {
+        int mask = 0;
+        if (codes == null) {
+            return mask;
+        }
+        for (String c : codes) {
+            if (c == null || c.isBlank()) {
+                continue;
+            }
+            mask |= ofCode(c.trim()).bit;
+        }
+        return mask;
+    }
+
+    public static List<String> fromMask(int mask) {
+        List<String> codes = new ArrayList<>(Integer.bitCount(mask));
+        for (Dependency d : values()) {
+            if ((mask & d.bit) != 0) {
+                codes.add(d.code);
+            }
+        }
+        return codes;
+    }
+
+    private static Dependency ofCode(String code) {
+        for (Dependency d : values()) {
+            if (d.code.equalsIgnoreCase(code)) {
+                return d;
+            }
+        }
+        return OTHER;
+    }
+}
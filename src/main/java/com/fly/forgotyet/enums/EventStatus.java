@@ -0,0 +1,31 @@
+package com.fly.forgotyet.enums;
+
+/**
+ * 事件状态机：PARSING -> [PENDING ->] SILENT -> SENDING -> DELIVERED
+ *               ⇅ REPARSE                  \-> CANCELED / EXPIRED
+ */
+public enum EventStatus {
+    /** 已收录原话，等待解析工作池处理（持久化的收录队列） */
+    PARSING,
+
+    /** 主备模型都挂了没解析成：不是输入模糊，等模型恢复后限速放回 PARSING 重解析 */
+    REPARSE,
+
+    /** 待补时间：接住了，但还不能调度 */
+    PENDING,
+
+    /** 默认：已计划，等待触发 */
+    SILENT,
+
+    /** 发送中：某个节点正在生成文案 / 发邮件 */
+    SENDING,
+
+    /** 已发送 */
+    DELIVERED,
+
+    /** 用户取消 */
+    CANCELED,
+
+    /** 停机期间错过且事件已过去，不再补发 */
+    EXPIRED
+}
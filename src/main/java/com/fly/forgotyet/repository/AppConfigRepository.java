@@ -2,8 +2,24 @@ package com.fly.forgotyet.repository;
 
 import com.fly.forgotyet.entity.AppConfig;
 import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.data.jpa.repository.Query;
 import org.springframework.stereotype.Repository;
 
 @Repository
 public interface AppConfigRepository extends JpaRepository<AppConfig, String> {
-}
\ No newline at end of file
+
+    /**
+     * 配置表指纹：一条聚合查询，配置热更新轮询用它判断要不要整表重载。
+     * 走应用写入的会更新 updatedAt；直接在库里改的，一般也会带来行数或内容长度的变化
+     */
+    @Query("select count(c) as rowCount, max(c.updatedAt) as lastUpdated, sum(length(c.configValue)) as totalLength from AppConfig c")
+    Fingerprint fingerprint();
+
+    interface Fingerprint {
+        long getRowCount();
+
+        Long getLastUpdated();
+
+        Long getTotalLength();
+    }
+}
@@ -0,0 +1,24 @@
+package com.fly.forgotyet.repository;
+
+import com.fly.forgotyet.entity.DeliveryRollup;
+import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.data.jpa.repository.Modifying;
+import org.springframework.data.jpa.repository.Query;
+import org.springframework.data.repository.query.Param;
+import org.springframework.stereotype.Repository;
+import org.springframework.transaction.annotation.Transactional;
+
+import java.time.LocalDate;
+import java.util.List;
+
+@Repository
+public interface DeliveryRollupRepository extends JpaRepository<DeliveryRollup, String> {
+
+    List<DeliveryRollup> findByStatDayGreaterThanEqual(LocalDate from);
+
+    // 原子累加：多副本各自刷自己的增量，不会互相覆盖
+    @Transactional
+    @Modifying
+    @Query("update DeliveryRollup r set r.hits = r.hits + :delta where r.rollupKey = :key")
+    int increment(@Param("key") String key, @Param("delta") long delta);
+}
@@ -0,0 +1,16 @@
+package com.fly.forgotyet.repository;
+
+import com.fly.forgotyet.entity.EventArchive;
+import com.fly.forgotyet.enums.EventStatus;
+import org.springframework.data.domain.Page;
+import org.springframework.data.domain.Pageable;
+import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.stereotype.Repository;
+
+@Repository
+public interface EventArchiveRepository extends JpaRepository<EventArchive, Long> {
+
+    Page<EventArchive> findByUserEmailOrderByCreateTimeDesc(String userEmail, Pageable pageable);
+
+    Page<EventArchive> findByUserEmailAndStatusOrderByCreateTimeDesc(String userEmail, EventStatus status, Pageable pageable);
+}
@@ -1,6 +1,11 @@
 package com.fly.forgotyet.repository;
 
 import com.fly.forgotyet.entity.Event;
+import com.fly.forgotyet.enums.Complexity;
+import com.fly.forgotyet.enums.EventStatus;
+import com.fly.forgotyet.enums.TriggerBucket;
+import com.fly.forgotyet.enums.TriggerFeedback;
+import com.fly.forgotyet.enums.TriggerIntent;
 import org.springframework.data.domain.Page;
 import org.springframework.data.domain.Pageable;
 import org.springframework.data.jpa.repository.JpaRepository;
@@ -8,8 +13,11 @@ import org.springframework.data.jpa.repository.Modifying;
 import org.springframework.data.jpa.repository.Query;
 import org.springframework.data.repository.query.Param;
 import org.springframework.stereotype.Repository;
+import org.springframework.transaction.annotation.Transactional;
 
+import java.time.Instant;
 import java.time.LocalDateTime;
+import java.util.Collection;
 import java.util.List;
 import java.util.Optional;
 
@@ -17,23 +25,258 @@ import java.util.Optional;
 public interface EventRepository extends JpaRepository<Event, Long> {
 
     // 核心查询：找那些 "状态是沉默" 且 "触发时间已到" 的事件
-    List<Event> findByStatusAndTriggerTimeBefore(String status, LocalDateTime now);
+    List<Event> findByStatusAndTriggerTimeBefore(EventStatus status, Instant now);
 
-    List<Event> findByStatusAndTriggerTimeAfter(String status, LocalDateTime now);
+    List<Event> findByStatusAndTriggerTimeAfter(EventStatus status, Instant now);
 
     // V1：最近事件列表（按创建时间倒序）
     Page<Event> findByUserEmailOrderByCreateTimeDesc(String userEmail, Pageable pageable);
 
-    Page<Event> findByUserEmailAndStatusOrderByCreateTimeDesc(String userEmail, String status, Pageable pageable);
+    Page<Event> findByUserEmailAndStatusOrderByCreateTimeDesc(String userEmail, EventStatus status, Pageable pageable);
 
-    List<Event> findTop12ByUserEmailAndStatusOrderByTriggerTimeDesc(String userEmail, String status);
+    List<Event> findTop12ByUserEmailAndStatusOrderByTriggerTimeDesc(String userEmail, EventStatus status);
 
+    // ================== 状态流转：一律是带前置状态的条件 UPDATE，返回 0 表示被并发抢先 ==================
+
+    // 用户侧流转（例如 SILENT/PENDING -> CANCELED）；同时释放去重键，取消后马上重新收录同一句不算重复
+    @Transactional
     @Modifying
-    @Query("update Event e set e.status = :status where e.id = :id and e.userEmail = :userEmail")
+    @Query("update Event e set e.status = :status, e.dedupeKey = null, e.version = e.version + 1 " +
+            "where e.id = :id and e.userEmail = :userEmail and e.status in :fromStatuses")
     int updateStatusByIdAndUserEmail(@Param("id") Long id,
                                      @Param("userEmail") String userEmail,
-                                     @Param("status") String status);
-    Optional<Event> findTop1ByUserEmailAndStatusOrderByCreateTimeDesc(String userEmail, String status);
+                                     @Param("fromStatuses") Collection<EventStatus> fromStatuses,
+                                     @Param("status") EventStatus status);
+
+    // 用户反馈：按 id + 用户条件更新，不受调度侧对同一行的其他更新影响
+    @Transactional
+    @Modifying
+    @Query("update Event e set e.feedback = :feedback, e.version = e.version + 1 " +
+            "where e.id = :id and e.userEmail = :userEmail")
+    int updateFeedback(@Param("id") Long id,
+                       @Param("userEmail") String userEmail,
+                       @Param("feedback") TriggerFeedback feedback);
+
+    // SILENT -> SENDING：只有仍持有触发权的节点能开始发送，和取消互斥
+    @Transactional
+    @Modifying
+    @Query("update Event e set e.status = com.fly.forgotyet.enums.EventStatus.SENDING, e.version = e.version + 1 " +
+            "where e.id = :id and e.status = com.fly.forgotyet.enums.EventStatus.SILENT and e.claimOwner = :owner")
+    int markSending(@Param("id") Long id, @Param("owner") String owner);
+
+    // SENDING -> DELIVERED：送达后释放触发权，顺带记下触发 / 文案就绪时间
+    @Transactional
+    @Modifying
+    @Query("update Event e set e.status = com.fly.forgotyet.enums.EventStatus.DELIVERED, e.claimOwner = null, e.leaseUntil = null, " +
+            "e.firedAt = :firedAt, e.contentReadyAt = :contentReadyAt, e.version = e.version + 1 " +
+            "where e.id = :id and e.status = com.fly.forgotyet.enums.EventStatus.SENDING and e.claimOwner = :owner")
+    int markDelivered(@Param("id") Long id, @Param("owner") String owner,
+                      @Param("firedAt") Instant firedAt, @Param("contentReadyAt") Instant contentReadyAt);
+
+    // 邮件线程交给 SMTP 之后回写（发送是异步的，晚于 markDelivered）
+    @Transactional
+    @Modifying
+    @Query("update Event e set e.sentAt = :sentAt, e.version = e.version + 1 where e.id = :id")
+    int markSent(@Param("id") Long id, @Param("sentAt") Instant sentAt);
+
+    // SENDING -> SILENT：发送失败回滚，并释放触发权等待重新认领
+    @Transactional
+    @Modifying
+    @Query("update Event e set e.status = com.fly.forgotyet.enums.EventStatus.SILENT, e.claimOwner = null, e.leaseUntil = null, " +
+            "e.version = e.version + 1 " +
+            "where e.id = :id and e.status = com.fly.forgotyet.enums.EventStatus.SENDING and e.claimOwner = :owner")
+    int revertSending(@Param("id") Long id, @Param("owner") String owner);
+
+    // SILENT -> EXPIRED：停机期间错过、且事件本身也已经过去的提醒，补发已无意义
+    @Transactional
+    @Modifying
+    @Query("update Event e set e.status = com.fly.forgotyet.enums.EventStatus.EXPIRED, e.claimOwner = null, e.leaseUntil = null, " +
+            "e.version = e.version + 1 " +
+            "where e.status = com.fly.forgotyet.enums.EventStatus.SILENT and e.triggerTime < :cutoff and e.eventTime < :now " +
+            "and (e.claimOwner is null or e.leaseUntil < :now)")
+    int expireMissed(@Param("cutoff") Instant cutoff, @Param("now") Instant now);
+
+    // SENDING -> SILENT：发送途中宕机的节点，租约过期后放回去重新投递
+    @Transactional
+    @Modifying
+    @Query("update Event e set e.status = com.fly.forgotyet.enums.EventStatus.SILENT, e.claimOwner = null, e.leaseUntil = null, " +
+            "e.version = e.version + 1 " +
+            "where e.status = com.fly.forgotyet.enums.EventStatus.SENDING and e.leaseUntil < :staleBefore")
+    int reviveStaleSending(@Param("staleBefore") Instant staleBefore);
+
+    // PENDING -> SILENT：补上时间后一次性写入计划，和重复补时间/取消互斥
+    @Transactional
+    @Modifying
+    @Query("update Event e set e.status = com.fly.forgotyet.enums.EventStatus.SILENT, e.eventTime = :eventTime, e.triggerTime = :triggerTime, " +
+            "e.triggerBucket = :bucket, e.triggerIntent = :intent, e.complexity = :complexity, " +
+            "e.planReason.timeSource = :timeSource, e.planReason.flags = :flags, " +
+            "e.planReason.biasSteps = :biasSteps, e.planReason.note = null, e.version = e.version + 1 " +
+            "where e.id = :id and e.userEmail = :userEmail and e.status = com.fly.forgotyet.enums.EventStatus.PENDING")
+    int resolvePending(@Param("id") Long id,
+                       @Param("userEmail") String userEmail,
+                       @Param("eventTime") Instant eventTime,
+                       @Param("triggerTime") Instant triggerTime,
+                       @Param("bucket") TriggerBucket bucket,
+                       @Param("intent") TriggerIntent intent,
+                       @Param("complexity") Complexity complexity,
+                       @Param("timeSource") String timeSource,
+                       @Param("flags") Byte flags,
+                       @Param("biasSteps") Byte biasSteps);
+
+    Optional<Event> findTop1ByUserEmailAndStatusOrderByCreateTimeDesc(String userEmail, EventStatus status);
+
+    // ================== 集群调度：基于租约的触发权认领 ==================
+    // 只动租约的 UPDATE 不推进 version：续约每轮都会扫到全部已认领的行，推进了会让之前读出的实体整行 save 时全部版本冲突
+    // version 只在真正的状态 / 计划 / 内容流转时 +1
+
+    // 原子认领/续约：无主、自己持有、或租约已过期，才能拿到触发权
+    @Transactional
+    @Modifying
+    @Query("update Event e set e.claimOwner = :owner, e.leaseUntil = :until " +
+            "where e.id = :id and e.status = com.fly.forgotyet.enums.EventStatus.SILENT " +
+            "and (e.claimOwner is null or e.claimOwner = :owner or e.leaseUntil < :now)")
+    int tryClaim(@Param("id") Long id,
+                 @Param("owner") String owner,
+                 @Param("until") Instant until,
+                 @Param("now") Instant now);
+
+    // 批量续约：一条 UPDATE 续上本节点持有的全部租约
+    @Transactional
+    @Modifying
+    @Query("update Event e set e.leaseUntil = :until " +
+            "where e.claimOwner = :owner and e.status = com.fly.forgotyet.enums.EventStatus.SILENT")
+    int renewLeases(@Param("owner") String owner, @Param("until") Instant until);
+
+    // 优雅停机：主动释放，其他节点下一轮就能接管
+    @Transactional
+    @Modifying
+    @Query("update Event e set e.claimOwner = null, e.leaseUntil = null " +
+            "where e.claimOwner = :owner and e.status = com.fly.forgotyet.enums.EventStatus.SILENT")
+    int releaseLeases(@Param("owner") String owner);
+
+    // 可认领的候选：时间窗内、无主或租约过期
+    @Query("select e.id from Event e where e.status = com.fly.forgotyet.enums.EventStatus.SILENT " +
+            "and e.triggerTime > :notBefore and e.triggerTime <= :horizon " +
+            "and (e.claimOwner is null or e.leaseUntil < :now) " +
+            "order by e.triggerTime")
+    List<Long> findClaimableIds(@Param("notBefore") Instant notBefore,
+                                @Param("horizon") Instant horizon,
+                                @Param("now") Instant now,
+                                Pageable pageable);
+
+    // ================== 收录队列：PARSING 行即待解析的原话，由解析工作池按租约认领 ==================
+
+    // 可认领的收录：从未认领、租约 / 退避已过期，或是本节点重启前留下的
+    @Query("select e.id from Event e where e.status = com.fly.forgotyet.enums.EventStatus.PARSING " +
+            "and (e.leaseUntil is null or e.leaseUntil < :now or e.claimOwner = :owner) " +
+            "order by e.id")
+    List<Long> findClaimableIntakeIds(@Param("owner") String owner,
+                                      @Param("now") Instant now,
+                                      Pageable pageable);
+
+    @Transactional
+    @Modifying
+    @Query("update Event e set e.claimOwner = :owner, e.leaseUntil = :until " +
+            "where e.id = :id and e.status = com.fly.forgotyet.enums.EventStatus.PARSING " +
+            "and (e.leaseUntil is null or e.leaseUntil < :now or e.claimOwner = :owner)")
+    int claimIntake(@Param("id") Long id,
+                    @Param("owner") String owner,
+                    @Param("until") Instant until,
+                    @Param("now") Instant now);
+
+    // 解析失败：放回队列，退避到 retryAt 之后再认领
+    @Transactional
+    @Modifying
+    @Query("update Event e set e.claimOwner = null, e.leaseUntil = :retryAt " +
+            "where e.id = :id and e.status = com.fly.forgotyet.enums.EventStatus.PARSING and e.claimOwner = :owner")
+    int retryIntake(@Param("id") Long id, @Param("owner") String owner, @Param("retryAt") Instant retryAt);
+
+    // PARSING -> PENDING：多次解析失败，原话保留下来等用户补充
+    @Transactional
+    @Modifying
+    @Query("update Event e set e.status = com.fly.forgotyet.enums.EventStatus.PENDING, e.claimOwner = null, e.leaseUntil = null, " +
+            "e.planReason.timeSource = :timeSource, e.version = e.version + 1 " +
+            "where e.id = :id and e.status = com.fly.forgotyet.enums.EventStatus.PARSING and e.claimOwner = :owner")
+    int giveUpIntake(@Param("id") Long id, @Param("owner") String owner, @Param("timeSource") String timeSource);
+
+    // ================== 重解析队列：模型故障时收下的原话，恢复后限速放回收录队列 ==================
+
+    @Query("select e.id from Event e where e.status = com.fly.forgotyet.enums.EventStatus.REPARSE order by e.id")
+    List<Long> findReparseIds(Pageable pageable);
+
+    // REPARSE -> PARSING：交回收录工作池，和取消互斥
+    @Transactional
+    @Modifying
+    @Query("update Event e set e.status = com.fly.forgotyet.enums.EventStatus.PARSING, e.claimOwner = null, e.leaseUntil = null, " +
+            "e.version = e.version + 1 where e.id = :id and e.status = com.fly.forgotyet.enums.EventStatus.REPARSE")
+    int requeueReparse(@Param("id") Long id);
+
+    long countByStatus(EventStatus status);
+
+    // ================== 收录去重 ==================
+
+    Optional<Event> findByDedupeKey(String dedupeKey);
+
+    @Query("select e.dedupeKey from Event e where e.dedupeKey is not null and e.createTime >= :since")
+    List<String> findDedupeKeysSince(@Param("since") LocalDateTime since);
+
+    @Query("select min(e.createTime) from Event e where e.status = :status")
+    LocalDateTime findOldestCreateTime(@Param("status") EventStatus status);
+
+    // 归档候选：已终结且超过保留期
+    @Query("select e.id from Event e where e.status in :statuses and e.createTime < :before order by e.id")
+    List<Long> findArchivableIds(@Param("statuses") Collection<EventStatus> statuses,
+                                 @Param("before") LocalDateTime before,
+                                 Pageable pageable);
+
+    // 归档搬走后从热表删除（只删终态，防御性条件）
+    @Transactional
+    @Modifying
+    @Query("delete from Event e where e.id in :ids and e.status in :statuses")
+    int deleteArchived(@Param("ids") Collection<Long> ids, @Param("statuses") Collection<EventStatus> statuses);
+
+    // 挂载只需要触发时间和提前量，不必物化整个实体
+    @Query("select e.triggerTime as triggerTime, e.triggerBucket as triggerBucket from Event e where e.id = :id")
+    MountInfo findMountInfoById(@Param("id") Long id);
+
+    interface MountInfo {
+        Instant getTriggerTime();
+
+        TriggerBucket getTriggerBucket();
+    }
+
+    // 安抚文案预热：只取原话和意图 / 复杂度
+    @Query("select e.rawInput as rawInput, e.triggerIntent as triggerIntent, e.complexity as complexity " +
+            "from Event e where e.createTime >= :since order by e.id desc")
+    List<SootherSample> findSootherSamples(@Param("since") LocalDateTime since, Pageable pageable);
+
+    interface SootherSample {
+        String getRawInput();
+
+        TriggerIntent getTriggerIntent();
+
+        Complexity getComplexity();
+    }
+
+    @Query("select e.id from Event e where e.status = com.fly.forgotyet.enums.EventStatus.SILENT and e.claimOwner = :owner")
+    List<Long> findClaimedIds(@Param("owner") String owner);
+
+    // 开机接回：只接回触发时间还在宽限期内的，更早的逾期任务交给 CatchUpService 过期判断 + 限速补发
+    @Query("select e.id from Event e where e.status = com.fly.forgotyet.enums.EventStatus.SILENT " +
+            "and e.claimOwner = :owner and e.triggerTime >= :notBefore")
+    List<Long> findClaimedIdsSince(@Param("owner") String owner, @Param("notBefore") Instant notBefore);
+
+    // 触发削峰：未来一段时间内每分钟待触发的条数（trigger_at 存的是 epoch 毫秒，按分钟整除分组）
+    @Query(value = "select trigger_at / 60000 as slot, count(*) as triggers from t_event " +
+            "where status = 'SILENT' and trigger_at >= :fromMillis and trigger_at < :toMillis " +
+            "group by trigger_at / 60000", nativeQuery = true)
+    List<MinuteLoad> findTriggerHistogram(@Param("fromMillis") long fromMillis, @Param("toMillis") long toMillis);
+
+    interface MinuteLoad {
+        Long getSlot();
+
+        Long getTriggers();
+    }
 
 
 
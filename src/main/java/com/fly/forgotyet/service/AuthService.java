@@ -3,6 +3,8 @@ package com.fly.forgotyet.service;
 import cn.hutool.cache.CacheUtil;
 import cn.hutool.cache.impl.TimedCache;
 import cn.hutool.core.util.RandomUtil;
+import io.jsonwebtoken.Claims;
+import io.jsonwebtoken.JwtParser;
 import io.jsonwebtoken.Jwts;
 import io.jsonwebtoken.security.Keys;
 import lombok.RequiredArgsConstructor;
@@ -10,6 +12,7 @@ import lombok.extern.slf4j.Slf4j;
 import org.springframework.stereotype.Service;
 
 import javax.crypto.SecretKey;
+import javax.servlet.http.HttpServletRequest;
 import java.util.Date;
 
 @Slf4j
@@ -22,6 +25,8 @@ public class AuthService {
     // JWT 密钥 (正式环境请移入 yml)
     private static final String SECRET_STR = "ForgotYet2026SuperSecretKeyForJWTAuth!!";
     private static final SecretKey KEY = Keys.hmacShaKeyFor(SECRET_STR.getBytes());
+    // JwtParser 线程安全，构建一次全局复用
+    private static final JwtParser JWT_PARSER = Jwts.parser().verifyWith(KEY).build();
 
     // 内存缓存：存放邮箱验证码，5分钟过期 (零运维方案)
     private static final TimedCache<String, String> codeCache = CacheUtil.newTimedCache(5 * 60 * 1000);
@@ -68,6 +73,37 @@ public class AuthService {
         return builder.compact();
     }
 
+    /**
+     * 从 Authorization 头解析提醒邮箱
+     * - 兼容短信登录：优先用 claim.email；没有再退回 subject
+     */
+    public String resolveEmail(HttpServletRequest request) {
+        String authHeader = request.getHeader("Authorization");
+        if (authHeader == null || !authHeader.startsWith("Bearer ")) {
+            throw new RuntimeException("未登录或 Token 失效");
+        }
+        String token = authHeader.substring(7);
+
+        try {
+            Claims claims = JWT_PARSER.parseSignedClaims(token).getPayload();
+
+            Object email = claims.get("email");
+            if (email != null && !String.valueOf(email).isBlank()) {
+                return String.valueOf(email);
+            }
+            return claims.getSubject();
+        } catch (Exception e) {
+            throw new RuntimeException("Token 解析失败，请重新登录");
+        }
+    }
+
+    /**
+     * 预热：签发并解析一次，提前加载 HMAC / Base64 / JSON 反序列化相关的类
+     */
+    public void warmUp() {
+        JWT_PARSER.parseSignedClaims(issueJwt("warmup", "warmup@forgotyet.local"));
+    }
+
     public static SecretKey jwtKey() {
         return KEY;
     }
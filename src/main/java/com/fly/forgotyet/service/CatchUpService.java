@@ -0,0 +1,205 @@
+package com.fly.forgotyet.service;
+
+import com.fly.forgotyet.config.SchedulerProperties;
+import com.fly.forgotyet.entity.Event;
+import com.fly.forgotyet.enums.EventStatus;
+import com.fly.forgotyet.repository.EventRepository;
+import lombok.AllArgsConstructor;
+import lombok.Getter;
+import lombok.RequiredArgsConstructor;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Service;
+
+import javax.annotation.PreDestroy;
+import java.time.Instant;
+import java.time.LocalDateTime;
+import java.util.Comparator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.PriorityBlockingQueue;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * 停机补发：把停机期间错过触发时间的 SILENT 提醒找出来，按优先级限速排空。
+ * - 事件本身已经过去的不再补发，直接标记 EXPIRED
+ * - 分钟级提前量（M*）的最急，先发；同一档里越逾期越先发
+ * - 速率 / 并发可配，避免恢复瞬间把 LLM 和 SMTP 打爆
+ * 开机那一次由 StartupService 在任务恢复之后触发
+ */
+@Slf4j
+@Service
+@RequiredArgsConstructor
+public class CatchUpService {
+
+    private final EventRepository eventRepository;
+    private final EventSchedulerService schedulerService;
+    private final SchedulerProperties props;
+
+    // 分钟级最急，其次小时级，最后天级；同级里触发时间越早（越逾期）越先
+    private static final Comparator<Overdue> PRIORITY = Comparator
+            .comparingInt(Overdue::getUrgency)
+            .thenComparing(Overdue::getTriggerTime);
+
+    private final PriorityBlockingQueue<Overdue> backlog = new PriorityBlockingQueue<>(64, PRIORITY);
+    private final Set<Long> queued = ConcurrentHashMap.newKeySet();
+    private final AtomicBoolean draining = new AtomicBoolean(false);
+
+    private final ExecutorService drainer = Executors.newSingleThreadExecutor(r -> daemon(r, "fy-catchup-drain"));
+    private ExecutorService workers;
+
+    // 最近一次排空的统计，供管理端查看
+    private volatile Map<String, Object> lastDrain = Map.of();
+
+    @Scheduled(fixedDelayString = "${scheduler.catch-up-scan-ms:300000}",
+            initialDelayString = "${scheduler.catch-up-scan-ms:300000}")
+    public void scanLoop() {
+        try {
+            scan();
+        } catch (Exception e) {
+            log.error("❌ 补发扫描异常", e);
+        }
+    }
+
+    /**
+     * 扫描逾期任务并入队，返回本次新入队数量
+     * 只管超过一个租约周期仍没人认领的：宽限期内的交给正常认领循环
+     */
+    public int scan() {
+        Instant now = Instant.now();
+        Instant cutoff = now.minusSeconds(props.getLeaseSeconds());
+
+        // 发送途中宕机的：租约过期超过一个周期还没收尾，放回 SILENT 重新走一遍
+        int revived = eventRepository.reviveStaleSending(cutoff);
+        // 事件都已经过去了，补发只会添乱
+        int expired = eventRepository.expireMissed(cutoff, now);
+
+        int added = 0;
+        List<Event> overdue = eventRepository.findByStatusAndTriggerTimeBefore(EventStatus.SILENT, cutoff);
+        for (Event e : overdue) {
+            if (e.getClaimOwner() != null && !e.getClaimOwner().equals(schedulerService.getNodeId())
+                    && e.getLeaseUntil() != null && e.getLeaseUntil().isAfter(now)) {
+                continue; // 别的节点还持有有效租约；本节点名下的是崩溃重启前留下的，开机不再直接挂载，这里接着补
+            }
+            if (queued.add(e.getId())) {
+                backlog.offer(new Overdue(e.getId(), e.getTriggerTime(), e.getEventTime(), TriggerBucketUtil.lane(e.getTriggerBucket())));
+                added++;
+            }
+        }
+
+        if (added > 0 || expired > 0 || revived > 0) {
+            log.info("🧹 [补发] 逾期入队 {} 个，过期跳过 {} 个，发送中断恢复 {} 个，当前积压 {}",
+                    added, expired, revived, backlog.size());
+        }
+        if (!backlog.isEmpty() && draining.compareAndSet(false, true)) {
+            drainer.execute(this::drain);
+        }
+        return added;
+    }
+
+    public Map<String, Object> stats() {
+        Map<String, Object> m = new LinkedHashMap<>();
+        m.put("backlog", backlog.size());
+        m.put("draining", draining.get());
+        m.put("lastDrain", lastDrain);
+        return m;
+    }
+
+    @PreDestroy
+    public void shutdown() {
+        drainer.shutdownNow();
+        if (workers != null) {
+            workers.shutdownNow();
+        }
+    }
+
+    private void drain() {
+        int concurrency = Math.max(1, props.getCatchUpConcurrency());
+        long pacingMs = (long) Math.ceil(1000.0 / Math.max(0.01, props.getCatchUpRatePerSecond()));
+        if (workers == null) {
+            workers = Executors.newFixedThreadPool(concurrency, r -> daemon(r, "fy-catchup-worker"));
+        }
+        Semaphore inFlight = new Semaphore(concurrency);
+
+        long start = System.currentTimeMillis();
+        AtomicInteger delivered = new AtomicInteger();
+        AtomicInteger skipped = new AtomicInteger();
+        log.info("🚚 [补发] 开始排空积压 {} 个，速率 {}/s，并发 {}",
+                backlog.size(), props.getCatchUpRatePerSecond(), concurrency);
+
+        try {
+            Overdue item;
+            while ((item = backlog.poll()) != null) {
+                Overdue current = item;
+                if (current.getEventTime() != null && current.getEventTime().isBefore(Instant.now())) {
+                    // 排队期间事件本身已经过去：交给下一轮扫描标记 EXPIRED
+                    queued.remove(current.getId());
+                    skipped.incrementAndGet();
+                    continue;
+                }
+
+                inFlight.acquire();
+                workers.execute(() -> {
+                    try {
+                        if (schedulerService.deliverOverdue(current.getId())) {
+                            delivered.incrementAndGet();
+                        } else {
+                            skipped.incrementAndGet(); // 已被其他节点认领 / 已取消
+                        }
+                    } catch (Exception e) {
+                        log.error("❌ [补发] 投递失败 ID=" + current.getId(), e);
+                    } finally {
+                        queued.remove(current.getId());
+                        inFlight.release();
+                    }
+                });
+                TimeUnit.MILLISECONDS.sleep(pacingMs);
+            }
+            // 等在途投递全部收尾，排空耗时才算数
+            inFlight.acquire(concurrency);
+            inFlight.release(concurrency);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            return;
+        } finally {
+            draining.set(false);
+        }
+
+        long costMs = System.currentTimeMillis() - start;
+        Map<String, Object> m = new LinkedHashMap<>();
+        m.put("finishedAt", LocalDateTime.now());
+        m.put("delivered", delivered.get());
+        m.put("skipped", skipped.get());
+        m.put("drainMs", costMs);
+        lastDrain = m;
+        log.info("✅ [补发] 积压排空完毕：补发 {} 个，跳过 {} 个，耗时 {} ms", delivered.get(), skipped.get(), costMs);
+
+        // 排空期间又有新扫描入队的，接着排
+        if (!backlog.isEmpty() && draining.compareAndSet(false, true)) {
+            drainer.execute(this::drain);
+        }
+    }
+
+    private static Thread daemon(Runnable r, String name) {
+        Thread t = new Thread(r, name);
+        t.setDaemon(true);
+        return t;
+    }
+
+    @Getter
+    @AllArgsConstructor
+    static class Overdue {
+        private final Long id;
+        private final Instant triggerTime;
+        private final Instant eventTime;
+        private final int urgency;
+    }
+}
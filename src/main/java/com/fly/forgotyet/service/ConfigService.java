@@ -1,38 +1,205 @@
 package com.fly.forgotyet.service;
 
+import cn.hutool.crypto.SecureUtil;
+import com.fly.forgotyet.common.PromptTemplate;
 import com.fly.forgotyet.entity.AppConfig;
 import com.fly.forgotyet.repository.AppConfigRepository;
+import lombok.Getter;
 import lombok.RequiredArgsConstructor;
 import lombok.extern.slf4j.Slf4j;
+import org.springframework.scheduling.annotation.Scheduled;
 import org.springframework.stereotype.Service;
 
 import javax.annotation.PostConstruct;
+import java.time.Instant;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Deque;
+import java.util.LinkedHashMap;
+import java.util.List;
 import java.util.Map;
+import java.util.Objects;
+import java.util.TreeMap;
 import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.LongAdder;
 
+/**
+ * 配置快照：t_app_config 整张表加载成一个不可变快照，整体替换（volatile 引用），读的一方要么看到旧版本、要么看到新版本，不会半新半旧。
+ * - 定时拿库里的指纹（行数 + 最后修改时间 + 内容总长度）和当前快照比，一条聚合查询，不变就不重载
+ * - 多副本各自轮询，改库后最多一个轮询周期全部收敛，不用重启也不用挨个调 /refresh
+ * - version 取全部配置内容的哈希，同样的内容在每个副本上版本号一致
+ */
 @Slf4j
 @Service
 @RequiredArgsConstructor
 public class ConfigService {
 
+    private static final int HISTORY_SIZE = 10;
+
     private final AppConfigRepository appConfigRepository;
-    // 内存缓存
-    private final Map<String, String> configCache = new ConcurrentHashMap<>();
+
+    private volatile Snapshot snapshot = Snapshot.EMPTY;
+    // 库里没有时用的默认模板，按默认文本缓存，和快照无关
+    private final Map<String, PromptTemplate> defaults = new ConcurrentHashMap<>();
+    private final Deque<Map<String, Object>> history = new ArrayDeque<>();
+    private final LongAdder polls = new LongAdder();
+    private final LongAdder reloads = new LongAdder();
 
     @PostConstruct
     public void init() {
         refreshCache();
     }
 
+    /**
+     * 强制重载（启动、初始化数据后、手动 /refresh）
+     */
     public void refreshCache() {
-        log.info(">>> 开始刷新系统配置缓存...");
-        appConfigRepository.findAll().forEach(config -> {
-            configCache.put(config.getConfigKey(), config.getConfigValue());
-        });
-        log.info(">>> 配置缓存刷新完成，加载配置项: {}", configCache.size());
+        reload("manual");
+    }
+
+    /**
+     * 轮询：指纹没变就什么都不做
+     */
+    @Scheduled(fixedDelayString = "${app-config.poll-ms:10000}", initialDelayString = "${app-config.poll-ms:10000}")
+    public void checkForChanges() {
+        polls.increment();
+        try {
+            AppConfigRepository.Fingerprint fp = appConfigRepository.fingerprint();
+            if (!snapshot.matches(fp)) {
+                reload("poll");
+            }
+        } catch (Exception e) {
+            log.warn("⚠️ 配置版本检查失败，继续用当前快照 {}: {}", snapshot.getVersion(), e.getMessage());
+        }
+    }
+
+    // 串行重载：两次重载并发时，后读库的一定后发布，不会被旧快照覆盖
+    private synchronized void reload(String reason) {
+        AppConfigRepository.Fingerprint fp = appConfigRepository.fingerprint();
+        Snapshot next = Snapshot.of(appConfigRepository.findAll(), fp);
+        Snapshot prev = snapshot;
+        snapshot = next;
+        reloads.increment();
+        if (next.getVersion().equals(prev.getVersion())) {
+            log.debug(">>> 配置内容未变 ({})，只更新指纹", next.getVersion());
+            return;
+        }
+        Map<String, Object> h = new LinkedHashMap<>();
+        h.put("version", next.getVersion());
+        h.put("previous", prev.getVersion());
+        h.put("reason", reason);
+        h.put("loadedAt", next.getLoadedAt().toString());
+        h.put("templates", next.templateVersions());
+        synchronized (history) {
+            history.addFirst(h);
+            while (history.size() > HISTORY_SIZE) {
+                history.removeLast();
+            }
+        }
+        log.info(">>> 配置快照 {} -> {} ({})，配置项: {}", prev.getVersion(), next.getVersion(), reason, next.getValues().size());
+    }
+
+    /**
+     * 当前快照；一次调用里要读多项配置时先拿快照，保证读到的是同一版本
+     */
+    public Snapshot snapshot() {
+        return snapshot;
     }
 
     public String getPrompt(String key, String defaultValue) {
-        return configCache.getOrDefault(key, defaultValue);
+        return snapshot.get(key, defaultValue);
+    }
+
+    /**
+     * 各配置项当前的模板版本（内容哈希），和用量统计里的版本号对得上
+     */
+    public Map<String, String> templateVersions() {
+        return snapshot.templateVersions();
+    }
+
+    /**
+     * 取预编译模板；库里没有就编译默认值（同一个默认值只编译一次）
+     */
+    public PromptTemplate getTemplate(String key, String defaultValue) {
+        return template(snapshot, key, defaultValue);
+    }
+
+    public PromptTemplate template(Snapshot s, String key, String defaultValue) {
+        PromptTemplate t = s.getTemplates().get(key);
+        return t != null ? t : defaults.computeIfAbsent(defaultValue, PromptTemplate::compile);
+    }
+
+    public Map<String, Object> stats() {
+        Snapshot s = snapshot;
+        Map<String, Object> m = new LinkedHashMap<>();
+        m.put("version", s.getVersion());
+        m.put("loadedAt", s.getLoadedAt().toString());
+        m.put("keys", s.getValues().size());
+        m.put("templates", s.templateVersions());
+        m.put("polls", polls.sum());
+        m.put("reloads", reloads.sum());
+        synchronized (history) {
+            m.put("history", new ArrayList<>(history));
+        }
+        return m;
+    }
+
+    @Getter
+    public static final class Snapshot {
+
+        static final Snapshot EMPTY = new Snapshot(Map.of(), Map.of(), "empty", -1, null, null, Instant.EPOCH);
+
+        private final Map<String, String> values;
+        private final Map<String, PromptTemplate> templates;
+        private final String version;
+        private final Instant loadedAt;
+        // 加载时的库指纹
+        private final long rows;
+        private final Long lastUpdated;
+        private final Long totalLength;
+
+        private Snapshot(Map<String, String> values, Map<String, PromptTemplate> templates, String version,
+                         long rows, Long lastUpdated, Long totalLength, Instant loadedAt) {
+            this.values = values;
+            this.templates = templates;
+            this.version = version;
+            this.rows = rows;
+            this.lastUpdated = lastUpdated;
+            this.totalLength = totalLength;
+            this.loadedAt = loadedAt;
+        }
+
+        static Snapshot of(List<AppConfig> configs, AppConfigRepository.Fingerprint fp) {
+            Map<String, String> values = new TreeMap<>();
+            configs.forEach(c -> values.put(c.getConfigKey(), c.getConfigValue()));
+            Map<String, PromptTemplate> templates = new TreeMap<>();
+            StringBuilder digest = new StringBuilder();
+            values.forEach((k, v) -> {
+                templates.put(k, PromptTemplate.compile(v));
+                digest.append(k).append('\u0000').append(v).append('\u0001');
+            });
+            return new Snapshot(Collections.unmodifiableMap(values), Collections.unmodifiableMap(templates),
+                    SecureUtil.sha256(digest.toString()).substring(0, 8),
+                    fp == null ? -1 : fp.getRowCount(), fp == null ? null : fp.getLastUpdated(),
+                    fp == null ? null : fp.getTotalLength(), Instant.now());
+        }
+
+        boolean matches(AppConfigRepository.Fingerprint fp) {
+            return fp != null
+                    && fp.getRowCount() == rows
+                    && Objects.equals(fp.getLastUpdated(), lastUpdated)
+                    && Objects.equals(fp.getTotalLength(), totalLength);
+        }
+
+        public String get(String key, String defaultValue) {
+            return values.getOrDefault(key, defaultValue);
+        }
+
+        public Map<String, String> templateVersions() {
+            Map<String, String> m = new TreeMap<>();
+            templates.forEach((k, t) -> m.put(k, t.getVersion()));
+            return m;
+        }
     }
-}
\ No newline at end of file
+}
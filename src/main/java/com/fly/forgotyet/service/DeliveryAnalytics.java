@@ -0,0 +1,291 @@
+package com.fly.forgotyet.service;
+
+import com.fly.forgotyet.entity.DeliveryRollup;
+import com.fly.forgotyet.entity.Event;
+import com.fly.forgotyet.enums.TriggerBucket;
+import com.fly.forgotyet.enums.TriggerFeedback;
+import com.fly.forgotyet.enums.TriggerIntent;
+import com.fly.forgotyet.repository.DeliveryRollupRepository;
+import lombok.RequiredArgsConstructor;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.dao.DataIntegrityViolationException;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Service;
+
+import javax.annotation.PreDestroy;
+import java.time.Clock;
+import java.time.Duration;
+import java.time.Instant;
+import java.time.LocalDate;
+import java.util.ArrayList;
+import java.util.EnumMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.Function;
+
+/**
+ * 触发准确度分析：实际触发 / 交给 SMTP 相对 triggerTime 的延迟分布，以及用户反馈（早 / 刚好 / 晚）按 bucket、intent 的占比。
+ * - 投递和反馈发生时只在内存里按 (天, bucket, intent, 指标, 分档) 累加，定时把增量刷进 t_delivery_rollup（UPDATE +delta）
+ * - 报表只读汇总表 + 还没刷的增量，不扫 t_event，也不受归档影响
+ * - 分位数按分档估算（取所在档的上界），精度够看漂移趋势
+ * - 改反馈时旧的记 -1、新的记 +1，都记在当天；反馈按枚举名存，枚举调整顺序不会串到别的档
+ */
+@Slf4j
+@Service
+@RequiredArgsConstructor
+public class DeliveryAnalytics {
+
+    static final String FIRE_LAG = "fire_lag";
+    static final String SEND_LAG = "send_lag";
+    static final String SEND_FAILED = "send_failed";
+    static final String FEEDBACK = "feedback";
+
+    // 延迟分档上界（毫秒），最后一档是“超过 6 小时”（补发）
+    static final long[] LAG_BOUNDS_MS = {250, 500, 1_000, 2_000, 5_000, 10_000, 30_000, 60_000,
+            300_000, 900_000, 3_600_000, 21_600_000};
+
+    private final DeliveryRollupRepository rollupRepository;
+    private final Clock clock;
+
+    // 还没刷进库的增量；刷的时候 getAndSet(0)，并发累加不会丢
+    private final Map<String, Delta> pending = new ConcurrentHashMap<>();
+
+    public void fired(Event e, Instant firedAt) {
+        add(e.getTriggerBucket(), e.getTriggerIntent(), FIRE_LAG, lagBin(e.getTriggerTime(), firedAt), null, 1);
+    }
+
+    public void sent(Event e, Instant sentAt) {
+        add(e.getTriggerBucket(), e.getTriggerIntent(), SEND_LAG, lagBin(e.getTriggerTime(), sentAt), null, 1);
+    }
+
+    public void sendFailed(Event e) {
+        add(e.getTriggerBucket(), e.getTriggerIntent(), SEND_FAILED, 0, null, 1);
+    }
+
+    public void feedback(TriggerBucket bucket, TriggerIntent intent, TriggerFeedback previous, TriggerFeedback current) {
+        if (previous == current) {
+            return;
+        }
+        if (previous != null) {
+            add(bucket, intent, FEEDBACK, 0, previous.name(), -1);
+        }
+        if (current != null) {
+            add(bucket, intent, FEEDBACK, 0, current.name(), 1);
+        }
+    }
+
+    // label 非空（反馈）时 key 的最后一段用 label，否则用延迟分档
+    private void add(TriggerBucket bucket, TriggerIntent intent, String metric, int bin, String label, long n) {
+        LocalDate day = LocalDate.now(clock);
+        String key = day + "|" + bucket + "|" + intent + "|" + metric + "|" + (label != null ? label : String.valueOf(bin));
+        pending.computeIfAbsent(key, k -> new Delta(day, bucket, intent, metric, bin, label)).hits.addAndGet(n);
+    }
+
+    static int lagBin(Instant planned, Instant actual) {
+        if (planned == null || actual == null) {
+            return LAG_BOUNDS_MS.length;
+        }
+        long lag = Math.max(0, Duration.between(planned, actual).toMillis());
+        for (int i = 0; i < LAG_BOUNDS_MS.length; i++) {
+            if (lag <= LAG_BOUNDS_MS[i]) {
+                return i;
+            }
+        }
+        return LAG_BOUNDS_MS.length;
+    }
+
+    /**
+     * 把增量刷进汇总表：先 UPDATE +delta，行不存在再 INSERT，撞主键（别的副本刚建）就再累加一次
+     */
+    @Scheduled(fixedDelayString = "${analytics.flush-ms:60000}", initialDelayString = "${analytics.flush-ms:60000}")
+    @PreDestroy
+    public void flush() {
+        LocalDate keepFrom = LocalDate.now(clock).minusDays(1);
+        int rows = 0;
+        for (Map.Entry<String, Delta> entry : pending.entrySet()) {
+            Delta d = entry.getValue();
+            long n = d.hits.getAndSet(0);
+            if (n != 0) {
+                try {
+                    write(entry.getKey(), d, n);
+                    rows++;
+                } catch (Exception e) {
+                    d.hits.addAndGet(n); // 下一轮再刷
+                    log.warn("⚠️ 投递汇总刷库失败 {}: {}", entry.getKey(), e.getMessage());
+                    continue;
+                }
+            }
+            // 前天及更早的 key 不会再有人写了，清掉
+            if (d.day.isBefore(keepFrom) && d.hits.get() == 0) {
+                pending.remove(entry.getKey(), d);
+            }
+        }
+        if (rows > 0) {
+            log.debug("📈 投递汇总刷库 {} 行", rows);
+        }
+    }
+
+    private void write(String key, Delta d, long n) {
+        if (rollupRepository.increment(key, n) > 0) {
+            return;
+        }
+        DeliveryRollup r = new DeliveryRollup();
+        r.setRollupKey(key);
+        r.setStatDay(d.day);
+        r.setBucket(d.bucket);
+        r.setIntent(d.intent);
+        r.setMetric(d.metric);
+        r.setBin(d.bin);
+        r.setLabel(d.label);
+        r.setHits(n);
+        try {
+            rollupRepository.saveAndFlush(r);
+        } catch (DataIntegrityViolationException e) {
+            rollupRepository.increment(key, n);
+        }
+    }
+
+    /**
+     * 最近 days 天：按 bucket、按 bucket × intent 两种粒度出延迟分位数和反馈占比
+     */
+    public Map<String, Object> report(int days) {
+        LocalDate from = LocalDate.now(clock).minusDays(Math.max(1, days) - 1L);
+        List<Delta> rows = new ArrayList<>();
+        for (DeliveryRollup r : rollupRepository.findByStatDayGreaterThanEqual(from)) {
+            Delta d = new Delta(r.getStatDay(), r.getBucket(), r.getIntent(), r.getMetric(), r.getBin(), r.getLabel());
+            d.hits.set(r.getHits());
+            rows.add(d);
+        }
+        pending.values().stream().filter(d -> !d.day.isBefore(from)).forEach(rows::add);
+
+        Map<String, Object> m = new LinkedHashMap<>();
+        m.put("from", from.toString());
+        m.put("lagBoundsMs", LAG_BOUNDS_MS);
+        m.put("byBucket", group(rows, d -> String.valueOf(d.bucket)));
+        m.put("byBucketIntent", group(rows, d -> d.bucket + "/" + d.intent));
+        m.put("all", group(rows, d -> "all").get("all"));
+        return m;
+    }
+
+    private static Map<String, Object> group(List<Delta> rows, Function<Delta, String> keyFn) {
+        Map<String, Acc> accs = new TreeMap<>();
+        for (Delta d : rows) {
+            accs.computeIfAbsent(keyFn.apply(d), k -> new Acc()).add(d);
+        }
+        Map<String, Object> out = new TreeMap<>();
+        accs.forEach((k, acc) -> out.put(k, acc.toMap()));
+        return out;
+    }
+
+    private static class Delta {
+        final LocalDate day;
+        final TriggerBucket bucket;
+        final TriggerIntent intent;
+        final String metric;
+        final int bin;
+        final String label;
+        final AtomicLong hits = new AtomicLong();
+
+        Delta(LocalDate day, TriggerBucket bucket, TriggerIntent intent, String metric, int bin, String label) {
+            this.day = day;
+            this.bucket = bucket;
+            this.intent = intent;
+            this.metric = metric;
+            this.bin = bin;
+            this.label = label;
+        }
+    }
+
+    private static class Acc {
+        final long[] fireLag = new long[LAG_BOUNDS_MS.length + 1];
+        final long[] sendLag = new long[LAG_BOUNDS_MS.length + 1];
+        final Map<TriggerFeedback, Long> feedback = new EnumMap<>(TriggerFeedback.class);
+        long sendFailed;
+
+        void add(Delta d) {
+            long n = d.hits.get();
+            switch (d.metric) {
+                case FIRE_LAG:
+                    fireLag[Math.min(d.bin, fireLag.length - 1)] += n;
+                    break;
+                case SEND_LAG:
+                    sendLag[Math.min(d.bin, sendLag.length - 1)] += n;
+                    break;
+                case FEEDBACK:
+                    TriggerFeedback f = feedbackOf(d.label);
+                    if (f != null) {
+                        feedback.merge(f, n, Long::sum);
+                    }
+                    break;
+                case SEND_FAILED:
+                    sendFailed += n;
+                    break;
+                default:
+                    break;
+            }
+        }
+
+        Map<String, Object> toMap() {
+            long fired = sum(fireLag);
+            long answered = feedback.values().stream().mapToLong(Long::longValue).sum();
+            Map<String, Object> m = new LinkedHashMap<>();
+            m.put("fired", fired);
+            m.put("sent", sum(sendLag));
+            m.put("sendFailed", sendFailed);
+            m.put("fireLagMs", percentiles(fireLag));
+            m.put("sendLagMs", percentiles(sendLag));
+            m.put("feedbacks", answered);
+            m.put("feedbackRate", fired == 0 ? 0 : (double) answered / fired);
+            for (TriggerFeedback f : TriggerFeedback.values()) {
+                m.put(f.name().toLowerCase() + "Ratio", answered == 0 ? 0 : (double) feedback.getOrDefault(f, 0L) / answered);
+            }
+            return m;
+        }
+
+        private static Map<String, Object> percentiles(long[] hist) {
+            Map<String, Object> m = new LinkedHashMap<>();
+            m.put("p50", percentile(hist, 0.50));
+            m.put("p90", percentile(hist, 0.90));
+            m.put("p99", percentile(hist, 0.99));
+            return m;
+        }
+
+        // 已经删掉的枚举值：历史计数不再展示，也不会串到别的档
+        private static TriggerFeedback feedbackOf(String label) {
+            try {
+                return label == null ? null : TriggerFeedback.valueOf(label);
+            } catch (IllegalArgumentException e) {
+                return null;
+            }
+        }
+
+        // 所在档的上界；落在最后一档返回 null（超过 6 小时，只可能是补发）；没有数据也返回 null，不能读成“延迟 0 ms”
+        static Long percentile(long[] hist, double q) {
+            long total = sum(hist);
+            if (total <= 0) {
+                return null;
+            }
+            long rank = (long) Math.ceil(total * q);
+            long seen = 0;
+            for (int i = 0; i < hist.length; i++) {
+                seen += hist[i];
+                if (seen >= rank) {
+                    return i < LAG_BOUNDS_MS.length ? LAG_BOUNDS_MS[i] : null;
+                }
+            }
+            return null;
+        }
+
+        private static long sum(long[] a) {
+            long s = 0;
+            for (long v : a) {
+                s += v;
+            }
+            return s;
+        }
+    }
+}
@@ -0,0 +1,92 @@
+package com.fly.forgotyet.service;
+
+import com.fly.forgotyet.config.SchedulerProperties;
+import com.fly.forgotyet.entity.Event;
+import com.fly.forgotyet.enums.TriggerBucket;
+import lombok.RequiredArgsConstructor;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.stereotype.Service;
+
+import java.time.Duration;
+import java.time.Instant;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * 投递截止时间：每次触发都带一个“最晚几点必须发出去”。
+ * - 截止 = 触发时间 + 按档位的宽限（分钟级最紧），且不晚于事件本身
+ * - LLM 生成文案只能用剩下的预算，预算不够就直接用兜底模板准点发
+ * - 按 bucket 记准点 / 超时 / 走了兜底模板的次数
+ */
+@Slf4j
+@Service
+@RequiredArgsConstructor
+public class DeliveryDeadlines {
+
+    private final SchedulerProperties props;
+
+    private final Map<String, Counter> byBucket = new ConcurrentHashMap<>();
+
+    public Instant deadlineFor(Event event) {
+        Instant base = event.getTriggerTime() != null ? event.getTriggerTime() : Instant.now();
+        Instant deadline = base.plusMillis(slackMillis(event.getTriggerBucket()));
+        Instant eventTime = event.getEventTime();
+        // M0 之类触发即事件的，截止按宽限算；否则无论如何不能晚于事件本身
+        if (eventTime != null && eventTime.isAfter(base) && eventTime.isBefore(deadline)) {
+            deadline = eventTime;
+        }
+        return deadline;
+    }
+
+    /**
+     * 留给 LLM 的预算：截止前扣掉交给邮件线程的余量
+     */
+    public Instant llmDeadline(Instant deadline) {
+        return deadline.minusMillis(props.getDeliveryReserveMs());
+    }
+
+    public void record(TriggerBucket bucket, Instant deadline, Instant sentAt, boolean fallback) {
+        Counter c = byBucket.computeIfAbsent(bucket == null ? "UNKNOWN" : bucket.name(), k -> new Counter());
+        c.delivered.increment();
+        if (fallback) {
+            c.fallback.increment();
+        }
+        long lateMs = Duration.between(deadline, sentAt).toMillis();
+        if (lateMs > 0) {
+            c.missed.increment();
+            c.maxLateMs.accumulateAndGet(lateMs, Math::max);
+            log.warn("⏱️ 投递超过截止时间 {} ms, bucket={}", lateMs, bucket);
+        }
+    }
+
+    public Map<String, Object> stats() {
+        Map<String, Object> m = new TreeMap<>();
+        byBucket.forEach((bucket, c) -> {
+            Map<String, Object> one = new TreeMap<>();
+            one.put("delivered", c.delivered.sum());
+            one.put("missed", c.missed.sum());
+            one.put("fallback", c.fallback.sum()); // 预算不够 / 模型挂了，用了兜底模板
+            one.put("maxLateMs", c.maxLateMs.get());
+            m.put(bucket, one);
+        });
+        return m;
+    }
+
+    private long slackMillis(TriggerBucket bucket) {
+        return switch (TriggerBucketUtil.lane(bucket)) {
+            case 0 -> props.getDeliverySlackMinuteMs();
+            case 1 -> props.getDeliverySlackHourMs();
+            default -> props.getDeliverySlackDayMs();
+        };
+    }
+
+    private static class Counter {
+        final LongAdder delivered = new LongAdder();
+        final LongAdder missed = new LongAdder();
+        final LongAdder fallback = new LongAdder();
+        final AtomicLong maxLateMs = new AtomicLong();
+    }
+}
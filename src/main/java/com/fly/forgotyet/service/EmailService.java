@@ -1,5 +1,6 @@
 package com.fly.forgotyet.service;
 
+import com.fly.forgotyet.common.PipelineMetrics;
 import lombok.RequiredArgsConstructor;
 import lombok.extern.slf4j.Slf4j;
 import org.springframework.beans.factory.annotation.Value;
@@ -8,12 +9,16 @@ import org.springframework.mail.javamail.JavaMailSender;
 import org.springframework.scheduling.annotation.Async;
 import org.springframework.stereotype.Service;
 
+import java.time.Instant;
+import java.util.concurrent.CompletableFuture;
+
 @Slf4j
 @Service
 @RequiredArgsConstructor
 public class EmailService {
 
     private final JavaMailSender mailSender;
+    private final PipelineMetrics metrics;
 
     // 从配置文件读取发件人（必须和配置的 username 一致）
     @Value("${spring.mail.username}")
@@ -21,9 +26,23 @@ public class EmailService {
 
     /**
      * 发送纯文本邮件 (异步执行，不阻塞主线程)
+     * 返回交给 SMTP 的时刻；失败时异常结束（调用方不关心可以不管）
      */
     @Async
-    public void sendSimpleEmail(String to, String subject, String content) {
+    public CompletableFuture<Instant> sendSimpleEmail(String to, String subject, String content) {
+        return send(to, subject, content);
+    }
+
+    /**
+     * 提醒邮件：走 reminderMailExecutor，池子满了抛 TaskRejectedException，不会退化成在触发线程上同步发
+     */
+    @Async("reminderMailExecutor")
+    public CompletableFuture<Instant> sendReminderEmail(String to, String subject, String content) {
+        return send(to, subject, content);
+    }
+
+    private CompletableFuture<Instant> send(String to, String subject, String content) {
+        long start = System.nanoTime();
         try {
             log.info(">>> 正在尝试发送邮件给: {}", to);
 
@@ -34,11 +53,15 @@ public class EmailService {
             message.setText(content);
 
             mailSender.send(message);
+            metrics.emailSend(System.nanoTime() - start, true);
 
             log.info(">>> 邮件发送成功!");
+            return CompletableFuture.completedFuture(Instant.now());
         } catch (Exception e) {
+            metrics.emailSend(System.nanoTime() - start, false);
             log.error("邮件发送失败: ", e);
             // 这里未来可以加重试机制
+            return CompletableFuture.failedFuture(e);
         }
     }
 }
\ No newline at end of file
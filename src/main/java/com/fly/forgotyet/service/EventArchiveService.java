@@ -0,0 +1,136 @@
+package com.fly.forgotyet.service;
+
+import com.fly.forgotyet.entity.Event;
+import com.fly.forgotyet.entity.EventArchive;
+import com.fly.forgotyet.enums.EventStatus;
+import com.fly.forgotyet.enums.TriggerFeedback;
+import com.fly.forgotyet.repository.EventArchiveRepository;
+import com.fly.forgotyet.repository.EventRepository;
+import lombok.RequiredArgsConstructor;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.data.domain.PageRequest;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.List;
+import java.util.Optional;
+
+/**
+ * 冷热分离：t_event 只留工作集（PENDING / SILENT / SENDING + 保留期内的终态），
+ * 超过保留期的终态事件按批搬到 t_event_archive。
+ * 历史列表、偏好统计、反馈 / 取消的回查都会兜底读冷表，对用户无感。
+ */
+@Slf4j
+@Service
+@RequiredArgsConstructor
+public class EventArchiveService {
+
+    public static final List<EventStatus> TERMINAL_STATUSES = List.of(EventStatus.DELIVERED, EventStatus.CANCELED, EventStatus.EXPIRED);
+
+    private final EventRepository eventRepository;
+    private final EventArchiveRepository archiveRepository;
+    private final TransactionTemplate transactionTemplate;
+
+    // 终态事件在热表里保留多久（留足时间给用户点“早/好/晚”反馈）
+    @Value("${archive.retention-days:30}")
+    private int retentionDays;
+
+    @Value("${archive.batch-size:500}")
+    private int batchSize;
+
+    @Scheduled(fixedDelayString = "${archive.interval-ms:3600000}", initialDelayString = "${archive.interval-ms:3600000}")
+    public void archiveLoop() {
+        try {
+            archiveTick();
+        } catch (Exception e) {
+            log.error("❌ 归档任务异常", e);
+        }
+    }
+
+    /**
+     * 一轮归档：一批一个事务（先写冷表再删热表），直到没有候选，返回搬走的条数
+     */
+    public int archiveTick() {
+        long start = System.currentTimeMillis();
+        LocalDateTime before = LocalDateTime.now().minusDays(retentionDays);
+        int moved = 0;
+        while (true) {
+            List<Long> ids = eventRepository.findArchivableIds(TERMINAL_STATUSES, before, PageRequest.of(0, batchSize));
+            if (ids.isEmpty()) {
+                break;
+            }
+            Integer n = transactionTemplate.execute(tx -> moveBatch(ids));
+            moved += n == null ? 0 : n;
+            if (ids.size() < batchSize) {
+                break;
+            }
+        }
+        if (moved > 0) {
+            log.info("🧊 [归档] 搬走 {} 个终态事件到冷表，耗时 {} ms", moved, System.currentTimeMillis() - start);
+        }
+        return moved;
+    }
+
+    private int moveBatch(List<Long> ids) {
+        LocalDateTime now = LocalDateTime.now();
+        List<EventArchive> rows = new ArrayList<>(ids.size());
+        List<Long> movable = new ArrayList<>(ids.size());
+        for (Event e : eventRepository.findAllById(ids)) {
+            if (TERMINAL_STATUSES.contains(e.getStatus())) {
+                rows.add(EventArchive.from(e, now));
+                movable.add(e.getId());
+            }
+        }
+        archiveRepository.saveAll(rows);
+        int deleted = eventRepository.deleteArchived(movable, TERMINAL_STATUSES);
+        if (deleted != movable.size()) {
+            // 理论上终态不会再变；对不上就整批回滚，下一轮再来
+            throw new IllegalStateException("归档删除条数不一致: expected=" + movable.size() + ", deleted=" + deleted);
+        }
+        return deleted;
+    }
+
+    /**
+     * 历史列表：热表不够时用冷表补齐，按创建时间倒序合并
+     */
+    public List<Event> mergeRecent(List<Event> hot, String userEmail, int size) {
+        if (hot.size() >= size) {
+            return hot;
+        }
+        List<Event> merged = new ArrayList<>(hot);
+        archiveRepository.findByUserEmailOrderByCreateTimeDesc(userEmail, PageRequest.of(0, size))
+                .forEach(a -> merged.add(a.toEvent()));
+        merged.sort(Comparator.comparing(Event::getCreateTime, Comparator.nullsLast(Comparator.reverseOrder())));
+        return merged.size() > size ? merged.subList(0, size) : merged;
+    }
+
+    /**
+     * 偏好统计：最近 N 条某状态的事件，热表不够时用冷表补齐
+     */
+    public List<Event> recentByStatus(List<Event> hot, String userEmail, EventStatus status, int n) {
+        if (hot.size() >= n) {
+            return hot;
+        }
+        List<Event> merged = new ArrayList<>(hot);
+        archiveRepository.findByUserEmailAndStatusOrderByCreateTimeDesc(userEmail, status, PageRequest.of(0, n - hot.size()))
+                .forEach(a -> merged.add(a.toEvent()));
+        return merged;
+    }
+
+    public Optional<EventArchive> findArchived(Long id) {
+        return archiveRepository.findById(id);
+    }
+
+    /**
+     * 冷表里的事件也允许补反馈（偏好学习还会读到它）
+     */
+    public void recordFeedback(EventArchive archived, TriggerFeedback feedback) {
+        archived.setFeedback(feedback);
+        archiveRepository.save(archived);
+    }
+}
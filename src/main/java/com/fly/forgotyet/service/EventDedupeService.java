@@ -0,0 +1,127 @@
+package com.fly.forgotyet.service;
+
+import cn.hutool.crypto.SecureUtil;
+import com.fly.forgotyet.common.RotatingBloomFilter;
+import com.fly.forgotyet.entity.Event;
+import com.fly.forgotyet.repository.EventRepository;
+import com.fly.forgotyet.utils.ReminderText;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Service;
+
+import javax.annotation.PostConstruct;
+import java.time.Instant;
+import java.time.LocalDateTime;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * 收录去重：双击、弱网重传、语音转写后重复提交，在花掉 LLM 之前就拦下来。
+ * - 客户端带了 Idempotency-Key：按 (用户, key) 去重
+ * - 没带：按 (用户, 归一化原话, 时间窗) 的内容哈希去重，边界附近同时查上一个窗口
+ * - 先问内存里的滚动布隆过滤器，“肯定没有”直接放行；“可能有”才回库按唯一索引查
+ * - 多副本 / 重启后布隆过滤器看不到的，由 t_event.dedupe_key 的唯一索引兜底
+ */
+@Slf4j
+@Service
+public class EventDedupeService {
+
+    private final EventRepository eventRepository;
+    private final long windowMillis;
+    private final RotatingBloomFilter filter;
+
+    private final AtomicLong checks = new AtomicLong();
+    private final AtomicLong filterPasses = new AtomicLong();
+    private final AtomicLong duplicates = new AtomicLong();
+    private final AtomicLong falsePositives = new AtomicLong();
+
+    public EventDedupeService(EventRepository eventRepository,
+                              @Value("${dedupe.window-seconds:120}") long windowSeconds,
+                              @Value("${dedupe.expected-per-window:20000}") int expectedPerWindow,
+                              @Value("${dedupe.false-positive-rate:0.01}") double fpp) {
+        this.eventRepository = eventRepository;
+        this.windowMillis = Math.max(1, windowSeconds) * 1000;
+        this.filter = new RotatingBloomFilter(expectedPerWindow, fpp, windowMillis);
+    }
+
+    /**
+     * 重启后把最近两个窗口的去重键灌回过滤器
+     */
+    @PostConstruct
+    public void warmUp() {
+        List<String> keys = eventRepository.findDedupeKeysSince(
+                LocalDateTime.now().minusNanos(2 * windowMillis * 1_000_000));
+        keys.forEach(k -> filter.put(hash64(k)));
+        log.info("🧮 去重过滤器就绪：{} KB，灌入最近 {} 条", filter.sizeInBytes() / 1024, keys.size());
+    }
+
+    /**
+     * 本次收录落库时要写的去重键
+     */
+    public String keyFor(String email, String rawInput, String idempotencyKey, Instant now) {
+        if (idempotencyKey != null && !idempotencyKey.isBlank()) {
+            return digest(email + "\u0001k\u0001" + idempotencyKey.trim());
+        }
+        return contentKey(email, rawInput, now.toEpochMilli() / windowMillis);
+    }
+
+    /**
+     * 找时间窗内的重复收录；已取消的会在取消时释放去重键，不会被当成重复
+     */
+    public Optional<Event> findDuplicate(String email, String rawInput, String idempotencyKey, Instant now) {
+        checks.incrementAndGet();
+        String key = keyFor(email, rawInput, idempotencyKey, now);
+        Optional<Event> hit = lookup(key);
+        if (hit.isEmpty() && (idempotencyKey == null || idempotencyKey.isBlank())) {
+            // 刚跨过窗口边界的重传：上一个窗口的键也查一下
+            hit = lookup(contentKey(email, rawInput, now.toEpochMilli() / windowMillis - 1));
+        }
+        hit.ifPresent(e -> {
+            duplicates.incrementAndGet();
+            log.info("🔁 重复收录已拦截: user={}, eventId={}", email, e.getId());
+        });
+        return hit;
+    }
+
+    public void remember(String key) {
+        filter.put(hash64(key));
+    }
+
+    public Map<String, Object> stats() {
+        Map<String, Object> m = new LinkedHashMap<>();
+        m.put("checks", checks.get());
+        m.put("filterPasses", filterPasses.get()); // 过滤器直接放行、没有回库的
+        m.put("duplicates", duplicates.get());
+        m.put("falsePositives", falsePositives.get()); // 过滤器说可能有、库里其实没有的
+        m.put("filterKb", filter.sizeInBytes() / 1024);
+        return m;
+    }
+
+    private Optional<Event> lookup(String key) {
+        if (!filter.mightContain(hash64(key))) {
+            filterPasses.incrementAndGet();
+            return Optional.empty();
+        }
+        Optional<Event> e = eventRepository.findByDedupeKey(key);
+        if (e.isEmpty()) {
+            falsePositives.incrementAndGet();
+        }
+        return e;
+    }
+
+    private String contentKey(String email, String rawInput, long window) {
+        return digest(email + "\u0001c\u0001" + ReminderText.normalize(rawInput) + "\u0001" + window);
+    }
+
+    // SHA-256 截前 128 位，32 个十六进制字符
+    private static String digest(String s) {
+        return SecureUtil.sha256(s).substring(0, 32);
+    }
+
+    private static long hash64(String key) {
+        return Long.parseUnsignedLong(key.substring(0, 16), 16);
+    }
+}
@@ -0,0 +1,325 @@
+package com.fly.forgotyet.service;
+
+import com.fly.forgotyet.common.StageTimer;
+import com.fly.forgotyet.common.Tracer;
+import com.fly.forgotyet.entity.Event;
+import com.fly.forgotyet.enums.EventStatus;
+import com.fly.forgotyet.repository.EventRepository;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.core.task.TaskRejectedException;
+import org.springframework.dao.DataIntegrityViolationException;
+import org.springframework.data.domain.PageRequest;
+import org.springframework.orm.ObjectOptimisticLockingFailureException;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.scheduling.concurrent.ThreadPoolTaskExecutor;
+import org.springframework.stereotype.Service;
+
+import java.time.Duration;
+import java.time.Instant;
+import java.time.LocalDateTime;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+import java.util.Set;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * 持久化收录队列：原话先以 PARSING 行落库再回应用户，解析交给有界的工作池从库里认领。
+ * - 认领和调度一样走租约：进程崩溃后租约过期，别的节点（或重启后的自己）会接着解析
+ * - 解析跑在专用的有界线程池 eventExecutor 上（AsyncConfig），积压留在库里，不再无限堆 @Async 任务
+ * - 准入：按积压深度和平均解析耗时估算排队时间，超过上限让客户端带着 Retry-After 稍后再来
+ * - 解析失败退避重试，超过次数转 PENDING，原话不丢
+ * 重复提交由 EventDedupeService 在落库前拦下；本节点收录的请求由 submit 直接派发，不用等轮询；轮询只负责积压和重启后的续跑
+ */
+@Slf4j
+@Service
+public class EventIntakeService {
+
+    private static final String GIVE_UP_REASON = "pending: intake_parse_failed";
+
+    private final EventRepository eventRepository;
+    private final EventWriteBehind eventWriteBehind;
+    private final EventService eventService;
+    private final EventSchedulerService schedulerService;
+    private final EventDedupeService eventDedupeService;
+    private final ThreadPoolTaskExecutor eventExecutor;
+    private final StageTimer stageTimer;
+    private final Tracer tracer;
+
+    private final int workers;
+    private final int leaseSeconds;
+    private final int maxAttempts;
+    private final int maxBacklog;
+    private final long maxWaitMs;
+    private final long waiterTimeoutMs;
+
+    // 本节点已派发（排队中 + 解析中）的 id，避免轮询把自己手上的再派一次
+    private final Set<Long> inFlight = ConcurrentHashMap.newKeySet();
+    // 本节点收录的请求，解析完回调给调用方（语音链路要拿计划结果）
+    // 被取消 / 租约被别的节点接走的行这里等不到结果，靠 waiter-timeout-ms 超时摘掉
+    private final Map<Long, CompletableFuture<Event>> waiters = new ConcurrentHashMap<>();
+    // 失败次数只记在内存里：重启后重新计数，最多多试几次
+    private final Map<Long, Integer> failures = new ConcurrentHashMap<>();
+
+    private final AtomicLong processed = new AtomicLong();
+    private final AtomicLong gaveUp = new AtomicLong();
+    private final AtomicLong parseNanos = new AtomicLong();
+    private final AtomicLong rejected = new AtomicLong();
+    private final AtomicLong shed = new AtomicLong();
+
+    // 最近一次轮询看到的队列深度，收录时做准入判断，不必每次都 count
+    // 收录线程累加、轮询线程覆盖，用 AtomicLong 避免 ++ 丢更新
+    private final AtomicLong lastDepth = new AtomicLong();
+
+    public EventIntakeService(EventRepository eventRepository,
+                              EventWriteBehind eventWriteBehind,
+                              EventService eventService,
+                              EventSchedulerService schedulerService,
+                              EventDedupeService eventDedupeService,
+                              ThreadPoolTaskExecutor eventExecutor,
+                              StageTimer stageTimer,
+                              Tracer tracer,
+                              @Value("${intake.workers:4}") int workers,
+                              @Value("${intake.lease-seconds:120}") int leaseSeconds,
+                              @Value("${intake.max-attempts:3}") int maxAttempts,
+                              @Value("${intake.max-backlog:2000}") int maxBacklog,
+                              @Value("${intake.max-wait-ms:60000}") long maxWaitMs,
+                              @Value("${intake.waiter-timeout-ms:600000}") long waiterTimeoutMs) {
+        this.eventRepository = eventRepository;
+        this.eventWriteBehind = eventWriteBehind;
+        this.eventService = eventService;
+        this.schedulerService = schedulerService;
+        this.eventDedupeService = eventDedupeService;
+        this.eventExecutor = eventExecutor;
+        this.stageTimer = stageTimer;
+        this.tracer = tracer;
+        this.workers = Math.max(1, workers);
+        this.leaseSeconds = Math.max(10, leaseSeconds);
+        this.maxAttempts = Math.max(1, maxAttempts);
+        this.maxBacklog = maxBacklog;
+        this.maxWaitMs = maxWaitMs;
+        this.waiterTimeoutMs = Math.max(1000, waiterTimeoutMs);
+    }
+
+    public CompletableFuture<Event> submit(String rawInput, String email) {
+        return submit(rawInput, email, null);
+    }
+
+    /**
+     * 收录：写入 PARSING 行后立即返回（最多等一个写合并窗口），解析完成时 future 完成
+     * 时间窗内的重复提交不落新行、不花 LLM，直接返回已有的那条
+     */
+    public CompletableFuture<Event> submit(String rawInput, String email, String idempotencyKey) {
+        Instant now = Instant.now();
+        Optional<Event> duplicate = eventDedupeService.findDuplicate(email, rawInput, idempotencyKey, now);
+        if (duplicate.isPresent()) {
+            return duplicateOf(duplicate.get());
+        }
+
+        String dedupeKey = eventDedupeService.keyFor(email, rawInput, idempotencyKey, now);
+        Event intake = new Event();
+        intake.setRawInput(rawInput);
+        intake.setUserEmail(email);
+        intake.setStatus(EventStatus.PARSING);
+        intake.setDedupeKey(dedupeKey);
+        Event saved;
+        try {
+            saved = eventWriteBehind.save(intake);
+        } catch (DataIntegrityViolationException e) {
+            // 并发的重复提交（或别的副本刚收下的）撞上唯一索引：以先落库的为准
+            Event existing = eventRepository.findByDedupeKey(dedupeKey).orElseThrow(() -> e);
+            eventDedupeService.remember(dedupeKey);
+            return duplicateOf(existing);
+        }
+        eventDedupeService.remember(dedupeKey);
+
+        Long id = saved.getId();
+        CompletableFuture<Event> future = new CompletableFuture<>();
+        waiters.put(id, future);
+        // 超时或正常完成都从等待表里摘掉，不留给永远等不到结果的行
+        future.orTimeout(waiterTimeoutMs, TimeUnit.MILLISECONDS)
+                .whenComplete((r, e) -> waiters.remove(id, future));
+        lastDepth.incrementAndGet();
+        // 有空闲名额就直接派发；没有就留在库里等轮询
+        dispatch(id);
+        return future;
+    }
+
+    private CompletableFuture<Event> duplicateOf(Event existing) {
+        if (existing.is(EventStatus.PARSING)) {
+            CompletableFuture<Event> waiting = waiters.get(existing.getId());
+            if (waiting != null) {
+                return waiting; // 第一次提交还在解析，等同一个结果
+            }
+        }
+        return CompletableFuture.completedFuture(existing);
+    }
+
+    /**
+     * 准入：返回 0 表示可以收；否则是建议客户端多少秒后重试
+     * 预计排队时间 = 积压 / 工作线程数 × 平均解析耗时，超过 max-wait-ms 的活接了也做不完
+     */
+    public long retryAfterSeconds() {
+        long depth = lastDepth.get();
+        long done = processed.get();
+        long avgMs = done == 0 ? 0 : parseNanos.get() / done / 1_000_000;
+        long expectedWaitMs = depth * avgMs / workers;
+        boolean full = maxBacklog > 0 && depth >= maxBacklog;
+        if (!full && (maxWaitMs <= 0 || expectedWaitMs <= maxWaitMs)) {
+            return 0;
+        }
+        shed.incrementAndGet();
+        // 等积压消化到阈值以内大概要多久
+        long overMs = full ? Math.max(expectedWaitMs - maxWaitMs, avgMs) : expectedWaitMs - maxWaitMs;
+        return Math.min(300, Math.max(1, (overMs + 999) / 1000));
+    }
+
+    @Scheduled(fixedDelayString = "${intake.poll-ms:2000}", initialDelayString = "${intake.poll-ms:2000}")
+    public void pollLoop() {
+        try {
+            poll();
+        } catch (Exception e) {
+            log.error("❌ 收录队列轮询异常", e);
+        }
+    }
+
+    /**
+     * 按空闲名额从库里认领积压（含重启前没解析完的），返回本次派发数量
+     */
+    public int poll() {
+        long depth = eventRepository.countByStatus(EventStatus.PARSING);
+        lastDepth.set(depth);
+        ThreadPoolExecutor tpe = eventExecutor.getThreadPoolExecutor();
+        int free = tpe.getQueue().remainingCapacity() + Math.max(0, tpe.getMaximumPoolSize() - tpe.getActiveCount());
+        if (free == 0 || depth == 0) {
+            return 0;
+        }
+        List<Long> ids = eventRepository.findClaimableIntakeIds(
+                schedulerService.getNodeId(), Instant.now(), PageRequest.of(0, free + inFlight.size()));
+        int dispatched = 0;
+        for (Long id : ids) {
+            if (!inFlight.contains(id) && dispatch(id)) {
+                dispatched++;
+            }
+        }
+        return dispatched;
+    }
+
+    public Map<String, Object> stats() {
+        LocalDateTime oldest = eventRepository.findOldestCreateTime(EventStatus.PARSING);
+        long depth = eventRepository.countByStatus(EventStatus.PARSING);
+        lastDepth.set(depth);
+        long done = processed.get();
+
+        Map<String, Object> m = new LinkedHashMap<>();
+        m.put("depth", depth);
+        m.put("oldestAgeMs", oldest == null ? 0 : Duration.between(oldest, LocalDateTime.now()).toMillis());
+        m.put("dispatched", inFlight.size());
+        m.put("processed", done);
+        m.put("gaveUp", gaveUp.get());
+        m.put("avgParseMs", done == 0 ? 0 : parseNanos.get() / done / 1_000_000);
+        m.put("shed", shed.get());
+
+        ThreadPoolExecutor tpe = eventExecutor.getThreadPoolExecutor();
+        Map<String, Object> executor = new LinkedHashMap<>();
+        executor.put("workers", workers);
+        executor.put("active", tpe.getActiveCount());
+        executor.put("queued", tpe.getQueue().size());
+        executor.put("queueRemaining", tpe.getQueue().remainingCapacity());
+        executor.put("rejected", rejected.get());
+        m.put("executor", executor);
+        m.put("stages", stageTimer.snapshot());
+        m.put("dedupe", eventDedupeService.stats());
+        return m;
+    }
+
+    private boolean dispatch(Long id) {
+        if (!inFlight.add(id)) {
+            return false;
+        }
+        try {
+            eventExecutor.execute(() -> {
+                try {
+                    claimAndProcess(id);
+                } finally {
+                    inFlight.remove(id);
+                }
+            });
+            return true;
+        } catch (TaskRejectedException e) {
+            // 队列满了 / 停机中：行还在库里，下一轮轮询再捡
+            inFlight.remove(id);
+            rejected.incrementAndGet();
+            return false;
+        }
+    }
+
+    private void claimAndProcess(Long id) {
+        try (Tracer.Scope ignored = tracer.begin("intake", id)) {
+            String owner = schedulerService.getNodeId();
+            long t0 = System.nanoTime();
+            Instant now = Instant.now();
+            if (eventRepository.claimIntake(id, owner, now.plusSeconds(leaseSeconds), now) == 0) {
+                // 别的节点在解析 / 已被取消：已经有结果的，回给本节点的等待方
+                eventRepository.findById(id).filter(e -> !e.is(EventStatus.PARSING)).ifPresent(e -> complete(id, e, null));
+                return;
+            }
+            Event event = eventRepository.findById(id).orElse(null);
+            if (event == null) {
+                return;
+            }
+            if (event.getCreateTime() != null) {
+                long queueMs = Duration.between(event.getCreateTime(), LocalDateTime.now()).toMillis();
+                stageTimer.record("queue", queueMs);
+                Tracer.tag("queueMs", queueMs);
+            }
+            long start = stageTimer.lap("claim", t0);
+            try {
+                Event result = eventService.processIntake(event);
+                Tracer.tag("status", result.getStatus());
+                processed.incrementAndGet();
+                parseNanos.addAndGet(System.nanoTime() - start);
+                stageTimer.lap("total", start);
+                failures.remove(id);
+                complete(id, result, null);
+            } catch (ObjectOptimisticLockingFailureException e) {
+                // 解析期间被取消或租约被接管：以库里的为准
+                log.info("📥 收录 ID={} 解析期间已被取消或接管，丢弃本次结果", id);
+                Tracer.tag("outcome", "superseded");
+                failures.remove(id);
+                complete(id, null, new RuntimeException("这件事已经被取消了"));
+            } catch (Exception e) {
+                int attempts = failures.merge(id, 1, Integer::sum);
+                Tracer.tag("error", e.getMessage());
+                if (attempts >= maxAttempts) {
+                    log.error("❌ 收录 ID={} 连续解析失败 {} 次，转为 PENDING: {}", id, attempts, e.getMessage());
+                    eventRepository.giveUpIntake(id, owner, GIVE_UP_REASON);
+                    gaveUp.incrementAndGet();
+                    failures.remove(id);
+                    complete(id, eventRepository.findById(id).orElse(null), null);
+                } else {
+                    log.warn("⚠️ 收录 ID={} 解析失败（第 {} 次），稍后重试: {}", id, attempts, e.getMessage());
+                    eventRepository.retryIntake(id, owner, Instant.now().plusSeconds(5L * attempts));
+                }
+            }
+        }
+    }
+
+    private void complete(Long id, Event result, Throwable error) {
+        CompletableFuture<Event> f = waiters.remove(id);
+        if (f == null) {
+            return; // 其他节点收录的，或重启前收录的：没人在等
+        }
+        if (error != null) {
+            f.completeExceptionally(error);
+        } else {
+            f.complete(result);
+        }
+    }
+}
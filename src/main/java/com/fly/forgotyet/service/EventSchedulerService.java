@@ -1,18 +1,36 @@
 package com.fly.forgotyet.service;
 
+import cn.hutool.core.util.IdUtil;
+import com.fly.forgotyet.common.PipelineMetrics;
+import com.fly.forgotyet.common.Tracer;
+import com.fly.forgotyet.config.SchedulerProperties;
 import com.fly.forgotyet.entity.Event;
+import com.fly.forgotyet.enums.EventStatus;
 import com.fly.forgotyet.repository.EventRepository;
 import lombok.RequiredArgsConstructor;
 import lombok.extern.slf4j.Slf4j;
+import org.springframework.data.domain.PageRequest;
+import org.springframework.core.task.TaskRejectedException;
 import org.springframework.scheduling.TaskScheduler;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.scheduling.concurrent.ThreadPoolTaskExecutor;
 import org.springframework.stereotype.Service;
 
 import javax.annotation.PostConstruct;
+import javax.annotation.PreDestroy;
+import java.net.InetAddress;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.time.Duration;
 import java.time.Instant;
-import java.time.LocalDateTime;
-import java.time.ZoneId;
+import java.time.temporal.ChronoUnit;
+import java.util.HashSet;
 import java.util.List;
 import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.CompletableFuture;
 import java.util.concurrent.ConcurrentHashMap;
 import java.util.concurrent.ScheduledFuture;
 
@@ -22,42 +40,143 @@ import java.util.concurrent.ScheduledFuture;
 public class EventSchedulerService {
 
     private final TaskScheduler taskScheduler;
+    private final ThreadPoolTaskExecutor triggerExecutor; // 到点后的投递在这里跑，调度线程只负责按时交接
     private final EventRepository eventRepository;
-    private final LlmService llmService;     // 注入你现有的 LLM 服务
+    private final SootherCache sootherCache; // 安抚文案：高频提醒走缓存，其余打 LLM
     private final EmailService emailService; // 注入你现有的邮件服务
-    private static final String STATUS_SILENT = "SILENT";
-    private static final String STATUS_DELIVERED = "DELIVERED";
-    private static final String STATUS_CANCELED = "CANCELED";
+    private final SchedulerProperties props;
+    private final ScheduleSnapshot snapshot;
+    private final DeliveryDeadlines deliveryDeadlines;
+    private final PipelineMetrics metrics;
+    private final Tracer tracer;
+    private final DeliveryAnalytics deliveryAnalytics;
 
-    // 用于管理内存中的任务，防止重复或取消
+    // 用于管理内存中的任务，防止重复或取消（只放本节点认领到的事件）
     private final Map<Long, ScheduledFuture<?>> scheduledTasks = new ConcurrentHashMap<>();
 
+    private String nodeId;
+
+    @PostConstruct
+    public void init() {
+        nodeId = resolveNodeId();
+        // 本节点挂着的任务数（内存）和全局待触发数（SILENT，抓取时查一次库）
+        metrics.gauge("forgotyet.scheduler.mounted", this, s -> s.scheduledTasks.size());
+        metrics.gauge("forgotyet.scheduler.pending", this, s -> s.eventRepository.countByStatus(EventStatus.SILENT));
+    }
+
     /**
-     * 🚀 1. 开机自愈：系统启动时，把未来所有的 SILENT 任务挂载到内存
+     * 🚀 1. 开机自愈：先接回本节点名下、触发时间还在宽限期内的任务，再按时间窗分页认领无主/过期的 SILENT 任务
+     * 宽限期（一个租约周期）之前就该触发的不在这里挂载：挂上会立即全部触发，绕过补发的过期判断和限速，
+     * 留给随后的 CatchUpService.scan 处理
+     * 不再挂在 @PostConstruct 上阻塞启动，由 StartupService 在应用就绪后放到后台执行；
+     * 全程只查 id / triggerTime，不物化实体，一页一页流式挂载
+     * 多副本同时启动也不会重复挂载：认领是一条带条件的 UPDATE，只有一个节点能成功
      */
-    @PostConstruct
     public void recoverSilentTasksOnBoot() {
-        log.info("🔄 [系统自检] 开始恢复未来待触发的 SILENT 定时任务...");
+        long start = System.currentTimeMillis();
+        log.info("🔄 [系统自检] 节点 {} 开始恢复待触发的 SILENT 定时任务...", nodeId);
 
-        // 获取所有在当前时间之后触发的静默任务
-        List<Event> futureEvents = eventRepository.findByStatusAndTriggerTimeAfter("SILENT", LocalDateTime.now());
+        int resumed = 0;
+        Instant notBefore = Instant.now().minusSeconds(props.getLeaseSeconds());
+        for (Long id : eventRepository.findClaimedIdsSince(nodeId, notBefore)) {
+            if (claimAndMount(id)) {
+                resumed++;
+            }
+        }
 
-        if (futureEvents.isEmpty()) {
-            log.info("✅ [系统自检] 无待恢复任务。");
-            return;
+        int claimed = 0;
+        int page;
+        do {
+            page = claimTick();
+            claimed += page;
+        } while (page >= props.getClaimBatchSize());
+
+        log.info("✅ [系统自检] 任务恢复完毕！接回 {} 个，新认领 {} 个，耗时 {} ms。",
+                resumed, claimed, System.currentTimeMillis() - start);
+    }
+
+    /**
+     * 🚀 0. 快照热启动：按本地 mmap 快照把任务挂回内存时钟，省掉分页查库和逐条查挂载信息
+     * 每条快照记录挂载前先 tryClaim 一次：停机时没释放的租约直接续上；期间被取消 / 被接管的认领失败，不挂载
+     * 宽限期之前就该触发的同样留给补发；返回真正重新认领并挂上的数量
+     */
+    public int replaySnapshot() {
+        int mounted = 0;
+        Instant now = Instant.now();
+        long notBefore = now.minusSeconds(props.getLeaseSeconds()).toEpochMilli();
+        for (ScheduleSnapshot.Entry e : snapshot.load()) {
+            if (e.getTriggerEpochMillis() < notBefore
+                    || eventRepository.tryClaim(e.getId(), nodeId, leaseUntil(now), now) == 0) {
+                snapshot.removed(e.getId());
+                continue;
+            }
+            mount(e.getId(), Instant.ofEpochMilli(e.getTriggerEpochMillis()), e.getLane());
+            mounted++;
         }
+        return mounted;
+    }
 
-        log.info("⚠️ [系统自检] 发现 {} 个由于重启脱离内存的 SILENT 任务，正在重新挂载...", futureEvents.size());
+    /**
+     * 后台对账：内存里挂着、但数据库里已经不归本节点的，摘掉
+     * 先拍下挂载表再查库，避免误摘查询之后才新认领的任务
+     */
+    public int reconcileWithDb() {
+        List<Long> mountedBefore = List.copyOf(scheduledTasks.keySet());
+        Set<Long> mine = new HashSet<>(eventRepository.findClaimedIds(nodeId));
+        int dropped = 0;
+        for (Long id : mountedBefore) {
+            if (!mine.contains(id)) {
+                unmount(id);
+                metrics.cancellation("reconcile");
+                dropped++;
+            }
+        }
+        if (dropped > 0) {
+            log.info("🧾 快照对账：摘除 {} 个已不属于本节点的挂载", dropped);
+        }
+        return dropped;
+    }
 
-        for (Event event : futureEvents) {
-            scheduleEvent(event);
+    /**
+     * 🚀 2. 认领循环：续约自己持有的租约 + 认领时间窗内无主/过期的任务
+     * 宕机节点的租约过期后，由存活节点在这里接管
+     */
+    @Scheduled(fixedDelayString = "${scheduler.claim-interval-ms:15000}",
+            initialDelayString = "${scheduler.claim-interval-ms:15000}")
+    public void claimLoop() {
+        try {
+            claimTick();
+        } catch (Exception e) {
+            log.error("❌ 认领循环异常", e);
         }
+    }
+
+    public int claimTick() {
+        Instant now = Instant.now();
+        eventRepository.renewLeases(nodeId, leaseUntil(now));
 
-        log.info("✅ [系统自检] 任务恢复完毕！");
+        // 宕机接管的宽限：触发时间刚过去不到一个租约周期的，也照样认领（触发时立即补发）
+        List<Long> candidates = eventRepository.findClaimableIds(
+                now.minusSeconds(props.getLeaseSeconds()),
+                now.plus(props.getLookaheadMinutes(), ChronoUnit.MINUTES),
+                now,
+                PageRequest.of(0, props.getClaimBatchSize()));
+
+        int claimed = 0;
+        for (Long id : candidates) {
+            if (!scheduledTasks.containsKey(id) && claimAndMount(id)) {
+                claimed++;
+            }
+        }
+        if (claimed > 0) {
+            log.info("📥 节点 {} 本轮认领 {} 个任务，内存中共 {} 个", nodeId, claimed, scheduledTasks.size());
+        }
+        return claimed;
     }
 
     /**
-     * 🚀 2. 核心调度：将任务精准挂载到内存时钟
+     * 🚀 3. 核心调度：认领成功后，将任务精准挂载到内存时钟
+     * 超出时间窗的事件暂不认领，留给认领循环（避免单节点囤积全部远期任务）
      */
     public void scheduleEvent(Event event) {
 
@@ -65,64 +184,227 @@ public class EventSchedulerService {
             log.warn("skip schedule: triggerTime is null, id={}", event.getId());
             return;
         }
-        if (!"SILENT".equalsIgnoreCase(event.getStatus())) {
+        if (!event.is(EventStatus.SILENT)) {
             // 只调度 SILENT，其他状态（PENDING/DELIVERED/CANCELED）跳过
             return;
         }
 
-        // 转换 triggerTime 为底层时间戳
-        Instant targetInstant = event.getTriggerTime().atZone(ZoneId.systemDefault()).toInstant();
-
         // 防止重复挂载
         if (scheduledTasks.containsKey(event.getId())) {
             return;
         }
 
-        ScheduledFuture<?> future = taskScheduler.schedule(() -> {
+        if (event.getTriggerTime().isAfter(Instant.now().plus(props.getLookaheadMinutes(), ChronoUnit.MINUTES))) {
+            log.debug("📌 任务 [ID:{}] 触发时间在时间窗外，等待认领循环", event.getId());
+            return;
+        }
 
-            // ✅ 兜底：执行前再查一次 DB（保证取消后绝不误发）
-            Event latest = eventRepository.findById(event.getId()).orElse(null);
-            if (latest == null) {
-                scheduledTasks.remove(event.getId());
+        Instant now = Instant.now();
+        if (eventRepository.tryClaim(event.getId(), nodeId, leaseUntil(now), now) == 0) {
+            log.debug("📌 任务 [ID:{}] 已被其他节点认领", event.getId());
+            return;
+        }
+        mount(event.getId(), event.getTriggerTime(), TriggerBucketUtil.lane(event.getTriggerBucket()));
+    }
+
+    /**
+     * 补发入口：认领成功后立即走同一条投递链路（同步执行，由调用方控制速率）
+     */
+    public boolean deliverOverdue(Long eventId) {
+        Instant now = Instant.now();
+        if (eventRepository.tryClaim(eventId, nodeId, leaseUntil(now), now) == 0) {
+            return false;
+        }
+        fire(eventId, true);
+        return true;
+    }
+
+    /**
+     * 用户取消：摘掉内存任务
+     */
+    public boolean cancelScheduled(Long eventId) {
+        metrics.cancellation("user");
+        return unmount(eventId);
+    }
+
+    private boolean unmount(Long eventId) {
+        ScheduledFuture<?> future = scheduledTasks.remove(eventId);
+        snapshot.removed(eventId);
+        if (future != null) {
+            boolean canceled = future.cancel(false);
+            log.info("🛑 尝试取消内存任务 ID={}, result={}", eventId, canceled);
+            return canceled;
+        }
+        return false;
+    }
+
+    /**
+     * 优雅停机：释放租约，其他节点下一轮即可接管，不必等租约过期
+     * 开着快照时保留租约：重启后按快照直接续上；不回来的话其他节点最多晚一个租约周期接管
+     */
+    @PreDestroy
+    public void releaseOnShutdown() {
+        if (snapshot.isEnabled()) {
+            log.info("👋 节点 {} 停机，快照已开启，保留租约等待重启续上", nodeId);
+            return;
+        }
+        int released = eventRepository.releaseLeases(nodeId);
+        log.info("👋 节点 {} 停机，释放 {} 个租约", nodeId, released);
+    }
+
+    public String getNodeId() {
+        return nodeId;
+    }
+
+    int scheduledCount() {
+        return scheduledTasks.size();
+    }
+
+    private boolean claimAndMount(Long id) {
+        Instant now = Instant.now();
+        if (eventRepository.tryClaim(id, nodeId, leaseUntil(now), now) == 0) {
+            return false;
+        }
+        EventRepository.MountInfo info = eventRepository.findMountInfoById(id);
+        if (info == null || info.getTriggerTime() == null) {
+            return false;
+        }
+        mount(id, info.getTriggerTime(), TriggerBucketUtil.lane(info.getTriggerBucket()));
+        return true;
+    }
+
+    private void mount(Long eventId, Instant triggerTime, int lane) {
+        ScheduledFuture<?> future = taskScheduler.schedule(() -> handOff(eventId), triggerTime);
+
+        if (scheduledTasks.putIfAbsent(eventId, future) != null) {
+            future.cancel(false); // 并发挂载：保留先到的那一个
+            return;
+        }
+        snapshot.added(eventId, triggerTime.toEpochMilli(), lane);
+        if (future.isDone()) {
+            scheduledTasks.remove(eventId, future); // 已过期的触发时间会立即执行完，别留下脏条目
+            snapshot.removed(eventId);
+            return;
+        }
+        log.debug("📌 任务 [ID:{}] 已精准挂载，将在 {} 触发", eventId, triggerTime);
+    }
+
+    /**
+     * 定时器线程上只做交接：fire 里要等 LLM 和数据库，放在调度线程上会把同一时刻的提醒排成一串，
+     * 还会拖慢同一个线程池里的认领续约
+     */
+    private void handOff(Long eventId) {
+        try {
+            triggerExecutor.execute(() -> fire(eventId, false));
+        } catch (TaskRejectedException e) {
+            // 投递池排满：摘掉挂载，行还是本节点名下的 SILENT，过了宽限期由补发扫描接着发
+            log.warn("⚠️ 触发投递池已满，任务 ID={} 交给补发扫描", eventId);
+            scheduledTasks.remove(eventId);
+            snapshot.removed(eventId);
+        }
+    }
+
+    private void fire(Long eventId, boolean catchUp) {
+        try (Tracer.Scope ignored = tracer.begin("fire", eventId)) {
+            long t = System.nanoTime();
+            Tracer.tag("catchUp", catchUp);
+            // ✅ 兜底：SILENT -> SENDING 条件流转，同时校验触发权（已取消 / 被其他节点接管 都会失败）
+            if (eventRepository.markSending(eventId, nodeId) == 0) {
+                Tracer.tag("outcome", "skipped");
+                log.info("⛔ 事件已取消或触发权已被接管，跳过触发 ID={}", eventId);
                 return;
             }
 
-            if (STATUS_CANCELED.equalsIgnoreCase(latest.getStatus())) {
-                log.info("⛔ 事件已取消，跳过触发 ID={}", event.getId());
-                scheduledTasks.remove(event.getId());
+            Event latest = eventRepository.findById(eventId).orElse(null);
+            Instant firedAt = Instant.now();
+            t = Tracer.lap("claim", t);
+            if (latest == null) {
                 return;
             }
 
             log.info("⏰ 【ForgotYet 触发】任务 ID [{}]: {}", latest.getId(), latest.getRawInput());
+            Tracer.tag("bucket", latest.getTriggerBucket());
+            if (latest.getTriggerTime() != null) {
+                long lagMs = Duration.between(latest.getTriggerTime(), firedAt).toMillis();
+                metrics.fireLag(String.valueOf(latest.getTriggerBucket()), catchUp, lagMs);
+                Tracer.tag("lagMs", lagMs);
+            }
 
             try {
-                String content = llmService.generateEmailContent(latest.getRawInput());
+                // 截止时间由 eventTime + bucket 决定，文案生成只能用剩下的预算，来不及就兜底模板准点发
+                Instant deadline = deliveryDeadlines.deadlineFor(latest);
+                String content = sootherCache.contentFor(latest, deliveryDeadlines.llmDeadline(deadline));
+                Instant contentReadyAt = Instant.now();
+                t = Tracer.lap("soother", t);
                 String subject = "关于你之前提到的那件事...";
-                emailService.sendSimpleEmail(latest.getUserEmail(), subject, content);
+                CompletableFuture<Instant> sent = emailService.sendReminderEmail(latest.getUserEmail(), subject, content);
+                t = Tracer.lap("email", t); // @Async：这里只是投递到邮件线程池
 
-                latest.setStatus(STATUS_DELIVERED);
-                eventRepository.save(latest);
+                eventRepository.markDelivered(eventId, nodeId, firedAt, contentReadyAt);
+                Tracer.lap("persist", t);
+                deliveryAnalytics.fired(latest, firedAt);
+                boolean fallback = content.equals(LlmService.fallbackSoother(latest.getRawInput()));
+                sent.whenComplete((sentAt, err) -> {
+                    if (err != null) {
+                        deliveryAnalytics.sendFailed(latest);
+                        return;
+                    }
+                    // 按 SMTP 真正发完的时间算是否赶上截止，不是投递到邮件线程池的时间
+                    deliveryDeadlines.record(latest.getTriggerBucket(), deadline, sentAt, fallback);
+                    deliveryAnalytics.sent(latest, sentAt);
+                    try {
+                        eventRepository.markSent(eventId, sentAt);
+                    } catch (Exception ex) {
+                        log.warn("⚠️ 回写发送时间失败 ID={}: {}", eventId, ex.getMessage());
+                    }
+                });
 
             } catch (Exception e) {
                 log.error("❌ 事件处理失败 ID=" + latest.getId(), e);
-            } finally {
-                scheduledTasks.remove(latest.getId());
+                Tracer.tag("error", e.getMessage());
+                eventRepository.revertSending(eventId, nodeId);
             }
+        } finally {
+            scheduledTasks.remove(eventId);
+            snapshot.removed(eventId);
+        }
+    }
 
-        }, targetInstant);
-
-        scheduledTasks.put(event.getId(), future);
-        log.debug("📌 任务 [ID:{}] 已精准挂载，将在 {} 触发", event.getId(), event.getTriggerTime());
+    private Instant leaseUntil(Instant now) {
+        return now.plusSeconds(props.getLeaseSeconds());
     }
 
-    public boolean cancelScheduled(Long eventId) {
-        ScheduledFuture<?> future = scheduledTasks.remove(eventId);
-        if (future != null) {
-            boolean canceled = future.cancel(false);
-            log.info("🛑 尝试取消内存任务 ID={}, result={}", eventId, canceled);
-            return canceled;
+    private String resolveNodeId() {
+        if (props.getNodeId() != null && !props.getNodeId().isBlank()) {
+            return props.getNodeId().trim();
+        }
+        String host;
+        try {
+            host = InetAddress.getLocalHost().getHostName();
+        } catch (Exception e) {
+            host = "unknown";
+        }
+        if (!props.isSnapshotEnabled()) {
+            return host + "-" + ProcessHandle.current().pid();
+        }
+        // 开着快照时节点 id 必须跨重启稳定，否则快照里的任务都认领不回来：第一次生成后存在快照文件旁边
+        Path idFile = Paths.get(props.getSnapshotPath() + ".node");
+        try {
+            if (Files.exists(idFile)) {
+                String saved = Files.readString(idFile, StandardCharsets.UTF_8).trim();
+                if (!saved.isEmpty()) {
+                    return saved;
+                }
+            }
+            String generated = host + "-" + IdUtil.fastSimpleUUID().substring(0, 8);
+            if (idFile.getParent() != null) {
+                Files.createDirectories(idFile.getParent());
+            }
+            Files.writeString(idFile, generated, StandardCharsets.UTF_8);
+            return generated;
+        } catch (Exception e) {
+            log.warn("⚠️ 节点 id 持久化失败，本次重启后快照无法续上租约: {}", e.getMessage());
+            return host + "-" + ProcessHandle.current().pid();
         }
-        return false;
     }
-
 }
@@ -2,27 +2,31 @@ package com.fly.forgotyet.service;
 
 import cn.hutool.core.date.LocalDateTimeUtil;
 import com.fly.forgotyet.common.JsonUtil;
+import com.fly.forgotyet.common.StageTimer;
+import com.fly.forgotyet.common.Tracer;
 import com.fly.forgotyet.entity.Event;
+import com.fly.forgotyet.entity.EventArchive;
 import com.fly.forgotyet.entity.EventParseResult;
+import com.fly.forgotyet.entity.PlanReason;
 import com.fly.forgotyet.entity.TriggerPlan;
+import com.fly.forgotyet.enums.Complexity;
+import com.fly.forgotyet.enums.Dependency;
+import com.fly.forgotyet.enums.EventStatus;
 import com.fly.forgotyet.enums.TriggerFeedback;
+import com.fly.forgotyet.enums.TriggerIntent;
 import com.fly.forgotyet.repository.EventRepository;
 import com.fly.forgotyet.utils.EventTimeNormalizer;
 import lombok.RequiredArgsConstructor;
 import lombok.extern.slf4j.Slf4j;
 import org.springframework.data.domain.PageRequest;
 import org.springframework.data.domain.Sort;
-import org.springframework.scheduling.annotation.Async;
 import org.springframework.stereotype.Service;
-import org.springframework.transaction.annotation.Transactional;
 
 
 import java.time.Clock;
 import java.time.Instant;
 import java.time.LocalDateTime;
-import java.time.ZoneId;
 import java.util.List;
-import java.util.Optional;
 
 
 @Slf4j
@@ -30,201 +34,239 @@ import java.util.Optional;
 @RequiredArgsConstructor
 public class EventService {
 
+    // 模型故障进重解析队列的事件，计划说明里的时间来源
+    public static final String REPARSE_REASON = "reparse: llm_outage";
+
     private final LlmService llmService;
     private final EventRepository eventRepository;
     private final EventSchedulerService eventSchedulerService;
     private final TriggerPlanService triggerPlanService;
     private final Clock clock;
+    private final EventArchiveService eventArchiveService;
+    private final EventWriteBehind eventWriteBehind;
+    private final StageTimer stageTimer;
+    private final Tracer tracer;
+    private final DeliveryAnalytics deliveryAnalytics;
 
 
 
     /**
-     * 🚀 接收用户输入，保存为未来的事件 (异步处理)
-     * 加入 @Async 后，该方法会在名为 task-X 的子线程中执行，前端瞬间得到响应。
+     * 🚀 解析一条已收录的原话，把同一行补全为 SILENT（或 PENDING）并挂载
+     * 由 EventIntakeService 的解析工作池调用：原话在此之前已经以 PARSING 行落库，崩溃重启后会被重新认领
+     * 返回落库后的事件，便于语音一步建事件等链路直接拿到计划结果。
      */
-    @Async
-    public void createEvent(String rawInput, String email) {
-        log.info("🧵 [异步线程] 开始处理任务: {}", rawInput);
-
-        // 1) LLM parse
-        EventParseResult r = llmService.parseInput(rawInput);
+    public Event processIntake(Event event) {
+        String rawInput = event.getRawInput();
+        String email = event.getUserEmail();
+        log.info("🧵 [解析] 开始处理收录 ID={}: {}", event.getId(), rawInput);
+
+        // 认领用的租约到此为止，之后 SILENT 的触发权由调度器重新认领
+        event.setClaimOwner(null);
+        event.setLeaseUntil(null);
+
+        // 1) LLM parse（排队 / 重解析耽搁了超过一分钟的，相对时间以收录时刻为准）
+        long t = System.nanoTime();
+        LocalDateTime said = event.getCreateTime();
+        EventParseResult r = said != null && said.isBefore(LocalDateTime.now(clock).minusMinutes(1))
+                ? llmService.parseInput(rawInput, said)
+                : llmService.parseInput(rawInput);
+        t = stageTimer.lap("llm", t);
+        if (r != null && r.isProviderOutage()) {
+            // 主备模型都挂了：不是用户说得模糊，原话留着等模型恢复后重解析
+            log.warn("🧯 模型不可用，进入重解析队列: ID={}", event.getId());
+            event.setStatus(EventStatus.REPARSE);
+            event.setPlanReason(PlanReason.pending(REPARSE_REASON));
+            Event saved = eventWriteBehind.save(event);
+            stageTimer.lap("persist", t);
+            return saved;
+        }
         if (r == null || !Boolean.TRUE.equals(r.isValid())) {
             log.warn("🫴 解析不确定，进入 PENDING: {}", rawInput);
 
-            Event pending = new Event();
-            pending.setRawInput(rawInput);
-            pending.setUserEmail(email);
-
-            pending.setStatus("PENDING");   // 核心
-            pending.setEventTime(null);
-            pending.setTriggerTime(null);
+            event.setStatus(EventStatus.PENDING);   // 核心
+            event.setEventTime(null);
+            event.setTriggerTime(null);
 
-            pending.setTriggerReason("pending: parse_invalid_or_uncertain");
+            event.setPlanReason(PlanReason.pending("pending: parse_invalid_or_uncertain"));
 
             // 尽量保留信息（即使不完整）
             if (r != null) {
-                if (r.getIntent() != null) pending.setTriggerIntent(r.getIntent().name());
-                if (r.getComplexity() != null) pending.setComplexity(r.getComplexity().name());
-                pending.setPrepRequired(r.isPrepRequired());
+                event.setTriggerIntent(r.getIntent());
+                event.setComplexity(r.getComplexity());
+                event.setPrepRequired(r.isPrepRequired());
             }
 
-            eventRepository.save(pending);
-            return;
+            Event saved = eventWriteBehind.save(event);
+            stageTimer.lap("persist", t);
+            return saved;
         }
 
         // 2) C3-1: 模糊时间兜底（关键新增）
         EventTimeNormalizer.Result normalized = EventTimeNormalizer.normalize(r, rawInput, clock);
+        t = stageTimer.lap("normalize", t);
         LocalDateTime normalizedEventTime = normalized.getEventTime(); // 一定不为空
         // ✅ PENDING：接住，但不调度
         if (normalizedEventTime == null) {
-            Event event = new Event();
-            event.setRawInput(rawInput);
-            event.setUserEmail(email);
-
             event.setEventTime(null);
             event.setTriggerTime(null);
 
             // 新状态：PENDING（不参与 scheduler 恢复，也不会被 scheduleEvent 调度）
-            event.setStatus("PENDING");
+            event.setStatus(EventStatus.PENDING);
 
             // 回放字段照样存（对你未来“再唤醒/补时间”有用）
-            if (r.getIntent() != null) event.setTriggerIntent(r.getIntent().name());
-            if (r.getComplexity() != null) event.setComplexity(r.getComplexity().name());
+            event.setTriggerIntent(r.getIntent());
+            event.setComplexity(r.getComplexity());
             event.setPrepRequired(r.isPrepRequired());
+            event.setDependencyMask(Dependency.toMask(r.getDependencies()));
 
-            try {
-                if (r.getDependencies() != null) {
-                    event.setDependenciesJson(new com.fasterxml.jackson.databind.ObjectMapper()
-                            .writeValueAsString(r.getDependencies()));
-                }
-            } catch (Exception ignore) {
-                event.setDependenciesJson("[]");
-            }
-
-            event.setTriggerReason(normalized.getReason()); // fuzzy_pending:no_time_hint
+            event.setPlanReason(PlanReason.pending(normalized.getReason())); // fuzzy_pending:no_time_hint
 
-            Event saved = eventRepository.save(event);
+            Event saved = eventWriteBehind.save(event);
+            stageTimer.lap("persist", t);
             log.info("🫴 PENDING 事件已接住: ID={}, raw={}", saved.getId(), rawInput);
-            return;
+            return saved;
         }
-        // 非 PENDING：正常流程
-        Instant eventInstant = normalizedEventTime.atZone(ZoneId.systemDefault()).toInstant();
+        // 非 PENDING：正常流程（墙上时间只在这里换算一次，之后全程 Instant）
+        Instant eventInstant = normalizedEventTime.atZone(clock.getZone()).toInstant();
 
         // 3) 触发计划（你原来的 TriggerPlanService）
         TriggerPlan plan = triggerPlanService.plan(email, r, eventInstant);
+        t = stageTimer.lap("plan", t);
 
-        // 4) 落库（注意：Event.eventTime / triggerTime 是 LocalDateTime）
-        Event event = new Event();
-        event.setRawInput(rawInput);
-        event.setUserEmail(email);
-
-        event.setEventTime(normalizedEventTime);
-        event.setTriggerTime(LocalDateTime.ofInstant(plan.getTriggerTime(), ZoneId.systemDefault()));
+        // 4) 落库（收录时的同一行，带版本号：租约期间被取消的会在这里冲突；租约过期被接管、两边都解析完的，后写的一方冲突）
+        event.setEventTime(eventInstant);
+        event.setTriggerTime(plan.getTriggerTime());
 
         // 状态：保持你现在的 SILENT -> DELIVERED 流转
-        event.setStatus("SILENT");
+        event.setStatus(EventStatus.SILENT);
 
-        // 回放字段（你原先已经有这些字段的话就保留）
-        if (plan.getBucket() != null) event.setTriggerBucket(plan.getBucket().name());
-        if (plan.getIntent() != null) event.setTriggerIntent(plan.getIntent().name());
-        if (plan.getComplexity() != null) event.setComplexity(plan.getComplexity().name());
+        // 回放字段
+        event.setTriggerBucket(plan.getBucket());
+        event.setTriggerIntent(plan.getIntent());
+        event.setComplexity(plan.getComplexity());
         event.setPrepRequired(r.isPrepRequired());
+        event.setDependencyMask(Dependency.toMask(r.getDependencies()));
 
-        // dependenciesJson：你原来怎么存就怎么存（下面给一个安全兜底）
-        // 如果你已经有 ObjectMapper，就用你现有的
-        try {
-            if (r.getDependencies() != null) {
-                event.setDependenciesJson(new com.fasterxml.jackson.databind.ObjectMapper().writeValueAsString(r.getDependencies()));
-            }
-        } catch (Exception ignore) {
-            event.setDependenciesJson("[]");
-        }
-
-        // triggerReason：把“时间兜底原因”拼进去（便于你前端展示/调试）
+        // 计划说明：时间兜底原因 + 计划标记位，结构化存储
         String timeReason = normalized.isAssumed()
                 ? normalized.getReason()
                 : "llm_eventTime_used";
-
-        // 你 plan 里本来就有 reason（bucket 选择原因）
-        String fullReason = timeReason + " | " + Optional.ofNullable(plan.getReason()).orElse("");
-        event.setTriggerReason(fullReason);
+        event.setPlanReason(planReason(timeReason, plan, r.isPrepRequired(), event.getDependencyMask(), normalized.isAssumed()));
 
         // feedback 初始为空即可（默认 null）
-        Event saved = eventRepository.save(event);
+        Event saved = eventWriteBehind.save(event); // 与并发的其他收录合并成一个 JDBC batch
+        t = stageTimer.lap("persist", t);
 
         log.info("新事件已存储: ID={}, 触发时间={}", saved.getId(), saved.getTriggerTime());
 
         // 5) 精准挂载任务（你现在 EventSchedulerService 已有）
         eventSchedulerService.scheduleEvent(saved);
+        stageTimer.lap("schedule", t);
+        return saved;
     }
 
-    @Transactional
-    public String resolvePending(String rawInput, String email) {
-        log.info("🪄 resolve pending: user={}, input={}", email, rawInput);
-
-        // 1) 用这句话做解析（它通常是“时间补充句”，比如“明天下午三点”）
-        EventParseResult r = llmService.parseInput(rawInput);
-        if (r == null || !Boolean.TRUE.equals(r.isValid())) {
-            return "我还没听懂你希望什么时候提醒我。你可以再说具体一点，比如：明天下午3点。";
-        }
-
-        // 2) 归一化时间（如果仍然拿不到时间，就无法 resolve）
-        EventTimeNormalizer.Result normalized = EventTimeNormalizer.normalize(r, rawInput, clock);
-        LocalDateTime normalizedEventTime = normalized.getEventTime();
-        if (normalizedEventTime == null) {
-            return "我还没抓到明确的时间点。你可以试试：明天/后天/下周一 + 下午3点。";
-        }
-
-        // 3) 找到该用户最新一条 PENDING
-        Event pending = eventRepository
-                .findTop1ByUserEmailAndStatusOrderByCreateTimeDesc(email, "PENDING")
-                .orElse(null);
-
-        if (pending == null) {
-            // 也可以选择：没有 pending 就走正常 createEvent
-            return "我这边没有待定的事项需要补时间。你可以直接说：下周一提醒我做什么。";
-        }
-
-        // 4) 组装一个“用于计划”的 parseResult：以 pending 的意图/复杂度为主，用这句的时间为辅
-        EventParseResult pr = new EventParseResult();
-        pr.setValid(true);
-
-        // intent / complexity 优先沿用 pending；没有再用本次解析；都没有给默认
-        pr.setIntent(parseIntentOrDefault(pending.getTriggerIntent(), r));
-        pr.setComplexity(parseComplexityOrDefault(pending.getComplexity(), r));
-        pr.setPrepRequired(Boolean.TRUE.equals(pending.getPrepRequired()) || r.isPrepRequired());
-
-        // dependencies：尽量从 pending 里恢复（可选）
-        pr.setDependencies(readDeps(pending.getDependenciesJson()));
-        // urgentMinuteLevel：用本次解析结果（因为补时间句里经常包含“5分钟后”）
-        pr.setUrgentMinuteLevel(r.isUrgentMinuteLevel());
+    private static PlanReason planReason(String timeSource, TriggerPlan plan, boolean prepRequired,
+                                         int dependencyMask, boolean timeAssumed) {
+        int flags = 0;
+        if (prepRequired) flags |= PlanReason.PREP_REQUIRED;
+        if (dependencyMask != 0) flags |= PlanReason.HAS_DEPS;
+        if (plan.isForcedImmediate()) flags |= PlanReason.URGENT_MINUTE;
+        if (plan.isFallbackNowPlus1m()) flags |= PlanReason.FALLBACK_SOON;
+        if (timeAssumed) flags |= PlanReason.TIME_ASSUMED;
+        return PlanReason.of(timeSource, flags, plan.getBiasSteps());
+    }
 
-        // 5) 计算 triggerPlan（真正进入调度）
-        Instant eventInstant = normalizedEventTime.atZone(ZoneId.systemDefault()).toInstant();
-        TriggerPlan plan = triggerPlanService.plan(email, pr, eventInstant);
+    /**
+     * 补时间：不再包事务（LLM 调用期间不占连接），写库只有一条 PENDING -> SILENT 条件 UPDATE
+     */
+    public String resolvePending(String rawInput, String email) {
+        try (Tracer.Scope ignored = tracer.begin("resolvePending", null)) {
+            log.info("🪄 resolve pending: user={}, input={}", email, rawInput);
+
+            // 1) 用这句话做解析（它通常是“时间补充句”，比如“明天下午三点”）
+            long t = System.nanoTime();
+            EventParseResult r = llmService.parseInput(rawInput);
+            t = Tracer.lap("llm", t);
+            if (r == null || !Boolean.TRUE.equals(r.isValid())) {
+                return "我还没听懂你希望什么时候提醒我。你可以再说具体一点，比如：明天下午3点。";
+            }
 
-        // 6) 回填 pending 事件 → 变成 SILENT 并调度
-        pending.setEventTime(normalizedEventTime);
-        pending.setTriggerTime(LocalDateTime.ofInstant(plan.getTriggerTime(), ZoneId.systemDefault()));
-        pending.setStatus("SILENT");
+            // 2) 归一化时间（如果仍然拿不到时间，就无法 resolve）
+            EventTimeNormalizer.Result normalized = EventTimeNormalizer.normalize(r, rawInput, clock);
+            LocalDateTime normalizedEventTime = normalized.getEventTime();
+            t = Tracer.lap("normalize", t);
+            if (normalizedEventTime == null) {
+                return "我还没抓到明确的时间点。你可以试试：明天/后天/下周一 + 下午3点。";
+            }
 
-        if (plan.getBucket() != null) pending.setTriggerBucket(plan.getBucket().name());
-        if (plan.getIntent() != null) pending.setTriggerIntent(plan.getIntent().name());
-        if (plan.getComplexity() != null) pending.setComplexity(plan.getComplexity().name());
+            // 3) 找到该用户最新一条 PENDING
+            Event pending = eventRepository
+                    .findTop1ByUserEmailAndStatusOrderByCreateTimeDesc(email, EventStatus.PENDING)
+                    .orElse(null);
+            t = Tracer.lap("load", t);
 
-        String timeReason = normalized.isAssumed() ? normalized.getReason() : "llm_eventTime_used";
-        String fullReason = "resolved_pending | " + timeReason + " | " + (plan.getReason() == null ? "" : plan.getReason());
-        pending.setTriggerReason(fullReason);
+            if (pending == null) {
+                // 也可以选择：没有 pending 就走正常收录
+                return "我这边没有待定的事项需要补时间。你可以直接说：下周一提醒我做什么。";
+            }
 
-        Event saved = eventRepository.save(pending);
+            // 4) 组装一个“用于计划”的 parseResult：以 pending 的意图/复杂度为主，用这句的时间为辅
+            EventParseResult pr = new EventParseResult();
+            pr.setValid(true);
+
+            // intent / complexity 优先沿用 pending；没有再用本次解析；都没有给默认
+            pr.setIntent(pending.getTriggerIntent() != null ? pending.getTriggerIntent()
+                    : r.getIntent() != null ? r.getIntent() : TriggerIntent.CUSHION);
+            pr.setComplexity(pending.getComplexity() != null ? pending.getComplexity()
+                    : r.getComplexity() != null ? r.getComplexity() : Complexity.MEDIUM);
+            pr.setPrepRequired(Boolean.TRUE.equals(pending.getPrepRequired()) || r.isPrepRequired());
+
+            // dependencies：尽量从 pending 里恢复（可选）
+            pr.setDependencies(Dependency.fromMask(pending.getDependencyMask()));
+            // urgentMinuteLevel：用本次解析结果（因为补时间句里经常包含“5分钟后”）
+            pr.setUrgentMinuteLevel(r.isUrgentMinuteLevel());
+
+            // 5) 计算 triggerPlan（真正进入调度）
+            Instant eventInstant = normalizedEventTime.atZone(clock.getZone()).toInstant();
+            Tracer.tag("eventId", pending.getId());
+            TriggerPlan plan = triggerPlanService.plan(email, pr, eventInstant);
+            t = Tracer.lap("plan", t);
+
+            // 6) 回填 pending 事件 → 一条条件 UPDATE 变成 SILENT（并发补时间/取消只有一个能成功）
+            Instant triggerTime = plan.getTriggerTime();
+            String timeReason = "resolved_pending:" + (normalized.isAssumed() ? normalized.getReason() : "llm_eventTime_used");
+            PlanReason reason = planReason(timeReason, plan, pr.isPrepRequired(), pending.getDependencyMask(), normalized.isAssumed());
+
+            int updated = eventRepository.resolvePending(
+                    pending.getId(),
+                    email,
+                    eventInstant,
+                    triggerTime,
+                    plan.getBucket() != null ? plan.getBucket() : pending.getTriggerBucket(),
+                    plan.getIntent() != null ? plan.getIntent() : pending.getTriggerIntent(),
+                    plan.getComplexity() != null ? plan.getComplexity() : pending.getComplexity(),
+                    reason.getTimeSource(),
+                    reason.getFlags(),
+                    reason.getBiasSteps());
+            t = Tracer.lap("persist", t);
+            if (updated == 0) {
+                return "这件事刚刚已经被处理过了，你可以在列表里看看。";
+            }
 
-        // 7) 精准挂载
-        eventSchedulerService.scheduleEvent(saved);
+            // 7) 精准挂载（不改动受管实体：版本号已由条件 UPDATE 推进）
+            Event scheduled = new Event();
+            scheduled.setId(pending.getId());
+            scheduled.setStatus(EventStatus.SILENT);
+            scheduled.setTriggerTime(triggerTime);
+            scheduled.setTriggerBucket(plan.getBucket());
+            eventSchedulerService.scheduleEvent(scheduled);
+            Tracer.lap("schedule", t);
 
-        log.info("✅ pending resolved: id={}, eventTime={}, triggerTime={}",
-                saved.getId(), saved.getEventTime(), saved.getTriggerTime());
+            log.info("✅ pending resolved: id={}, eventTime={}, triggerTime={}",
+                    pending.getId(), normalizedEventTime, triggerTime);
 
-        return "好的。我已经把「" + safeTitle(saved.getRawInput()) + "」安排好了。";
+            return "好的。我已经把「" + safeTitle(pending.getRawInput()) + "」安排好了。";
+        }
     }
 
     private String safeTitle(String raw) {
@@ -233,81 +275,76 @@ public class EventService {
         return s.length() <= 20 ? s : s.substring(0, 20) + "...";
     }
 
-    private com.fly.forgotyet.enums.TriggerIntent parseIntentOrDefault(String pendingIntent, EventParseResult r) {
-        try {
-            if (pendingIntent != null && !pendingIntent.isBlank()) {
-                return com.fly.forgotyet.enums.TriggerIntent.valueOf(pendingIntent);
-            }
-        } catch (Exception ignore) {}
-        return (r != null && r.getIntent() != null) ? r.getIntent() : com.fly.forgotyet.enums.TriggerIntent.CUSHION;
-    }
-
-    private com.fly.forgotyet.enums.Complexity parseComplexityOrDefault(String pendingComplexity, EventParseResult r) {
-        try {
-            if (pendingComplexity != null && !pendingComplexity.isBlank()) {
-                return com.fly.forgotyet.enums.Complexity.valueOf(pendingComplexity);
-            }
-        } catch (Exception ignore) {}
-        return (r != null && r.getComplexity() != null) ? r.getComplexity() : com.fly.forgotyet.enums.Complexity.MEDIUM;
-    }
-
-    private List<String> readDeps(String json) {
-        try {
-            if (json == null || json.isBlank()) return List.of();
-            String[] arr = com.fly.forgotyet.common.JsonUtil.toBean(json, String[].class);
-            return arr == null ? List.of() : java.util.Arrays.asList(arr);
-        } catch (Exception e) {
-            return List.of();
-        }
-    }
-
     /**
      * V1：最近事件列表
      */
     public List<Event> listRecentEvents(String userEmail, int limit) {
         int size = Math.max(1, Math.min(limit, 50)); // 防滥用：1~50
-        return eventRepository
+        List<Event> hot = eventRepository
                 .findByUserEmailOrderByCreateTimeDesc(
                         userEmail,
                         PageRequest.of(0, size, Sort.by(Sort.Direction.DESC, "createTime"))
                 )
                 .getContent();
+        // 热表不满一页才去翻冷表
+        return eventArchiveService.mergeRecent(hot, userEmail, size);
     }
 
     /**
      * V1：提交反馈（早/好/晚）
      */
     public void submitFeedback(String userEmail, Long eventId, TriggerFeedback feedback) {
-        Event event = eventRepository.findById(eventId)
-                .orElseThrow(() -> new RuntimeException("事件不存在"));
+        Event event = eventRepository.findById(eventId).orElse(null);
+        if (event == null) {
+            // 已归档的事件：直接在冷表上记反馈
+            EventArchive archived = eventArchiveService.findArchived(eventId)
+                    .orElseThrow(() -> new RuntimeException("事件不存在"));
+            if (!userEmail.equals(archived.getUserEmail())) {
+                throw new RuntimeException("无权限操作该事件");
+            }
+            TriggerFeedback previous = archived.getFeedback();
+            eventArchiveService.recordFeedback(archived, feedback);
+            deliveryAnalytics.feedback(archived.getTriggerBucket(), archived.getTriggerIntent(), previous, feedback);
+            log.info("🧠 feedback recorded (archived): user={}, eventId={}, feedback={}", userEmail, eventId, feedback);
+            return;
+        }
 
         if (!userEmail.equals(event.getUserEmail())) {
             throw new RuntimeException("无权限操作该事件");
         }
 
-        event.setFeedback(feedback);
-        eventRepository.save(event);
+        // 一条条件 UPDATE 同步写：不经过整行 save，不会因为调度侧推进了 version 而在延迟刷库时悄悄丢掉
+        TriggerFeedback previous = event.getFeedback();
+        if (eventRepository.updateFeedback(eventId, userEmail, feedback) == 0) {
+            throw new RuntimeException("事件不存在");
+        }
+        deliveryAnalytics.feedback(event.getTriggerBucket(), event.getTriggerIntent(), previous, feedback);
         log.info("🧠 feedback recorded: user={}, eventId={}, feedback={}", userEmail, eventId, feedback);
     }
 
-    @Transactional
     public void cancelEvent(Long eventId, String userEmail) {
-        Event event = eventRepository.findById(eventId)
-                .orElseThrow(() -> new RuntimeException("事件不存在"));
-
-        if (!userEmail.equals(event.getUserEmail())) {
-            throw new RuntimeException("无权限取消该事件");
-        }
+        // PARSING/REPARSE/SILENT/PENDING -> CANCELED：一条条件 UPDATE，和触发发送互斥（解析中的会在回写时版本冲突而作废）
+        int updated = eventRepository.updateStatusByIdAndUserEmail(
+                eventId, userEmail, List.of(EventStatus.PARSING, EventStatus.REPARSE, EventStatus.SILENT, EventStatus.PENDING), EventStatus.CANCELED);
+
+        if (updated == 0) {
+            // 只有失败路径才回查原因（已归档的也算：终态不会再变）
+            Event event = eventRepository.findById(eventId)
+                    .or(() -> eventArchiveService.findArchived(eventId).map(EventArchive::toEvent))
+                    .orElseThrow(() -> new RuntimeException("事件不存在"));
+
+            if (!userEmail.equals(event.getUserEmail())) {
+                throw new RuntimeException("无权限取消该事件");
+            }
 
-        // 幂等：重复取消不报错
-        if ("CANCELED".equalsIgnoreCase(event.getStatus())) {
-            return;
+            // 幂等：重复取消不报错
+            if (event.is(EventStatus.CANCELED)) {
+                return;
+            }
+            throw new RuntimeException("提醒已经发出，无法取消");
         }
 
-        event.setStatus("CANCELED");
-        eventRepository.save(event);
-
-        // 尝试取消内存任务（成功最好，失败也没关系：执行前会查 DB 状态兜底）
+        // 尝试取消内存任务（成功最好，失败也没关系：执行前的条件流转会兜底）
         eventSchedulerService.cancelScheduled(eventId);
     }
 
@@ -0,0 +1,189 @@
+package com.fly.forgotyet.service;
+
+import com.fly.forgotyet.entity.Event;
+import com.fly.forgotyet.repository.EventRepository;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import javax.annotation.PostConstruct;
+import javax.annotation.PreDestroy;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * 写合并：并发的收录 / 解析回写 / 反馈写入先进队列，由单个刷盘线程攒批，一个事务一次 JDBC batch 写下去。
+ * - 攒够 batch-size 条，或第一条等满 max-latency-ms，就刷一批（延迟有上界）
+ * - 整批失败时逐条重试，一条坏数据不连累同批的其他人
+ * - 队列满了直接在调用线程同步写，不丢也不无限堆积
+ * 状态流转（认领 / 发送 / 取消）仍是单条条件 UPDATE，需要逐行拿到影响行数，不走这里
+ */
+@Slf4j
+@Service
+public class EventWriteBehind {
+
+    private final EventRepository eventRepository;
+    private final TransactionTemplate transactionTemplate;
+    private final int batchSize;
+    private final long maxLatencyNanos;
+    private final BlockingQueue<Pending> queue;
+
+    private volatile boolean running = true;
+    private Thread flusher;
+
+    private final AtomicLong flushes = new AtomicLong();
+    private final AtomicLong rows = new AtomicLong();
+    private final AtomicLong fallbacks = new AtomicLong();
+
+    public EventWriteBehind(EventRepository eventRepository,
+                            TransactionTemplate transactionTemplate,
+                            @Value("${persistence.write-behind.batch-size:50}") int batchSize,
+                            @Value("${persistence.write-behind.max-latency-ms:10}") long maxLatencyMs,
+                            @Value("${persistence.write-behind.queue-capacity:10000}") int queueCapacity) {
+        this.eventRepository = eventRepository;
+        this.transactionTemplate = transactionTemplate;
+        this.batchSize = Math.max(1, batchSize);
+        this.maxLatencyNanos = TimeUnit.MILLISECONDS.toNanos(Math.max(1, maxLatencyMs));
+        this.queue = new LinkedBlockingQueue<>(Math.max(1, queueCapacity));
+    }
+
+    @PostConstruct
+    public void start() {
+        flusher = new Thread(this::flushLoop, "fy-write-behind");
+        flusher.setDaemon(true);
+        flusher.start();
+    }
+
+    /**
+     * 异步提交，返回落库后的实体（带主键）
+     */
+    public CompletableFuture<Event> submit(Event event) {
+        Pending p = new Pending(event);
+        if (!running || !queue.offer(p)) {
+            // 队列满 / 正在停机：退化为同步单条写
+            fallbacks.incrementAndGet();
+            try {
+                p.future.complete(eventRepository.save(event));
+            } catch (Exception e) {
+                p.future.completeExceptionally(e);
+            }
+        }
+        return p.future;
+    }
+
+    /**
+     * 同步等待落库（最多多等一个攒批窗口）
+     */
+    public Event save(Event event) {
+        try {
+            return submit(event).join();
+        } catch (CompletionException e) {
+            if (e.getCause() instanceof RuntimeException) {
+                throw (RuntimeException) e.getCause();
+            }
+            throw e;
+        }
+    }
+
+    public Map<String, Object> stats() {
+        Map<String, Object> m = new LinkedHashMap<>();
+        long f = flushes.get();
+        m.put("flushes", f);
+        m.put("rows", rows.get());
+        m.put("avgBatch", f == 0 ? 0 : (double) rows.get() / f);
+        m.put("fallbacks", fallbacks.get());
+        m.put("queued", queue.size());
+        return m;
+    }
+
+    @PreDestroy
+    public void stop() throws InterruptedException {
+        running = false;
+        if (flusher != null) {
+            flusher.join(5000); // 刷完队列里剩下的再退出
+        }
+    }
+
+    private void flushLoop() {
+        List<Pending> batch = new ArrayList<>(batchSize);
+        while (running || !queue.isEmpty()) {
+            try {
+                Pending first = queue.poll(100, TimeUnit.MILLISECONDS);
+                if (first == null) {
+                    continue;
+                }
+                batch.add(first);
+                long deadline = System.nanoTime() + maxLatencyNanos;
+                while (batch.size() < batchSize) {
+                    long left = deadline - System.nanoTime();
+                    Pending next = left > 0 ? queue.poll(left, TimeUnit.NANOSECONDS) : queue.poll();
+                    if (next == null) {
+                        break;
+                    }
+                    batch.add(next);
+                }
+                flush(batch);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                return;
+            } catch (Exception e) {
+                log.error("❌ 写合并刷盘线程异常", e);
+            } finally {
+                batch.clear();
+            }
+        }
+    }
+
+    private void flush(List<Pending> batch) {
+        List<Event> entities = new ArrayList<>(batch.size());
+        batch.forEach(p -> entities.add(p.event));
+        try {
+            List<Event> saved = transactionTemplate.execute(tx -> eventRepository.saveAll(entities));
+            for (int i = 0; i < batch.size(); i++) {
+                batch.get(i).future.complete(saved.get(i));
+            }
+            flushes.incrementAndGet();
+            rows.addAndGet(batch.size());
+        } catch (Exception batchEx) {
+            log.warn("⚠️ 批量写入失败（{} 条），逐条重试: {}", batch.size(), batchEx.getMessage());
+            for (Pending p : batch) {
+                p.resetIfNew();
+                try {
+                    p.future.complete(transactionTemplate.execute(tx -> eventRepository.save(p.event)));
+                    rows.incrementAndGet();
+                } catch (Exception e) {
+                    p.future.completeExceptionally(e);
+                }
+            }
+            flushes.incrementAndGet();
+        }
+    }
+
+    private static class Pending {
+        final Event event;
+        final boolean wasNew;
+        final CompletableFuture<Event> future = new CompletableFuture<>();
+
+        Pending(Event event) {
+            this.event = event;
+            this.wasNew = event.getId() == null;
+        }
+
+        // 回滚后 Hibernate 已经给新实体填了序列号，得清掉才能重新 persist
+        void resetIfNew() {
+            if (wasNew) {
+                event.setId(null);
+                event.setVersion(null);
+            }
+        }
+    }
+}
@@ -0,0 +1,63 @@
+package com.fly.forgotyet.service;
+
+import org.springframework.stereotype.Service;
+
+import java.time.Instant;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * 模型健康度：按提供方记录最近一次成败和连续失败次数，解析 / 文案的每次调用都算一次信号。
+ * 只要有一个提供方最近一次是成功的（或还没调用过），就认为“可用”；重解析队列据此决定放行速度
+ */
+@Service
+public class LlmHealthTracker {
+
+    public static final String PRIMARY = "primary";
+    public static final String BACKUP = "backup";
+
+    private final Map<String, Provider> providers = new ConcurrentHashMap<>();
+
+    public void success(String provider) {
+        Provider p = providers.computeIfAbsent(provider, k -> new Provider());
+        p.consecutiveFailures.set(0);
+        p.lastSuccess = Instant.now();
+    }
+
+    public void failure(String provider) {
+        Provider p = providers.computeIfAbsent(provider, k -> new Provider());
+        p.consecutiveFailures.incrementAndGet();
+        p.lastFailure = Instant.now();
+    }
+
+    public boolean available() {
+        for (String name : new String[]{PRIMARY, BACKUP}) {
+            Provider p = providers.get(name);
+            if (p == null || p.consecutiveFailures.get() == 0) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    public Map<String, Object> stats() {
+        Map<String, Object> m = new LinkedHashMap<>();
+        m.put("available", available());
+        providers.forEach((name, p) -> {
+            Map<String, Object> one = new LinkedHashMap<>();
+            one.put("consecutiveFailures", p.consecutiveFailures.get());
+            one.put("lastSuccess", p.lastSuccess == null ? null : p.lastSuccess.toString());
+            one.put("lastFailure", p.lastFailure == null ? null : p.lastFailure.toString());
+            m.put(name, one);
+        });
+        return m;
+    }
+
+    private static class Provider {
+        final AtomicInteger consecutiveFailures = new AtomicInteger();
+        volatile Instant lastSuccess;
+        volatile Instant lastFailure;
+    }
+}
@@ -1,23 +1,69 @@
 package com.fly.forgotyet.service;
 
 import cn.hutool.core.date.DateUtil;
+import cn.hutool.core.io.IORuntimeException;
+import cn.hutool.http.HttpException;
 import cn.hutool.http.HttpRequest;
 import cn.hutool.http.HttpResponse;
 import cn.hutool.json.JSONArray;
 import cn.hutool.json.JSONObject;
 import cn.hutool.json.JSONUtil;
+import com.fly.forgotyet.common.PipelineMetrics;
+import com.fly.forgotyet.common.PromptTemplate;
+import com.fly.forgotyet.common.Tracer;
 import com.fly.forgotyet.entity.EventParseResult;
+import com.fly.forgotyet.utils.LlmJson;
+import lombok.Getter;
 import lombok.RequiredArgsConstructor;
 import lombok.extern.slf4j.Slf4j;
 import org.springframework.beans.factory.annotation.Value;
+import org.springframework.scheduling.concurrent.ThreadPoolTaskExecutor;
 import org.springframework.stereotype.Service;
 
+import java.time.Duration;
+import java.time.Instant;
+import java.time.LocalDateTime;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.Supplier;
+
 @Slf4j
 @Service
 @RequiredArgsConstructor
 public class LlmService {
 
+    // 安抚文案单次调用的硬超时；剩余预算低于下限就不发请求了，发了也回不来
+    static final int SOOTHER_TIMEOUT_MS = 8000;
+    static final int MIN_SOOTHER_BUDGET_MS = 300;
+
+    static final String PARSER_SYSTEM_KEY = "prompt.parser.system";
+    static final String PARSER_USER_KEY = "prompt.parser.user";
+    static final String SOOTHER_SYSTEM_KEY = "prompt.soother.system";
+    // 指标里的 operation 标签，和 Prompt 版本号的前缀一致
+    static final String OP_PARSE = "parser";
+    static final String OP_SOOTHER = "soother";
+    // prompt.parser.user 的默认值，DataInitializer 也用它写库
+    public static final String DEFAULT_PARSER_USER = "{raw_input}\n\n【当前北京时间：{currentTime}。eventTime 以此为基准推算，不能早于这个时间。】";
+
     private final ConfigService configService;
+    private final LlmHealthTracker health;
+    private final LlmUsageMeter usageMeter;
+    private final PipelineMetrics metrics;
+    private final ThreadPoolTaskExecutor llmCallExecutor;
+
+    // 解析输出：原样合法 / 本地修好 / 修不好
+    private final LongAdder parseClean = new LongAdder();
+    private final LongAdder parseRepaired = new LongAdder();
+    private final LongAdder parseFailed = new LongAdder();
+    private final Map<String, LongAdder> repairKinds = new ConcurrentHashMap<>();
 
     // 🚀 主模型配置 (如 DeepSeek)
     @Value("${llm.primary.api-key}")
@@ -42,38 +88,60 @@ public class LlmService {
      * 解析用户输入 -> 结构化数据 (高可用版)
      */
     public EventParseResult parseInput(String userInput) {
+        return parseInput(userInput, null);
+    }
+
+    /**
+     * @param anchor 用户说这句话的时间；积压 / 模型故障后重解析时，“10分钟后”要以它为基准。为空取当前时间
+     */
+    public EventParseResult parseInput(String userInput, LocalDateTime anchor) {
         log.info(">>> [主模型] 正在解析: {}", userInput);
 
         // 🚀 1. 获取精确到秒的当前时间
-        String nowStr = DateUtil.now();
+        java.util.Date anchorDate = anchor == null ? new java.util.Date() : DateUtil.date(anchor);
+        String nowStr = DateUtil.formatDateTime(anchorDate);
 
         // 🚀 2. 获取今天是星期几 (中文，例如：星期日)
-        String dayOfWeek = cn.hutool.core.date.DateUtil.dayOfWeekEnum(new java.util.Date()).toChinese("星期");
+        String dayOfWeek = cn.hutool.core.date.DateUtil.dayOfWeekEnum(anchorDate).toChinese("星期");
 
         // 🚀 3. 组合出最强的防穿越时间锚点
         String absoluteTimeContext = nowStr + " " + dayOfWeek;
 
-        String systemPromptTemplate = configService.getPrompt("prompt.parser.system", "");
-
-        // 🚀 4. 在原有的 Prompt 基础上，强行追加“严禁穿越”规则
-        String systemPrompt = systemPromptTemplate.replace("{currentTime}", absoluteTimeContext)
-                + "\n\n【系统最高指令：当前北京时间是 " + absoluteTimeContext
-                + "。你输出的 eventTime 绝不能早于这个时间；如果用户说“5分钟后”，必须以这个时间为基准加5分钟得到 eventTime。"
-                + "并且必须输出 intent/complexity/prepRequired/dependencies/urgentMinuteLevel 字段，JSON 只允许包含这些字段。】";
-
+        // 🚀 4. system 是逐字节稳定的静态前缀（供应商前缀缓存能命中），时间锚点和原话放在最后的 user 消息里
+        //    两个模板从同一个配置快照里取，热更新时不会拿到新 system + 旧 user
+        ConfigService.Snapshot cfg = configService.snapshot();
+        PromptTemplate system = configService.template(cfg, PARSER_SYSTEM_KEY, "");
+        PromptTemplate user = configService.template(cfg, PARSER_USER_KEY, DEFAULT_PARSER_USER);
+        if (system.uses("currentTime")) {
+            log.warn("⚠️ {} 里还带着 {currentTime}，前缀每次都不一样，缓存不会命中", PARSER_SYSTEM_KEY);
+        }
+        Map<String, String> vars = Map.of("currentTime", absoluteTimeContext, "raw_input", userInput);
+        String systemPrompt = system.render(vars);
+        String userPrompt = user.render(vars);
+        String version = OP_PARSE + "@" + system.getVersion() + "." + user.getVersion();
 
+        long start = System.nanoTime();
         try {
-            EventParseResult result = callParserApi(primaryBaseUrl, primaryApiKey, primaryModelName, systemPrompt, userInput);
+            EventParseResult result = callParserApi(primaryBaseUrl, primaryApiKey, primaryModelName, systemPrompt, userPrompt, version);
+            outcome(OP_PARSE, LlmHealthTracker.PRIMARY, start, true);
             log.info("parseResult: {}", JSONUtil.toJsonStr(result));
             return result;
         } catch (Exception e) {
+            outcome(OP_PARSE, LlmHealthTracker.PRIMARY, start, false);
+            metrics.llmFailover(OP_PARSE);
             log.warn("⚠️ [主模型] 解析超时或崩溃，触发熔断，秒级切换至备用模型... 错误: {}", e.getMessage());
+            start = System.nanoTime();
             try {
-                return callParserApi(backupBaseUrl, backupApiKey, backupModelName, systemPrompt, userInput);
+                EventParseResult result = callParserApi(backupBaseUrl, backupApiKey, backupModelName, systemPrompt, userPrompt, version);
+                outcome(OP_PARSE, LlmHealthTracker.BACKUP, start, true);
+                return result;
             } catch (Exception backupEx) {
+                outcome(OP_PARSE, LlmHealthTracker.BACKUP, start, false);
                 log.error("❌ [备用模型] 也已崩溃", backupEx);
                 EventParseResult fallback = new EventParseResult();
                 fallback.setValid(false);
+                // 只有连不上 / 超时 / 5xx 才算故障，进重解析队列；模型答非所问（JSON 修不好、不合 schema）就是无效输入
+                fallback.setProviderOutage(isTransportFailure(backupEx));
                 return fallback;
             }
         }
@@ -83,59 +151,241 @@ public class LlmService {
      * 根据用户原话，生成安抚邮件内容 (高可用版)
      */
     public String generateEmailContent(String rawInput) {
-        String systemPromptTemplate = configService.getPrompt("prompt.soother.system", "");
+        String content = generateSoother(rawInput);
+        // 终极兜底：返回标准模板，绝不阻断邮件发送
+        return content != null ? content : fallbackSoother(rawInput);
+    }
+
+    /**
+     * 主备模型都失败时返回 null，由调用方决定兜底（兜底文案不能进缓存）
+     */
+    public String generateSoother(String rawInput) {
+        return generateSoother(rawInput, null);
+    }
 
+    /**
+     * 带截止时间的版本：主备模型只能用截止前剩下的预算，预算耗尽同样返回 null
+     * deadline 为 null 表示不限（仍受单次 8 秒硬超时约束）
+     * hutool 的 timeout 只管单次建连 / 单次读，不是总时长；每次调用都在 llmCallExecutor 上跑、按预算等结果，
+     * 主模型用掉的时间备用模型不会再拿到
+     */
+    public String generateSoother(String rawInput, Instant deadline) {
+        // {raw_input} 在模板最后一行，前面的部分仍是稳定前缀
+        PromptTemplate system = configService.getTemplate(SOOTHER_SYSTEM_KEY, "");
+        String systemPrompt = system.render(Map.of("raw_input", rawInput));
+        String version = OP_SOOTHER + "@" + system.getVersion();
+
+        int budget = budgetMillis(deadline);
+        if (budget < MIN_SOOTHER_BUDGET_MS) {
+            log.warn("⏱️ 文案生成预算不足 ({} ms)，直接兜底", budget);
+            return null;
+        }
+        long start = System.nanoTime();
         try {
             log.info(">>> [主模型] 正在生成安抚文案...");
-            return callSootherApi(primaryBaseUrl, primaryApiKey, primaryModelName, systemPromptTemplate, rawInput);
+            int primaryBudget = budget;
+            String text = within(primaryBudget,
+                    () -> callSootherApi(primaryBaseUrl, primaryApiKey, primaryModelName, systemPrompt, rawInput, primaryBudget, version));
+            outcome(OP_SOOTHER, LlmHealthTracker.PRIMARY, start, true);
+            return text;
+        } catch (BudgetExpired e) {
+            budgetExpired(OP_SOOTHER, LlmHealthTracker.PRIMARY, start, e);
+            return null; // 预算用完 / 调用池满：切备用模型也一样，不算主模型故障
         } catch (Exception e) {
+            outcome(OP_SOOTHER, LlmHealthTracker.PRIMARY, start, false);
+            budget = budgetMillis(deadline);
+            if (budget < MIN_SOOTHER_BUDGET_MS) {
+                log.warn("⚠️ [主模型] 文案生成失败，预算已用完 ({} ms)，不再切备用模型... 错误: {}", budget, e.getMessage());
+                return null;
+            }
             log.warn("⚠️ [主模型] 文案生成失败，切换至备用模型... 错误: {}", e.getMessage());
+            metrics.llmFailover(OP_SOOTHER);
+            start = System.nanoTime();
             try {
-                return callSootherApi(backupBaseUrl, backupApiKey, backupModelName, systemPromptTemplate, rawInput);
+                int backupBudget = budget;
+                String text = within(backupBudget,
+                        () -> callSootherApi(backupBaseUrl, backupApiKey, backupModelName, systemPrompt, rawInput, backupBudget, version));
+                outcome(OP_SOOTHER, LlmHealthTracker.BACKUP, start, true);
+                return text;
+            } catch (BudgetExpired backupEx) {
+                budgetExpired(OP_SOOTHER, LlmHealthTracker.BACKUP, start, backupEx);
+                return null;
             } catch (Exception backupEx) {
+                outcome(OP_SOOTHER, LlmHealthTracker.BACKUP, start, false);
                 log.error("❌ [备用模型] 也已崩溃", backupEx);
-                // 终极兜底：返回标准模板，绝不阻断邮件发送
-                return "（系统自动提醒）您之前提到的事情快到时间了，别忘了：" + rawInput;
+                return null;
+            }
+        }
+    }
+
+    // 最多等 budgetMs：超时抛 BudgetExpired，底层连接最迟在自己的 connect / read 超时后释放线程
+    private <T> T within(int budgetMs, Supplier<T> call) throws Exception {
+        CompletableFuture<T> future;
+        try {
+            future = CompletableFuture.supplyAsync(call, llmCallExecutor);
+        } catch (RejectedExecutionException e) {
+            throw new BudgetExpired("rejected", "LLM 调用线程池已满");
+        }
+        try {
+            return future.get(budgetMs, TimeUnit.MILLISECONDS);
+        } catch (ExecutionException e) {
+            throw e.getCause() instanceof Exception ? (Exception) e.getCause() : e;
+        } catch (TimeoutException e) {
+            future.cancel(true);
+            throw new BudgetExpired("deadline", "LLM 调用超过预算 " + budgetMs + " ms");
+        }
+    }
+
+    // 预算耗尽不喂给健康度：重解析按健康度放行，不能被投递截止时间带偏
+    private void budgetExpired(String operation, String provider, long startNanos, BudgetExpired e) {
+        long now = System.nanoTime();
+        metrics.llmBudgetExpired(operation, provider, e.getReason());
+        Tracer.span("llm." + operation + "." + provider + ".budget", startNanos, now);
+        log.warn("⏱️ [{}] 文案生成未在预算内完成，直接兜底: {}", provider, e.getMessage());
+    }
+
+    /**
+     * 调用方自己的预算问题（截止时间到了 / 调用池满），和供应商出错区分开
+     */
+    @Getter
+    static class BudgetExpired extends Exception {
+        private final String reason;
+
+        BudgetExpired(String reason, String message) {
+            super(message);
+            this.reason = reason;
+        }
+    }
+
+    // 每次模型调用的结果同时喂给健康度（决定重解析放行）和指标（按提供方 / 用途的耗时分布）
+    private void outcome(String operation, String provider, long startNanos, boolean ok) {
+        if (ok) {
+            health.success(provider);
+        } else {
+            health.failure(provider);
+        }
+        long now = System.nanoTime();
+        metrics.llmCall(operation, provider, now - startNanos, ok);
+        Tracer.span("llm." + operation + "." + provider + (ok ? "" : ".failed"), startNanos, now);
+    }
+
+    /**
+     * 传输层失败：IO 异常（含连接 / 读取超时）和 callApi 对 429、5xx 抛出的 HttpException
+     */
+    static boolean isTransportFailure(Throwable e) {
+        return e instanceof IORuntimeException || e instanceof HttpException;
+    }
+
+    public static String fallbackSoother(String rawInput) {
+        return "（系统自动提醒）您之前提到的事情快到时间了，别忘了：" + rawInput;
+    }
+
+    /**
+     * 预热：提前完成 DNS 解析和 TLS 握手，连接留在 keep-alive 池里，第一次真实解析不再多付一个建连 RTT
+     */
+    public void warmUp() {
+        for (String url : new String[]{primaryBaseUrl, backupBaseUrl}) {
+            if (url == null || url.isBlank()) {
+                continue;
+            }
+            long start = System.currentTimeMillis();
+            try (HttpResponse ignored = HttpRequest.head(url).timeout(3000).execute()) {
+                log.info("🔥 LLM 连接预热完成 {}，耗时 {} ms", url, System.currentTimeMillis() - start);
+            } catch (Exception e) {
+                log.warn("⚠️ LLM 连接预热失败 {}: {}", url, e.getMessage());
             }
         }
     }
 
     // ================== 底层调用抽离 ==================
 
-    private EventParseResult callParserApi(String url, String apiKey, String model, String sysPrompt, String userInput) {
+    private EventParseResult callParserApi(String url, String apiKey, String model, String sysPrompt, String userPrompt, String version) {
         JSONObject requestBody = new JSONObject();
         requestBody.set("model", model);
         requestBody.set("response_format", new JSONObject().set("type", "json_object"));
 
         JSONArray messages = new JSONArray();
         messages.add(new JSONObject().set("role", "system").set("content", sysPrompt));
-        messages.add(new JSONObject().set("role", "user").set("content", userInput));
+        messages.add(new JSONObject().set("role", "user").set("content", userPrompt));
         requestBody.set("messages", messages);
 
+        long start = System.currentTimeMillis();
         HttpResponse response = HttpRequest.post(url)
                 .header("Authorization", "Bearer " + apiKey)
                 .header("Content-Type", "application/json")
                 .body(requestBody.toString())
                 .timeout(8000) // 🚀 硬超时改为 8 秒，防止卡死
                 .execute();
+        checkStatus(response);
 
         String body = response.body();
         JSONObject jsonResponse = JSONUtil.parseObj(body);
+        usageMeter.record(version, model, jsonResponse.getJSONObject("usage"), System.currentTimeMillis() - start);
         String content = jsonResponse.getJSONArray("choices")
                 .getJSONObject(0)
                 .getJSONObject("message")
                 .getStr("content");
 
-        // 🚀 1. 新增：洗掉大模型可能附带的 Markdown 标签
-        String cleanJson = content.replace("```json", "").replace("```", "").trim();
+        log.info(">>> [大模型原始返回]: {}", content);
+
+        // 🚀 本地先修：代码块 / 解释文字 / 尾逗号 / 枚举大小写 / 截断，修好了就不必再花一次备用模型调用
+        LlmJson.Result<EventParseResult> parsed;
+        try {
+            parsed = LlmJson.parse(content, EventParseResult.class);
+        } catch (RuntimeException e) {
+            parseFailed.increment();
+            throw e;
+        }
+        if (parsed.isRepaired()) {
+            parseRepaired.increment();
+            parsed.getRepairs().forEach(k -> repairKinds.computeIfAbsent(k.split(":")[0], x -> new LongAdder()).increment());
+            log.info("🩹 LLM 输出已本地修复: {}", parsed.getRepairs());
+        } else {
+            parseClean.increment();
+        }
+        return parsed.getValue();
+    }
+
+    /**
+     * 解析输出的本地修复率：修好的占比越高，省下的备用模型调用越多
+     */
+    public Map<String, Object> parseStats() {
+        long clean = parseClean.sum();
+        long repaired = parseRepaired.sum();
+        long failed = parseFailed.sum();
+        long total = clean + repaired + failed;
+        Map<String, Object> m = new LinkedHashMap<>();
+        m.put("clean", clean);
+        m.put("repaired", repaired);
+        m.put("failed", failed); // 本地修不好、切了备用模型（或彻底失败）的
+        m.put("repairRate", total == 0 ? 0 : (double) repaired / total);
+        Map<String, Long> kinds = new TreeMap<>();
+        repairKinds.forEach((k, v) -> kinds.put(k, v.sum()));
+        m.put("repairKinds", kinds);
+        m.put("health", health.stats());
+        return m;
+    }
 
-        log.info(">>> [大模型原始返回]: {}", cleanJson);
+    // 429 / 5xx 是供应商侧的问题，按传输失败处理；其余非 2xx（鉴权、参数）不是等一等能好的
+    private static void checkStatus(HttpResponse response) {
+        int status = response.getStatus();
+        if (status == 429 || status >= 500) {
+            throw new HttpException("LLM 接口返回 HTTP {}", status);
+        }
+        if (!response.isOk()) {
+            throw new IllegalStateException("LLM 接口返回 HTTP " + status);
+        }
+    }
 
-        // 🚀 2. 核心修改：用全路径调用咱们自己写的 JsonUtil，彻底解决时区问题！
-        return com.fly.forgotyet.common.JsonUtil.toBean(cleanJson, EventParseResult.class);
+    private static int budgetMillis(Instant deadline) {
+        if (deadline == null) {
+            return SOOTHER_TIMEOUT_MS;
+        }
+        long left = Duration.between(Instant.now(), deadline).toMillis();
+        return (int) Math.max(0, Math.min(SOOTHER_TIMEOUT_MS, left));
     }
 
-    private String callSootherApi(String url, String apiKey, String model, String sysPrompt, String rawInput) {
+    private String callSootherApi(String url, String apiKey, String model, String sysPrompt, String rawInput, int timeoutMs, String version) {
         JSONObject requestBody = new JSONObject();
         requestBody.set("model", model);
 
@@ -144,14 +394,17 @@ public class LlmService {
         messages.add(new JSONObject().set("role", "user").set("content", "用户的原话是：" + rawInput + "。请生成一段简短的安抚提醒。"));
         requestBody.set("messages", messages);
 
+        long start = System.currentTimeMillis();
         HttpResponse response = HttpRequest.post(url)
                 .header("Authorization", "Bearer " + apiKey)
                 .header("Content-Type", "application/json")
                 .body(requestBody.toString())
-                .timeout(8000) // 🚀 硬超时 8 秒
+                .timeout(timeoutMs) // 🚀 硬超时 8 秒，有截止时间时取剩余预算
                 .execute();
+        checkStatus(response);
 
         JSONObject jsonResponse = JSONUtil.parseObj(response.body());
+        usageMeter.record(version, model, jsonResponse.getJSONObject("usage"), System.currentTimeMillis() - start);
         return jsonResponse.getJSONArray("choices")
                 .getJSONObject(0)
                 .getJSONObject("message")
@@ -0,0 +1,79 @@
+package com.fly.forgotyet.service;
+
+import cn.hutool.json.JSONObject;
+import com.fly.forgotyet.common.PipelineMetrics;
+import lombok.RequiredArgsConstructor;
+import org.springframework.stereotype.Service;
+
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * 按 Prompt 版本记 token 用量和耗时：改 Prompt 前后的成本 / 延迟直接对比。
+ * key = 用途@模板版本 / 模型；缓存命中的 token 兼容 DeepSeek（prompt_cache_hit_tokens）
+ * 和 OpenAI 兼容接口（prompt_tokens_details.cached_tokens）两种写法
+ * token 数同时记到 forgotyet.llm.tokens（按用途 / 模型，不带版本，控制基数）
+ */
+@Service
+@RequiredArgsConstructor
+public class LlmUsageMeter {
+
+    private final PipelineMetrics metrics;
+
+    private final Map<String, Usage> usages = new ConcurrentHashMap<>();
+
+    public void record(String promptVersion, String model, JSONObject usage, long latencyMs) {
+        Usage u = usages.computeIfAbsent(promptVersion + " / " + model, k -> new Usage());
+        u.calls.increment();
+        u.latencyMs.add(latencyMs);
+        u.maxLatencyMs.accumulateAndGet(latencyMs, Math::max);
+        if (usage == null) {
+            return;
+        }
+        long prompt = usage.getLong("prompt_tokens", 0L);
+        long completion = usage.getLong("completion_tokens", 0L);
+        u.promptTokens.add(prompt);
+        u.completionTokens.add(completion);
+        Long cached = usage.getLong("prompt_cache_hit_tokens");
+        if (cached == null) {
+            JSONObject details = usage.getJSONObject("prompt_tokens_details");
+            cached = details == null ? null : details.getLong("cached_tokens");
+        }
+        u.cachedPromptTokens.add(cached == null ? 0 : cached);
+        int at = promptVersion.indexOf('@');
+        metrics.llmTokens(at < 0 ? promptVersion : promptVersion.substring(0, at), model, prompt, completion, cached == null ? 0 : cached);
+    }
+
+    public Map<String, Object> stats() {
+        Map<String, Object> m = new TreeMap<>();
+        usages.forEach((key, u) -> {
+            long calls = u.calls.sum();
+            long prompt = u.promptTokens.sum();
+            Map<String, Object> one = new LinkedHashMap<>();
+            one.put("calls", calls);
+            one.put("promptTokens", prompt);
+            one.put("completionTokens", u.completionTokens.sum());
+            one.put("cachedPromptTokens", u.cachedPromptTokens.sum());
+            one.put("cacheHitRatio", prompt == 0 ? 0 : (double) u.cachedPromptTokens.sum() / prompt);
+            one.put("avgPromptTokens", calls == 0 ? 0 : prompt / calls);
+            one.put("avgCompletionTokens", calls == 0 ? 0 : u.completionTokens.sum() / calls);
+            one.put("avgLatencyMs", calls == 0 ? 0 : u.latencyMs.sum() / calls);
+            one.put("maxLatencyMs", u.maxLatencyMs.get());
+            m.put(key, one);
+        });
+        return m;
+    }
+
+    private static class Usage {
+        final LongAdder calls = new LongAdder();
+        final LongAdder promptTokens = new LongAdder();
+        final LongAdder completionTokens = new LongAdder();
+        final LongAdder cachedPromptTokens = new LongAdder();
+        final LongAdder latencyMs = new LongAdder();
+        final AtomicLong maxLatencyMs = new AtomicLong();
+    }
+}
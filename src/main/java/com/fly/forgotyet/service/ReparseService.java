@@ -0,0 +1,107 @@
+package com.fly.forgotyet.service;
+
+import com.fly.forgotyet.enums.EventStatus;
+import com.fly.forgotyet.repository.EventRepository;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.data.domain.PageRequest;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Service;
+
+import java.time.Duration;
+import java.time.LocalDateTime;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * 重解析队列：主备模型都挂时收下的原话（REPARSE），等模型恢复后限速放回收录队列。
+ * - 模型可用：每轮按速率放一批回 PARSING，由收录工作池正常解析、计划、挂载
+ * - 模型不可用：每隔 probe-interval 只放一条当探针，探针成功后健康度恢复，下一轮开始正常放行
+ * - 收录队列本身积压太多时先不放，不跟用户的新收录抢工作线程
+ */
+@Slf4j
+@Service
+public class ReparseService {
+
+    private final EventRepository eventRepository;
+    private final LlmHealthTracker health;
+    private final int perTick;
+    private final long probeIntervalMs;
+    private final long maxIntakeDepth;
+
+    private final AtomicLong requeued = new AtomicLong();
+    private final AtomicLong probes = new AtomicLong();
+    private volatile long lastProbeAt;
+
+    public ReparseService(EventRepository eventRepository,
+                          LlmHealthTracker health,
+                          @Value("${reparse.rate-per-minute:30}") int ratePerMinute,
+                          @Value("${reparse.poll-ms:5000}") long pollMs,
+                          @Value("${reparse.probe-interval-ms:60000}") long probeIntervalMs,
+                          @Value("${reparse.max-intake-depth:100}") long maxIntakeDepth) {
+        this.eventRepository = eventRepository;
+        this.health = health;
+        this.perTick = (int) Math.max(1, Math.round(ratePerMinute * pollMs / 60000.0));
+        this.probeIntervalMs = probeIntervalMs;
+        this.maxIntakeDepth = maxIntakeDepth;
+    }
+
+    @Scheduled(fixedDelayString = "${reparse.poll-ms:5000}", initialDelayString = "${reparse.poll-ms:5000}")
+    public void drainLoop() {
+        try {
+            drain();
+        } catch (Exception e) {
+            log.error("❌ 重解析队列排空异常", e);
+        }
+    }
+
+    /**
+     * 放一批 REPARSE 回 PARSING，返回放回的条数
+     */
+    public int drain() {
+        if (eventRepository.countByStatus(EventStatus.REPARSE) == 0) {
+            return 0;
+        }
+        if (eventRepository.countByStatus(EventStatus.PARSING) >= maxIntakeDepth) {
+            return 0;
+        }
+
+        int batch;
+        if (health.available()) {
+            batch = perTick;
+        } else {
+            long now = System.currentTimeMillis();
+            if (now - lastProbeAt < probeIntervalMs) {
+                return 0;
+            }
+            lastProbeAt = now;
+            probes.incrementAndGet();
+            batch = 1;
+        }
+
+        int moved = 0;
+        List<Long> ids = eventRepository.findReparseIds(PageRequest.of(0, batch));
+        for (Long id : ids) {
+            moved += eventRepository.requeueReparse(id); // 期间被取消的会更新 0 行
+        }
+        if (moved > 0) {
+            requeued.addAndGet(moved);
+            log.info("🔁 重解析：放回收录队列 {} 条{}", moved, batch == 1 && !health.available() ? "（探针）" : "");
+        }
+        return moved;
+    }
+
+    public Map<String, Object> stats() {
+        LocalDateTime oldest = eventRepository.findOldestCreateTime(EventStatus.REPARSE);
+        Map<String, Object> m = new LinkedHashMap<>();
+        m.put("depth", eventRepository.countByStatus(EventStatus.REPARSE));
+        m.put("oldestAgeMs", oldest == null ? 0 : Duration.between(oldest, LocalDateTime.now()).toMillis());
+        m.put("requeued", requeued.get());
+        m.put("probes", probes.get());
+        m.put("perTick", perTick);
+        m.put("llm", health.stats());
+        return m;
+    }
+}
@@ -0,0 +1,232 @@
+package com.fly.forgotyet.service;
+
+import com.fly.forgotyet.config.SchedulerProperties;
+import lombok.AllArgsConstructor;
+import lombok.Getter;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.stereotype.Component;
+
+import javax.annotation.PreDestroy;
+import java.io.IOException;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ * 调度快照：本节点内存挂载表的精简索引（id, 触发时间戳, 分道），以追加写的方式落到 mmap 文件里，放在 H2 文件旁边。
+ * - 每次挂载 / 摘除只追加一条 24 字节记录，写的是页缓存，进程崩溃也不会丢
+ * - 重启时映射文件顺序回放，不查库即可把内存时钟恢复，再由后台和数据库对账
+ * - 文件写满就把存活记录压缩到新文件再原子替换
+ * 数据库始终是唯一事实来源：快照只是加速重启，出问题直接关掉走全量恢复
+ */
+@Slf4j
+@Component
+public class ScheduleSnapshot {
+
+    static final int HEADER_BYTES = 16;
+    static final int RECORD_BYTES = 24;
+    private static final int FILE_MAGIC = 0x46595331; // "FYS1"
+    private static final short RECORD_MAGIC = 0x4659;  // "FY"，未写入的区域是 0，回放读到这里就停
+    private static final byte OP_ADD = 1;
+    private static final byte OP_REMOVE = 2;
+
+    private final Path path;
+    private final int capacityBytes;
+    private volatile boolean enabled;
+
+    // 存活记录的镜像，压缩时用
+    private final Map<Long, Entry> live = new HashMap<>();
+    private FileChannel channel;
+    private MappedByteBuffer buf;
+
+    public ScheduleSnapshot(SchedulerProperties props) {
+        this.path = Paths.get(props.getSnapshotPath());
+        this.capacityBytes = Math.max(HEADER_BYTES + RECORD_BYTES * 1024, props.getSnapshotMaxBytes());
+        this.enabled = props.isSnapshotEnabled();
+    }
+
+    /**
+     * 映射并回放快照，返回存活的挂载记录；回放完顺手压缩一次
+     */
+    public synchronized Collection<Entry> load() {
+        if (!enabled) {
+            return Collections.emptyList();
+        }
+        long start = System.currentTimeMillis();
+        try {
+            if (path.getParent() != null) {
+                Files.createDirectories(path.getParent());
+            }
+            open(path);
+            live.clear();
+            int records = 0;
+            if (buf.getInt(0) == FILE_MAGIC) {
+                int pos = HEADER_BYTES;
+                while (pos + RECORD_BYTES <= capacityBytes) {
+                    long id = buf.getLong(pos);
+                    long epoch = buf.getLong(pos + 8);
+                    byte op = buf.get(pos + 16);
+                    byte lane = buf.get(pos + 17);
+                    short magic = buf.getShort(pos + 18);
+                    int check = buf.getInt(pos + 20);
+                    if (magic != RECORD_MAGIC || check != checksum(id, epoch, op, lane)) {
+                        break; // 未写入或写了一半的尾巴
+                    }
+                    if (op == OP_ADD) {
+                        live.put(id, new Entry(id, epoch, lane));
+                    } else {
+                        live.remove(id);
+                    }
+                    pos += RECORD_BYTES;
+                    records++;
+                }
+            }
+            compact();
+            log.info("📼 调度快照回放完成：{} 条记录 -> {} 个存活任务，耗时 {} ms",
+                    records, live.size(), System.currentTimeMillis() - start);
+            return new ArrayList<>(live.values());
+        } catch (Exception e) {
+            log.warn("⚠️ 调度快照不可用，退回全量恢复: {}", e.getMessage());
+            disable();
+            return Collections.emptyList();
+        }
+    }
+
+    public synchronized void added(Long id, long triggerEpochMillis, int lane) {
+        if (!enabled || buf == null) {
+            return;
+        }
+        Entry previous = live.put(id, new Entry(id, triggerEpochMillis, (byte) lane));
+        if (previous != null && previous.getTriggerEpochMillis() == triggerEpochMillis) {
+            return; // 重复挂载，不必再记
+        }
+        append(id, triggerEpochMillis, OP_ADD, (byte) lane);
+    }
+
+    public synchronized void removed(Long id) {
+        if (!enabled || buf == null) {
+            return;
+        }
+        if (live.remove(id) != null) {
+            append(id, 0L, OP_REMOVE, (byte) 0);
+        }
+    }
+
+    public boolean isEnabled() {
+        return enabled;
+    }
+
+    synchronized int liveCount() {
+        return live.size();
+    }
+
+    @PreDestroy
+    public synchronized void close() {
+        if (buf != null) {
+            buf.force();
+        }
+        closeChannel();
+    }
+
+    private void append(long id, long epoch, byte op, byte lane) {
+        try {
+            if (buf.position() + RECORD_BYTES > capacityBytes) {
+                compact();
+                if (buf.position() + RECORD_BYTES > capacityBytes) {
+                    log.warn("⚠️ 调度快照容量不足（存活 {} 个），关闭快照", live.size());
+                    disable();
+                    return;
+                }
+            }
+            int pos = buf.position();
+            // 校验字段最后写：回放时只认 magic + checksum 都对上的完整记录
+            buf.putLong(pos, id);
+            buf.putLong(pos + 8, epoch);
+            buf.put(pos + 16, op);
+            buf.put(pos + 17, lane);
+            buf.putShort(pos + 18, RECORD_MAGIC);
+            buf.putInt(pos + 20, checksum(id, epoch, op, lane));
+            buf.position(pos + RECORD_BYTES);
+        } catch (Exception e) {
+            log.warn("⚠️ 调度快照写入失败，关闭快照: {}", e.getMessage());
+            disable();
+        }
+    }
+
+    /**
+     * 把存活记录写进临时文件，原子替换后重新映射
+     */
+    private void compact() throws IOException {
+        Path tmp = path.resolveSibling(path.getFileName() + ".tmp");
+        Files.deleteIfExists(tmp);
+        closeChannel();
+        open(tmp);
+        for (Entry e : live.values()) {
+            if (buf.position() + RECORD_BYTES > capacityBytes) {
+                break;
+            }
+            int pos = buf.position();
+            buf.putLong(pos, e.getId());
+            buf.putLong(pos + 8, e.getTriggerEpochMillis());
+            buf.put(pos + 16, OP_ADD);
+            buf.put(pos + 17, e.getLane());
+            buf.putShort(pos + 18, RECORD_MAGIC);
+            buf.putInt(pos + 20, checksum(e.getId(), e.getTriggerEpochMillis(), OP_ADD, e.getLane()));
+            buf.position(pos + RECORD_BYTES);
+        }
+        int end = buf.position();
+        buf.force();
+        closeChannel();
+        Files.move(tmp, path, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+        open(path);
+        buf.position(end);
+    }
+
+    private void open(Path file) throws IOException {
+        channel = FileChannel.open(file, StandardOpenOption.CREATE, StandardOpenOption.READ, StandardOpenOption.WRITE);
+        buf = channel.map(FileChannel.MapMode.READ_WRITE, 0, capacityBytes);
+        if (buf.getInt(0) != FILE_MAGIC) {
+            buf.putInt(0, FILE_MAGIC);
+            buf.putInt(4, RECORD_BYTES);
+        }
+        buf.position(HEADER_BYTES);
+    }
+
+    private void disable() {
+        enabled = false;
+        closeChannel();
+        buf = null;
+    }
+
+    private void closeChannel() {
+        if (channel != null) {
+            try {
+                channel.close();
+            } catch (IOException ignore) {
+                // 映射区域由 GC 回收
+            }
+            channel = null;
+        }
+    }
+
+    private static int checksum(long id, long epoch, byte op, byte lane) {
+        return Long.hashCode(id * 31 + epoch) ^ ((op << 8) | (lane & 0xFF)) ^ 0x5F3759DF;
+    }
+
+    @Getter
+    @AllArgsConstructor
+    public static class Entry {
+        private final long id;
+        private final long triggerEpochMillis;
+        private final byte lane;
+    }
+}
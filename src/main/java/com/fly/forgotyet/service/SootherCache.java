@@ -0,0 +1,192 @@
+package com.fly.forgotyet.service;
+
+import cn.hutool.cache.CacheUtil;
+import cn.hutool.cache.impl.LRUCache;
+import cn.hutool.core.util.RandomUtil;
+import com.fly.forgotyet.entity.Event;
+import com.fly.forgotyet.enums.Complexity;
+import com.fly.forgotyet.enums.TriggerIntent;
+import com.fly.forgotyet.repository.EventRepository;
+import com.fly.forgotyet.utils.ReminderText;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.data.domain.PageRequest;
+import org.springframework.stereotype.Service;
+
+import java.time.Instant;
+import java.time.LocalDate;
+import java.time.LocalDateTime;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.stream.Collectors;
+
+/**
+ * 安抚文案缓存：“喝水”“关火”“吃药”这类高频提醒，不必每次投递都打一次 LLM。
+ * - key = 提醒核心事项（去掉时间和口头句式）+ 意图 + 复杂度
+ * - 每个 key 攒够 variants 条不同文案后才开始命中，命中时随机挑一条，避免千篇一律
+ * - LRU 容量上限 + TTL，文案隔一段时间自然换新
+ * - 太长的原话（信息量大、几乎不会重复）不进缓存，仍按原话生成
+ * - 兜底模板（主备模型都挂了）不进缓存
+ */
+@Slf4j
+@Service
+public class SootherCache {
+
+    private static final int DAYS_KEPT = 7;
+
+    private final LlmService llmService;
+    private final EventRepository eventRepository;
+    private final int variants;
+    private final int maxKeyChars;
+    private final int preseedTop;
+    private final LRUCache<String, List<String>> cache;
+
+    private final AtomicLong hits = new AtomicLong();
+    private final AtomicLong misses = new AtomicLong();
+    private final AtomicLong uncacheable = new AtomicLong();
+    private final AtomicLong fallbacks = new AtomicLong();
+    private final Map<LocalDate, AtomicLong> avoidedByDay = new ConcurrentHashMap<>();
+
+    public SootherCache(LlmService llmService,
+                        EventRepository eventRepository,
+                        @Value("${soother-cache.capacity:2000}") int capacity,
+                        @Value("${soother-cache.ttl-hours:72}") long ttlHours,
+                        @Value("${soother-cache.variants:3}") int variants,
+                        @Value("${soother-cache.max-key-chars:16}") int maxKeyChars,
+                        @Value("${soother-cache.preseed-top:0}") int preseedTop) {
+        this.llmService = llmService;
+        this.eventRepository = eventRepository;
+        this.variants = Math.max(1, variants);
+        this.maxKeyChars = maxKeyChars;
+        this.preseedTop = preseedTop;
+        this.cache = CacheUtil.newLRUCache(Math.max(1, capacity), Math.max(1, ttlHours) * 3600_000L);
+    }
+
+    public String contentFor(Event event) {
+        return contentFor(event, null);
+    }
+
+    /**
+     * deadline：LLM 最晚要在这之前返回；缓存命中不受影响，未命中时预算不够就直接兜底
+     */
+    public String contentFor(Event event, Instant deadline) {
+        return contentFor(event.getRawInput(), event.getTriggerIntent(), event.getComplexity(), deadline);
+    }
+
+    public String contentFor(String rawInput, TriggerIntent intent, Complexity complexity, Instant deadline) {
+        String core = ReminderText.core(rawInput);
+        if (core.isEmpty() || core.length() > maxKeyChars) {
+            uncacheable.incrementAndGet();
+            String text = llmService.generateSoother(rawInput, deadline);
+            if (text == null || text.isBlank()) {
+                fallbacks.incrementAndGet();
+                return LlmService.fallbackSoother(rawInput);
+            }
+            return text;
+        }
+
+        String key = key(core, intent, complexity);
+        List<String> pool = cache.get(key, false); // 不续期：TTL 从首次生成算起，文案定期换新
+        if (pool != null && pool.size() >= variants) {
+            hits.incrementAndGet();
+            avoidedByDay.computeIfAbsent(LocalDate.now(), d -> new AtomicLong()).incrementAndGet();
+            return RandomUtil.randomEle(pool);
+        }
+
+        misses.incrementAndGet();
+        String text = generate(key, core, deadline);
+        if (text == null) {
+            fallbacks.incrementAndGet();
+            return LlmService.fallbackSoother(rawInput);
+        }
+        return text;
+    }
+
+    /**
+     * 预热：从最近的事件里挑出现最多的提醒，提前把文案攒满
+     */
+    public int preseed() {
+        if (preseedTop <= 0) {
+            return 0;
+        }
+        long start = System.currentTimeMillis();
+        Map<String, Integer> freq = new HashMap<>();
+        Map<String, String> cores = new HashMap<>();
+        for (EventRepository.SootherSample s : eventRepository.findSootherSamples(
+                LocalDateTime.now().minusDays(30), PageRequest.of(0, 5000))) {
+            String core = ReminderText.core(s.getRawInput());
+            if (core.isEmpty() || core.length() > maxKeyChars) {
+                continue;
+            }
+            String key = key(core, s.getTriggerIntent(), s.getComplexity());
+            freq.merge(key, 1, Integer::sum);
+            cores.putIfAbsent(key, core);
+        }
+
+        List<String> top = freq.entrySet().stream()
+                .filter(e -> e.getValue() > 1) // 只出现过一次的不值得预热
+                .sorted(Map.Entry.<String, Integer>comparingByValue().reversed())
+                .limit(preseedTop)
+                .map(Map.Entry::getKey)
+                .collect(Collectors.toList());
+        int generated = 0;
+        for (String key : top) {
+            List<String> pool = cache.get(key, false);
+            for (int i = pool == null ? 0 : pool.size(); i < variants; i++) {
+                if (generate(key, cores.get(key), null) != null) {
+                    generated++;
+                }
+            }
+        }
+        log.info("💬 安抚文案预热：{} 个高频提醒，生成 {} 条，耗时 {} ms",
+                top.size(), generated, System.currentTimeMillis() - start);
+        return generated;
+    }
+
+    public Map<String, Object> stats() {
+        long h = hits.get();
+        long m = misses.get();
+        Map<String, Object> s = new LinkedHashMap<>();
+        s.put("keys", cache.size());
+        s.put("hits", h);
+        s.put("misses", m);
+        s.put("hitRatio", h + m == 0 ? 0 : (double) h / (h + m));
+        s.put("uncacheable", uncacheable.get());
+        s.put("fallbacks", fallbacks.get());
+        Map<String, Long> perDay = new TreeMap<>();
+        avoidedByDay.forEach((d, n) -> perDay.put(d.toString(), n.get()));
+        s.put("llmCallsAvoidedPerDay", perDay);
+        return s;
+    }
+
+    private String generate(String key, String core, Instant deadline) {
+        String text = llmService.generateSoother(core, deadline);
+        if (text == null || text.isBlank()) {
+            return null;
+        }
+        // 按 key 加锁的 get-or-create：并发生成同一个 key 只会建一个池子，不会互相覆盖丢文案
+        List<String> pool = cache.get(key, false, CopyOnWriteArrayList::new);
+        synchronized (pool) {
+            if (pool.size() < variants && !pool.contains(text)) {
+                pool.add(text);
+            }
+        }
+        trimDays();
+        return text;
+    }
+
+    private void trimDays() {
+        LocalDate oldest = LocalDate.now().minusDays(DAYS_KEPT);
+        avoidedByDay.keySet().removeIf(d -> d.isBefore(oldest));
+    }
+
+    private static String key(String core, TriggerIntent intent, Complexity complexity) {
+        return core + "|" + intent + "|" + complexity;
+    }
+}
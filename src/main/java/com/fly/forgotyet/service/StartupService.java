@@ -0,0 +1,99 @@
+package com.fly.forgotyet.service;
+
+import com.fly.forgotyet.config.ReadinessGate;
+import com.fly.forgotyet.entity.EventParseResult;
+import com.fly.forgotyet.utils.EventTimeNormalizer;
+import lombok.RequiredArgsConstructor;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.boot.context.event.ApplicationReadyEvent;
+import org.springframework.context.event.EventListener;
+import org.springframework.stereotype.Service;
+
+import java.time.Clock;
+import java.util.concurrent.CompletableFuture;
+
+/**
+ * 启动后台化：任务恢复、补发扫描、各类预热都不再占用启动主线程。
+ * 端口先起来，恢复完成后再通过 ReadinessGate 放行流量；调度快照回放出任务时回放完就放行。
+ */
+@Slf4j
+@Service
+@RequiredArgsConstructor
+public class StartupService {
+
+    private final EventSchedulerService schedulerService;
+    private final CatchUpService catchUpService;
+    private final LlmService llmService;
+    private final AuthService authService;
+    private final Clock clock;
+    private final ReadinessGate readinessGate;
+    private final SootherCache sootherCache;
+    private final TriggerLoadSmoother triggerLoadSmoother;
+
+    @EventListener(ApplicationReadyEvent.class)
+    public void onApplicationReady() {
+        Thread t = new Thread(this::bootInBackground, "fy-boot-recovery");
+        t.setDaemon(true);
+        t.start();
+    }
+
+    void bootInBackground() {
+        long start = System.currentTimeMillis();
+
+        // 预热和恢复互不依赖，并行跑
+        CompletableFuture<Void> warm = CompletableFuture.allOf(
+                CompletableFuture.runAsync(() -> warm("LLM 连接", llmService::warmUp)),
+                CompletableFuture.runAsync(() -> warm("JWT 解析器", authService::warmUp)),
+                CompletableFuture.runAsync(() -> warm("时间归一器", this::warmNormalizer)),
+                CompletableFuture.runAsync(() -> warm("触发直方图", triggerLoadSmoother::refresh)));
+
+        // 快照里的任务真的重新认领并挂回去了才立刻放行；快照关闭 / 为空 / 损坏 / 全部认领失败都等全量恢复完再放行
+        boolean warmRestart = false;
+        try {
+            int replayed = schedulerService.replaySnapshot();
+            warmRestart = replayed > 0;
+            if (warmRestart) {
+                log.info("📼 [启动] 快照热启动挂回 {} 个任务，耗时 {} ms", replayed, System.currentTimeMillis() - start);
+                readinessGate.markReady();
+            }
+        } catch (Exception e) {
+            log.warn("⚠️ [启动] 快照回放失败，走全量恢复: {}", e.getMessage());
+        }
+
+        try {
+            schedulerService.recoverSilentTasksOnBoot();
+            if (warmRestart) {
+                schedulerService.reconcileWithDb();
+            }
+            catchUpService.scan();
+        } catch (Exception e) {
+            // 恢复失败不阻止放行：认领循环和补发扫描会在下一轮继续兜底
+            log.error("❌ [启动] 后台恢复异常，交给认领循环继续兜底", e);
+        }
+
+        warm.join();
+        log.info("🚀 [启动] 后台恢复 + 预热耗时 {} ms", System.currentTimeMillis() - start);
+        if (!warmRestart) {
+            readinessGate.markReady();
+        }
+
+        // 放行之后再慢慢预热高频提醒的文案（默认关闭，要花 LLM 调用）
+        warm("安抚文案缓存", sootherCache::preseed);
+    }
+
+    private void warmNormalizer() {
+        EventParseResult sample = new EventParseResult();
+        EventTimeNormalizer.normalize(sample, "明天下午3点开会", clock);
+        EventTimeNormalizer.normalize(sample, "下周三晚上8点给妈妈打电话", clock);
+    }
+
+    private void warm(String name, Runnable task) {
+        long start = System.currentTimeMillis();
+        try {
+            task.run();
+            log.info("🔥 [预热] {} 完成，耗时 {} ms", name, System.currentTimeMillis() - start);
+        } catch (Exception e) {
+            log.warn("⚠️ [预热] {} 失败: {}", name, e.getMessage());
+        }
+    }
+}
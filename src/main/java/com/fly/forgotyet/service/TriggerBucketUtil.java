@@ -28,4 +28,18 @@ public final class TriggerBucketUtil {
             case D30 -> Duration.ofDays(30);
         };
     }
+
+    /**
+     * 紧急程度分道：0 = 分钟级，1 = 小时级（及未知），2 = 天级
+     */
+    public static int lane(TriggerBucket bucket) {
+        if (bucket == null) {
+            return 1;
+        }
+        return switch (bucket.name().charAt(0)) {
+            case 'M' -> 0;
+            case 'H' -> 1;
+            default -> 2;
+        };
+    }
 }
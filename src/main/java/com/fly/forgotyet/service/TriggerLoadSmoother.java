@@ -0,0 +1,181 @@
+package com.fly.forgotyet.service;
+
+import com.fly.forgotyet.entity.TriggerPlan;
+import com.fly.forgotyet.enums.TriggerIntent;
+import com.fly.forgotyet.repository.EventRepository;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Service;
+
+import java.time.Duration;
+import java.time.Instant;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * 整点削峰：模糊时间默认落在 9:00 / 15:00 / 20:00，D1/H1 这类提前量又正好是整点，
+ * 成千上万条提醒会挤在同一秒触发，一起去打 LLM 和 SMTP。
+ * - 按未来每分钟的待触发条数（直方图）看负载，某一分钟超过阈值才动
+ * - 只动“弹性”提醒：非 AT_TIME、非分钟级强规则、没有走兜底
+ * - 只往前挪，幅度 = 提前量 × 比例，且不超过上限（D1 最多 30 分钟，H1 6 分钟，M* 基本不动）
+ * - 挪到容忍窗口里最空的那一分钟，分钟内再随机打散秒数
+ * 往前挪只会离 eventTime 更远，triggerTime < eventTime 自然成立；同时不早于 now + 5s
+ */
+@Slf4j
+@Service
+public class TriggerLoadSmoother {
+
+    private static final long MINUTE_MS = 60_000;
+
+    private final EventRepository eventRepository;
+    private final boolean enabled;
+    private final int peakThreshold;
+    private final double toleranceRatio;
+    private final int maxShiftMinutes;
+    private final int horizonDays;
+
+    // epoch 分钟 -> 待触发条数；定期从库里整张重建，两次重建之间本节点新计划的自己累加
+    private volatile Map<Long, AtomicInteger> histogram = new ConcurrentHashMap<>();
+
+    private final AtomicLong evaluated = new AtomicLong();
+    private final AtomicLong shifted = new AtomicLong();
+    private final AtomicLong shiftedSeconds = new AtomicLong();
+
+    public TriggerLoadSmoother(EventRepository eventRepository,
+                               @Value("${trigger-smoothing.enabled:true}") boolean enabled,
+                               @Value("${trigger-smoothing.peak-threshold:30}") int peakThreshold,
+                               @Value("${trigger-smoothing.tolerance-ratio:0.1}") double toleranceRatio,
+                               @Value("${trigger-smoothing.max-shift-minutes:30}") int maxShiftMinutes,
+                               @Value("${trigger-smoothing.horizon-days:31}") int horizonDays) {
+        this.eventRepository = eventRepository;
+        this.enabled = enabled;
+        this.peakThreshold = Math.max(1, peakThreshold);
+        this.toleranceRatio = Math.max(0, toleranceRatio);
+        this.maxShiftMinutes = Math.max(0, maxShiftMinutes);
+        this.horizonDays = Math.max(1, horizonDays);
+    }
+
+    /**
+     * 从库里重建直方图：多副本各自计划的提醒在这里汇总
+     */
+    @Scheduled(fixedDelayString = "${trigger-smoothing.refresh-ms:300000}", initialDelayString = "${trigger-smoothing.refresh-ms:300000}")
+    public void refresh() {
+        if (!enabled) {
+            return;
+        }
+        try {
+            long now = System.currentTimeMillis();
+            Map<Long, AtomicInteger> fresh = new ConcurrentHashMap<>();
+            for (EventRepository.MinuteLoad m : eventRepository.findTriggerHistogram(now, now + horizonDays * 86_400_000L)) {
+                fresh.put(m.getSlot(), new AtomicInteger(m.getTriggers().intValue()));
+            }
+            histogram = fresh;
+            log.debug("📊 触发直方图已刷新：{} 个非空分钟", fresh.size());
+        } catch (Exception e) {
+            log.warn("⚠️ 触发直方图刷新失败，沿用旧数据: {}", e.getMessage());
+        }
+    }
+
+    /**
+     * 计划定下来之后调用：必要时把 triggerTime 往前挪，并把最终落点计入直方图
+     */
+    public void smooth(TriggerPlan plan, Instant now) {
+        Instant trigger = plan.getTriggerTime();
+        if (trigger == null) {
+            return;
+        }
+        if (!enabled || !flexible(plan)) {
+            record(trigger);
+            return;
+        }
+        evaluated.incrementAndGet();
+
+        long tolerance = toleranceMinutes(plan);
+        long origin = Math.floorDiv(trigger.toEpochMilli(), MINUTE_MS);
+        int originLoad = load(origin);
+        if (tolerance == 0 || originLoad < peakThreshold) {
+            record(trigger);
+            return;
+        }
+
+        // 容忍窗口里找最空的一分钟；一样空就选离原时间最近的
+        Instant earliest = now.plusSeconds(5);
+        long best = origin;
+        int bestLoad = originLoad;
+        for (long m = origin - 1; m >= origin - tolerance; m--) {
+            if (!Instant.ofEpochMilli((m + 1) * MINUTE_MS).isAfter(earliest)) {
+                break; // 再往前的分钟都已经来不及了
+            }
+            int l = load(m);
+            if (l < bestLoad) {
+                best = m;
+                bestLoad = l;
+            }
+        }
+        if (best == origin) {
+            record(trigger);
+            return;
+        }
+
+        long startMs = Math.max(best * MINUTE_MS, earliest.toEpochMilli());
+        long endMs = (best + 1) * MINUTE_MS;
+        Instant smoothed = Instant.ofEpochMilli(ThreadLocalRandom.current().nextLong(startMs, endMs));
+        long seconds = Duration.between(smoothed, trigger).getSeconds();
+
+        plan.setTriggerTime(smoothed);
+        plan.setReason(plan.getReason() + ", smoothedSeconds=-" + seconds);
+        record(smoothed);
+        shifted.incrementAndGet();
+        shiftedSeconds.addAndGet(seconds);
+        log.debug("🌊 触发削峰：{} 那一分钟已有 {} 条，挪到 {}（提前 {} 秒）", trigger, originLoad, smoothed, seconds);
+    }
+
+    public void record(Instant trigger) {
+        histogram.computeIfAbsent(Math.floorDiv(trigger.toEpochMilli(), MINUTE_MS), k -> new AtomicInteger())
+                .incrementAndGet();
+    }
+
+    public Map<String, Object> stats() {
+        long now = Math.floorDiv(System.currentTimeMillis(), MINUTE_MS);
+        long peakSlot = -1;
+        int peak = 0;
+        for (Map.Entry<Long, AtomicInteger> e : histogram.entrySet()) {
+            // 只看未来 24 小时的峰值
+            if (e.getKey() >= now && e.getKey() < now + 1440 && e.getValue().get() > peak) {
+                peak = e.getValue().get();
+                peakSlot = e.getKey();
+            }
+        }
+        long n = shifted.get();
+        Map<String, Object> m = new LinkedHashMap<>();
+        m.put("enabled", enabled);
+        m.put("evaluated", evaluated.get());
+        m.put("shifted", n);
+        m.put("avgShiftSeconds", n == 0 ? 0 : shiftedSeconds.get() / n);
+        m.put("peakPerMinute24h", peak);
+        m.put("peakAt", peakSlot < 0 ? null : Instant.ofEpochMilli(peakSlot * MINUTE_MS).toString());
+        return m;
+    }
+
+    private int load(long minute) {
+        AtomicInteger c = histogram.get(minute);
+        return c == null ? 0 : c.get();
+    }
+
+    private boolean flexible(TriggerPlan plan) {
+        return plan.getIntent() != TriggerIntent.AT_TIME
+                && !plan.isForcedImmediate()
+                && !plan.isFallbackNowPlus1m()
+                && plan.getBucket() != null;
+    }
+
+    private long toleranceMinutes(TriggerPlan plan) {
+        long lead = TriggerBucketUtil.toDuration(plan.getBucket()).toMinutes();
+        return Math.min(maxShiftMinutes, (long) (lead * toleranceRatio));
+    }
+}
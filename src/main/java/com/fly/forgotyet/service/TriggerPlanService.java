@@ -19,10 +19,12 @@ public class TriggerPlanService {
 
     private final Clock clock;
     private final UserBiasService userBiasService;
+    private final TriggerLoadSmoother loadSmoother;
 
-    public TriggerPlanService(Clock clock, UserBiasService userBiasService) {
+    public TriggerPlanService(Clock clock, UserBiasService userBiasService, TriggerLoadSmoother loadSmoother) {
         this.clock = clock;
         this.userBiasService = userBiasService;
+        this.loadSmoother = loadSmoother;
     }
 
 
@@ -47,6 +49,7 @@ public class TriggerPlanService {
             plan.setTriggerTime(trigger);
             plan.setForcedImmediate(true); // 字段名不改，语义是“分钟级强规则”
             plan.setReason("forced urgentMinuteLevel => bucket=" + bucket + ", horizon=" + horizon.toMinutes() + "m");
+            loadSmoother.smooth(plan, now); // 分钟级强规则不挪，只计入负载
             return plan;
         }
 
@@ -70,12 +73,16 @@ public class TriggerPlanService {
 
         plan.setBucket(bucket);
         plan.setTriggerTime(trigger);
+        plan.setBiasSteps(biasSteps);
         plan.setReason("intent=" + plan.getIntent()
                 + ", complexity=" + plan.getComplexity()
                 + ", prepRequired=" + r.isPrepRequired()
                 + ", deps=" + (r.getDependencies() == null ? 0 : r.getDependencies().size())
                 + ", biasSteps=" + biasSteps
                 + ", finalBucket=" + bucket);
+
+        // 7) 整点削峰：弹性提醒在容忍窗口内往前错开，只会离 eventTime 更远
+        loadSmoother.smooth(plan, now);
         log.info("[bias] user=" + userId + " biasSteps=" + biasSteps + " bucket=" + bucket);
         return plan;
     }
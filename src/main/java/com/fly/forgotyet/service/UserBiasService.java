@@ -1,6 +1,8 @@
 package com.fly.forgotyet.service;
 
 import com.fly.forgotyet.entity.Event;
+import com.fly.forgotyet.enums.EventStatus;
+import com.fly.forgotyet.enums.TriggerBucket;
 import com.fly.forgotyet.enums.TriggerFeedback;
 import com.fly.forgotyet.repository.EventRepository;
 import lombok.RequiredArgsConstructor;
@@ -15,6 +17,7 @@ import java.util.List;
 public class UserBiasService {
 
     private final EventRepository eventRepository;
+    private final EventArchiveService eventArchiveService;
 
     /**
      * C3-2: 分钟级 bucket (M0/M15...) 不参与学习
@@ -27,18 +30,20 @@ public class UserBiasService {
         List<Event> events = eventRepository
                 .findByUserEmailAndStatusOrderByCreateTimeDesc(
                         userEmail,
-                        "DELIVERED",
+                        EventStatus.DELIVERED,
                         PageRequest.of(0, N, Sort.by(Sort.Direction.DESC, "createTime"))
                 )
                 .getContent();
+        // 热表只留保留期内的终态，样本不够时从冷表补
+        events = eventArchiveService.recentByStatus(events, userEmail, EventStatus.DELIVERED, N);
 
         if (events == null || events.isEmpty()) return 0;
 
         // ✅ C3-2：过滤分钟级 bucket：任何以 "M" 开头的都不参与学习（M0/M15）
         List<Event> filtered = events.stream()
                 .filter(e -> {
-                    String b = e.getTriggerBucket();
-                    return b == null || b.isBlank() || !b.startsWith("M");
+                    TriggerBucket b = e.getTriggerBucket();
+                    return b == null || !b.name().startsWith("M");
                 })
                 .toList();
 
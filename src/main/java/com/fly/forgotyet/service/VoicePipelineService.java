@@ -0,0 +1,145 @@
+package com.fly.forgotyet.service;
+
+import cn.hutool.cache.CacheUtil;
+import cn.hutool.cache.impl.LRUCache;
+import cn.hutool.core.exceptions.ExceptionUtil;
+import cn.hutool.core.util.IdUtil;
+import com.fly.forgotyet.entity.Event;
+import com.fly.forgotyet.enums.EventStatus;
+import com.fly.forgotyet.enums.TriggerBucket;
+import lombok.Data;
+import lombok.RequiredArgsConstructor;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Service;
+
+import java.time.LocalDateTime;
+import java.time.ZoneId;
+import java.util.concurrent.TimeoutException;
+
+/**
+ * 语音一步建事件：转写 -> 解析 -> 时间归一 -> 触发计划 -> 挂载调度，全部在服务端串起来。
+ * 客户端只拿一个受理号，再用轻量查询拿最终计划，省掉一次移动端往返。
+ */
+@Slf4j
+@Service
+@RequiredArgsConstructor
+public class VoicePipelineService {
+
+    public static final String STAGE_TRANSCRIBING = "TRANSCRIBING";
+    public static final String STAGE_PARSING = "PARSING";
+    public static final String STAGE_SCHEDULED = "SCHEDULED";
+    public static final String STAGE_PENDING = "PENDING";
+    public static final String STAGE_FAILED = "FAILED";
+
+    private final VoiceService voiceService;
+    private final EventIntakeService eventIntakeService;
+
+    // 受理单只在内存里留 30 分钟，客户端拿到结果后就不再需要
+    // 容量 10000：受理高峰时淘汰最久没查的，不让内存跟着请求量无限涨
+    private final LRUCache<String, Ticket> tickets = CacheUtil.newLRUCache(10000, 30 * 60 * 1000);
+
+    // 幂等键 -> 受理号：客户端重试同一次语音提交，拿回同一张受理单
+    // 容量 5000，过期时间 10 分钟；满了先清过期的，再淘汰最久没用的
+    private final LRUCache<String, String> acceptByIdempotencyKey = CacheUtil.newLRUCache(5000, 10 * 60 * 1000);
+
+    /**
+     * 受理一段语音，立即返回受理号；后续各阶段在回调里直接衔接，不再等客户端发起第二次请求
+     * 带幂等键的重试直接返回原受理号；转写出的文字在收录时还会再按内容去重一次
+     */
+    public String accept(VoiceService.AudioClip clip, String email, String idempotencyKey) {
+        String idemCacheKey = idempotencyKey == null || idempotencyKey.isBlank() ? null : email + "\u0001" + idempotencyKey.trim();
+
+        // 受理单先放进去，再登记幂等键：并发重试拿到的受理号一定能查到
+        Ticket ticket = new Ticket();
+        ticket.setAcceptId(IdUtil.fastSimpleUUID());
+        ticket.setUserEmail(email);
+        ticket.setStage(STAGE_TRANSCRIBING);
+        tickets.put(ticket.getAcceptId(), ticket);
+        if (idemCacheKey != null) {
+            // 按键加锁的 get-or-create：同一个幂等键只有一个请求能登记成功，其余拿回它的受理号
+            String acceptId = acceptByIdempotencyKey.get(idemCacheKey, false, ticket::getAcceptId);
+            if (!ticket.getAcceptId().equals(acceptId)) {
+                tickets.remove(ticket.getAcceptId());
+                return acceptId;
+            }
+        }
+
+        voiceService.transcribeAsync(clip)
+                .thenCompose(text -> {
+                    if (text == null || text.isBlank()) {
+                        throw new IllegalStateException("没听清你说的话");
+                    }
+                    ticket.setText(text);
+                    ticket.setStage(STAGE_PARSING);
+                    return eventIntakeService.submit(text, email, idempotencyKey);
+                })
+                .whenComplete((event, e) -> {
+                    if (e != null && ExceptionUtil.getRootCause(e) instanceof TimeoutException) {
+                        // 原话已经落库，只是本节点没等到解析结果（可能被别的节点接走），不算失败
+                        ticket.setStage(STAGE_PENDING);
+                        ticket.setMessage("已经记下了，稍后会自动帮你安排好时间");
+                        return;
+                    }
+                    if (e != null) {
+                        log.warn("🎙️ 语音建事件失败 acceptId={}: {}", ticket.getAcceptId(), e.getMessage());
+                        ticket.setStage(STAGE_FAILED);
+                        ticket.setMessage(ticket.getText() == null
+                                ? "语音识别暂时忙碌，请直接打字输入"
+                                : "事件处理失败，请稍后重试");
+                        return;
+                    }
+                    ticket.fill(event);
+                    log.info("🎙️ 语音建事件完成 acceptId={}, eventId={}, stage={}",
+                            ticket.getAcceptId(), event.getId(), ticket.getStage());
+                });
+
+        return ticket.getAcceptId();
+    }
+
+    /**
+     * 定期清掉过期的受理单和幂等登记，不等缓存写满才淘汰
+     */
+    @Scheduled(fixedDelay = 60_000)
+    public void prune() {
+        tickets.prune();
+        acceptByIdempotencyKey.prune();
+    }
+
+    /**
+     * 轻量查询：只查内存受理单，不回源数据库
+     */
+    public Ticket lookup(String acceptId, String email) {
+        Ticket ticket = tickets.get(acceptId, false);
+        if (ticket == null || !ticket.getUserEmail().equals(email)) {
+            return null;
+        }
+        return ticket;
+    }
+
+    @Data
+    public static class Ticket {
+        private volatile String acceptId;
+        private volatile String userEmail;
+        private volatile String stage;
+        private volatile String text;
+        private volatile String message;
+
+        private volatile Long eventId;
+        private volatile LocalDateTime eventTime;
+        private volatile LocalDateTime triggerTime;
+        private volatile TriggerBucket triggerBucket;
+
+        void fill(Event event) {
+            this.eventId = event.getId();
+            // 接口仍返回本地时间
+            this.eventTime = event.getEventTime() == null ? null : LocalDateTime.ofInstant(event.getEventTime(), ZoneId.systemDefault());
+            this.triggerTime = event.getTriggerTime() == null ? null : LocalDateTime.ofInstant(event.getTriggerTime(), ZoneId.systemDefault());
+            this.triggerBucket = event.getTriggerBucket();
+            this.stage = event.is(EventStatus.SILENT) ? STAGE_SCHEDULED : STAGE_PENDING;
+            if (event.is(EventStatus.REPARSE)) {
+                this.message = "已经记下了，稍后会自动帮你安排好时间";
+            }
+        }
+    }
+}
@@ -1,20 +1,51 @@
 package com.fly.forgotyet.service;
 
-import cn.hutool.http.HttpRequest;
-import cn.hutool.http.HttpResponse;
+import cn.hutool.cache.CacheUtil;
+import cn.hutool.cache.impl.LRUCache;
+import cn.hutool.core.util.HexUtil;
 import cn.hutool.json.JSONUtil;
+import com.fly.forgotyet.common.PipelineMetrics;
+import lombok.AllArgsConstructor;
+import lombok.Getter;
+import lombok.RequiredArgsConstructor;
 import lombok.extern.slf4j.Slf4j;
+import org.apache.commons.fileupload.FileItemIterator;
+import org.apache.commons.fileupload.FileItemStream;
+import org.apache.commons.fileupload.FileUploadBase;
+import org.apache.commons.fileupload.servlet.ServletFileUpload;
 import org.springframework.beans.factory.annotation.Value;
+import org.springframework.scheduling.concurrent.ThreadPoolTaskExecutor;
 import org.springframework.stereotype.Service;
-import org.springframework.web.multipart.MultipartFile;
 
-import java.io.File;
-import java.io.IOException;
+import javax.servlet.http.HttpServletRequest;
+import java.io.BufferedInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.InputStream;
+import java.net.URI;
+import java.net.http.HttpClient;
+import java.net.http.HttpRequest;
+import java.net.http.HttpResponse;
+import java.nio.charset.StandardCharsets;
+import java.security.DigestInputStream;
+import java.security.MessageDigest;
+import java.time.Duration;
+import java.util.List;
+import java.util.Map;
+import java.util.UUID;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.regex.Pattern;
 
 @Slf4j
 @Service
+@RequiredArgsConstructor
 public class VoiceService {
 
+    private final PipelineMetrics metrics;
+    private final ThreadPoolTaskExecutor voiceUploadExecutor;
+
     @Value("${voice.api-url}")
     private String apiUrl;
 
@@ -24,51 +55,213 @@ public class VoiceService {
     @Value("${voice.model}")
     private String modelName;
 
+    // 单个音频最大 2MB（对应压缩后的60秒），语音路径跳过了容器 multipart 解析，由这里兜底
+    @Value("${voice.max-upload-bytes:2097152}")
+    private long maxUploadBytes;
+
+    // 🚀 全局复用一个 HttpClient：连接池常驻，异步发送不占用 Tomcat 线程
+    private static final HttpClient HTTP = HttpClient.newBuilder()
+            .connectTimeout(Duration.ofSeconds(5))
+            .build();
+
+    // 扩展名只允许 1~8 位字母数字；Content-Type 只允许 type/subtype 加可选参数，不含控制字符
+    private static final Pattern EXTENSION = Pattern.compile("[a-z0-9]{1,8}");
+    private static final Pattern CONTENT_TYPE = Pattern.compile("[\\w.+-]{1,64}/[\\w.+-]{1,64}(;[\\x20-\\x7E&&[^\"]]{0,128})?");
+
+    // 🚀 内容指纹缓存：sha256(音频) -> 识别结果，弱网重传同一段音频直接命中
+    // 容量 500，过期时间 10 分钟
+    private final LRUCache<String, String> transcriptCache = CacheUtil.newLRUCache(500, 10 * 60 * 1000);
+
+    // 同一段音频并发上传时共享同一个上游调用
+    private final Map<String, CompletableFuture<String>> inFlight = new ConcurrentHashMap<>();
+
     /**
-     * 将音频文件转发给云端 Whisper 进行转录
+     * 收上传：定位 file 字段 + 边读边算指纹，都放在 voiceUploadExecutor 上做
+     * 弱网慢速上传阻塞的是这个有界池子的线程，Tomcat 请求线程在控制器返回 CompletableFuture 后就归还了
+     * 完成值为 null 表示没有上传音频或音频为空；IllegalArgumentException 的消息可以直接给用户看
      */
-    public String transcribeAudio(MultipartFile audioFile) throws Exception {
-        // 1. 生成临时文件 (Hutool 发送 form-data 需要 File 对象)
-        File tempFile = createTempFile(audioFile);
-        log.info("🎙️ 接收到前端语音，大小: {} KB，准备调用云端 Whisper...", tempFile.length() / 1024);
-
+    public CompletableFuture<AudioClip> receiveAsync(HttpServletRequest request) {
         try {
-            // 2. 调用阿里云 Whisper API (标准 OpenAI 协议)
-            HttpResponse response = HttpRequest.post(apiUrl)
-                    .header("Authorization", "Bearer " + apiKey)
-                    .form("model", modelName)
-                    .form("file", tempFile)
-                    .form("language", "zh") // 指定中文，识别更快
-                    .timeout(15000) // 语音识别给长一点的超时时间：15秒
-                    .execute();
-
-            if (!response.isOk()) {
-                log.error("❌ 语音识别 API 调用失败: {}", response.body());
-                throw new RuntimeException("语音转文字服务暂时不可用");
+            return CompletableFuture.supplyAsync(() -> {
+                try {
+                    AudioUpload audio = openUpload(request);
+                    return audio == null ? null : readClip(audio);
+                } catch (Exception e) {
+                    if (isSizeExceeded(e)) {
+                        throw new IllegalArgumentException("音频太大了，最多 " + Math.max(1, maxUploadBytes / 1024 / 1024) + "MB（约 60 秒）");
+                    }
+                    throw e instanceof RuntimeException ? (RuntimeException) e : new CompletionException(e);
+                }
+            }, voiceUploadExecutor);
+        } catch (RejectedExecutionException e) {
+            return CompletableFuture.failedFuture(new IllegalArgumentException("语音上传繁忙，请稍后重试"));
+        }
+    }
+
+    // 超限可能在读请求头时直接抛，也可能读到一半被包在 IOException 里
+    private static boolean isSizeExceeded(Throwable e) {
+        for (Throwable t = e; t != null; t = t.getCause()) {
+            if (t instanceof FileUploadBase.SizeLimitExceededException || t instanceof FileUploadBase.FileSizeLimitExceededException) {
+                return true;
             }
+        }
+        return false;
+    }
 
-            // 3. 提取文字
-            String transcribedText = JSONUtil.parseObj(response.body()).getStr("text");
-            log.info("✅ 语音识别成功: {}", transcribedText);
+    /**
+     * 从请求体里流式定位 "file" 字段（WebMvcConfig 让语音路径跳过容器 multipart 解析，不落盘）
+     * 返回 null 表示没有上传音频或音频为空
+     */
+    public AudioUpload openUpload(HttpServletRequest request) throws Exception {
+        if (!ServletFileUpload.isMultipartContent(request)) {
+            throw new IllegalArgumentException("请使用 multipart/form-data 上传音频");
+        }
+
+        ServletFileUpload upload = new ServletFileUpload();
+        upload.setSizeMax(maxUploadBytes);
+        upload.setFileSizeMax(maxUploadBytes);
 
-            return transcribedText;
+        FileItemIterator it = upload.getItemIterator(request);
+        while (it.hasNext()) {
+            FileItemStream item = it.next();
+            if (item.isFormField() || !"file".equals(item.getFieldName())) {
+                continue;
+            }
 
-        } finally {
-            // 4. 清理临时文件，防止把服务器硬盘撑爆
-            if (tempFile.exists()) {
-                tempFile.delete();
+            // 只偷看 1 个字节判断是否为空
+            InputStream in = new BufferedInputStream(item.openStream());
+            in.mark(1);
+            if (in.read() == -1) {
+                return null;
             }
+            in.reset();
+
+            String filename = "voice." + safeExtension(item.getName()); // 前端录音通常是 webm 或 mp3
+            String contentType = item.getContentType() != null && CONTENT_TYPE.matcher(item.getContentType()).matches()
+                    ? item.getContentType()
+                    : "application/octet-stream";
+            return new AudioUpload(filename, contentType, in);
+        }
+        return null;
+    }
+
+    /**
+     * 客户端文件名会原样拼进上游 multipart 头，只取扩展名，其余一律不要（防 CR/LF 注入）
+     */
+    static String safeExtension(String clientName) {
+        if (clientName == null || !clientName.contains(".")) {
+            return "webm";
+        }
+        String ext = clientName.substring(clientName.lastIndexOf('.') + 1).toLowerCase();
+        return EXTENSION.matcher(ext).matches() ? ext : "webm";
+    }
+
+    /**
+     * 边读请求流边算 sha256，音频只在内存里过一遍（上限 2MB，不落盘）
+     */
+    public AudioClip readClip(AudioUpload audio) throws Exception {
+        MessageDigest sha256 = MessageDigest.getInstance("SHA-256");
+        ByteArrayOutputStream buf = new ByteArrayOutputStream(64 * 1024);
+        try (InputStream in = new DigestInputStream(audio.getStream(), sha256)) {
+            in.transferTo(buf);
         }
+        return new AudioClip(audio.getFilename(), audio.getContentType(),
+                buf.toByteArray(), HexUtil.encodeHexStr(sha256.digest()));
     }
 
-    private File createTempFile(MultipartFile file) throws IOException {
-        String originalFilename = file.getOriginalFilename();
-        String suffix = originalFilename != null && originalFilename.contains(".")
-                ? originalFilename.substring(originalFilename.lastIndexOf("."))
-                : ".webm"; // 前端录音通常是 webm 或 mp3
+    /**
+     * 命中指纹缓存则直接返回识别结果，否则返回 null
+     */
+    public String cachedTranscript(AudioClip clip) {
+        String text = transcriptCache.get(clip.getSha256());
+        if (text != null) {
+            log.info("♻️ 语音指纹命中缓存: {}", clip.getSha256());
+        }
+        return text;
+    }
+
+    /**
+     * 将音频转发给云端 Whisper（标准 OpenAI 协议），相同指纹的并发请求只打一次上游
+     * 整个 ASR 调用期间不占用请求线程，结果通过 CompletableFuture 回调
+     */
+    public CompletableFuture<String> transcribeAsync(AudioClip clip) {
+        String cached = cachedTranscript(clip);
+        if (cached != null) {
+            return CompletableFuture.completedFuture(cached);
+        }
+
+        CompletableFuture<String> created = new CompletableFuture<>();
+        CompletableFuture<String> existing = inFlight.putIfAbsent(clip.getSha256(), created);
+        if (existing != null) {
+            log.info("🔗 相同语音正在识别中，共享上游调用: {}", clip.getSha256());
+            return existing;
+        }
+
+        long start = System.nanoTime();
+        callAsrApi(clip).whenComplete((text, e) -> {
+            metrics.asr(System.nanoTime() - start, e == null); // 只记真正打到上游的，缓存命中和共享调用不算
+            if (e == null) {
+                transcriptCache.put(clip.getSha256(), text);
+            }
+            inFlight.remove(clip.getSha256(), created);
+            if (e != null) {
+                created.completeExceptionally(e);
+            } else {
+                created.complete(text);
+            }
+        });
+        return created;
+    }
+
+    private CompletableFuture<String> callAsrApi(AudioClip clip) {
+        log.info("🎙️ 接收到前端语音，大小: {} KB，准备调用云端 Whisper...", clip.getBytes().length / 1024);
+
+        String boundary = "----ForgotYet" + UUID.randomUUID().toString().replace("-", "");
+        byte[] head = ("--" + boundary + "\r\n"
+                + "Content-Disposition: form-data; name=\"model\"\r\n\r\n" + modelName + "\r\n"
+                + "--" + boundary + "\r\n"
+                + "Content-Disposition: form-data; name=\"language\"\r\n\r\n" + "zh" + "\r\n" // 指定中文，识别更快
+                + "--" + boundary + "\r\n"
+                + "Content-Disposition: form-data; name=\"file\"; filename=\"" + clip.getFilename() + "\"\r\n"
+                + "Content-Type: " + clip.getContentType() + "\r\n\r\n")
+                .getBytes(StandardCharsets.UTF_8);
+        byte[] tail = ("\r\n--" + boundary + "--\r\n").getBytes(StandardCharsets.UTF_8);
+
+        // 分段发送，音频字节不再拼接拷贝
+        HttpRequest request = HttpRequest.newBuilder(URI.create(apiUrl))
+                .header("Authorization", "Bearer " + apiKey)
+                .header("Content-Type", "multipart/form-data; boundary=" + boundary)
+                .timeout(Duration.ofMillis(15000)) // 语音识别给长一点的超时时间：15秒
+                .POST(HttpRequest.BodyPublishers.ofByteArrays(List.of(head, clip.getBytes(), tail)))
+                .build();
+
+        return HTTP.sendAsync(request, HttpResponse.BodyHandlers.ofString(StandardCharsets.UTF_8))
+                .thenApply(response -> {
+                    if (response.statusCode() / 100 != 2) {
+                        log.error("❌ 语音识别 API 调用失败: {}", response.body());
+                        throw new RuntimeException("语音转文字服务暂时不可用");
+                    }
+
+                    String transcribedText = JSONUtil.parseObj(response.body()).getStr("text");
+                    log.info("✅ 语音识别成功: {}", transcribedText);
+                    return transcribedText;
+                });
+    }
+
+    @Getter
+    @AllArgsConstructor
+    public static class AudioUpload {
+        private final String filename;
+        private final String contentType;
+        private final InputStream stream;
+    }
 
-        File tempFile = File.createTempFile("voice_", suffix);
-        file.transferTo(tempFile);
-        return tempFile;
+    @Getter
+    @AllArgsConstructor
+    public static class AudioClip {
+        private final String filename;
+        private final String contentType;
+        private final byte[] bytes;
+        private final String sha256;
     }
 }
@@ -1,6 +1,7 @@
 package com.fly.forgotyet.task;
 
 import com.fly.forgotyet.entity.Event;
+import com.fly.forgotyet.enums.EventStatus;
 import com.fly.forgotyet.repository.EventRepository;
 import com.fly.forgotyet.service.EmailService;
 import com.fly.forgotyet.service.LlmService;
@@ -9,7 +10,7 @@ import lombok.extern.slf4j.Slf4j;
 import org.springframework.scheduling.annotation.Scheduled;
 import org.springframework.stereotype.Component;
 
-import java.time.LocalDateTime;
+import java.time.Instant;
 import java.util.List;
 
 @Slf4j
@@ -27,7 +28,7 @@ public class SchedulerTask {
         log.debug(">>> 心跳检测: 正在扫描到期事件...");
 
         // 1. 查库：找 "状态是沉默" 且 "触发时间 <= 当前时间" 的事件
-        List<Event> events = eventRepository.findByStatusAndTriggerTimeBefore("SILENT", LocalDateTime.now());
+        List<Event> events = eventRepository.findByStatusAndTriggerTimeBefore(EventStatus.SILENT, Instant.now());
 
         if (events.isEmpty()) {
             return;
@@ -53,7 +54,7 @@ public class SchedulerTask {
         emailService.sendSimpleEmail(event.getUserEmail(), subject, content);
 
         // 4. 更新状态 (防止重复发送)
-        event.setStatus("DELIVERED");
+        event.setStatus(EventStatus.DELIVERED);
         eventRepository.save(event);
 
         log.info(">>> 事件 ID={} 已触达并归档。", event.getId());
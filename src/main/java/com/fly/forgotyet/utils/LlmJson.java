@@ -0,0 +1,256 @@
+package com.fly.forgotyet.utils;
+
+import com.fasterxml.jackson.core.json.JsonReadFeature;
+import com.fasterxml.jackson.databind.DeserializationFeature;
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.json.JsonMapper;
+import com.fasterxml.jackson.databind.node.ArrayNode;
+import com.fasterxml.jackson.databind.node.BooleanNode;
+import com.fasterxml.jackson.databind.node.NullNode;
+import com.fasterxml.jackson.databind.node.ObjectNode;
+import com.fasterxml.jackson.databind.node.TextNode;
+import lombok.AllArgsConstructor;
+import lombok.Getter;
+
+import java.lang.reflect.Field;
+import java.lang.reflect.Modifier;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Deque;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * 大模型 JSON 输出的本地修复：能在本地修好的，就不再花一次完整的备用模型调用。
+ * 1. 严格解析：整段就是合法 JSON
+ * 2. 抽取：单趟扫描找出第一个完整的 {...}（跳过前后的解释文字、任意代码块标记）；被截断的补齐引号和括号
+ * 3. 宽松解析：容忍尾逗号、单引号、未加引号的 key、注释
+ * 4. 按目标类的字段做校验和纠正：key 大小写 / 下划线、枚举大小写（"at_time" -> AT_TIME）、
+ *    布尔写成字符串、列表写成逗号分隔的字符串；认不出的枚举值置空，交给后面的默认值
+ * 修不好才抛异常，由调用方切备用模型
+ */
+public class LlmJson {
+
+    private static final ObjectMapper STRICT = JsonMapper.builder()
+            .configure(DeserializationFeature.FAIL_ON_UNKNOWN_PROPERTIES, false)
+            .build();
+
+    private static final ObjectMapper LENIENT = JsonMapper.builder()
+            .enable(JsonReadFeature.ALLOW_TRAILING_COMMA,
+                    JsonReadFeature.ALLOW_SINGLE_QUOTES,
+                    JsonReadFeature.ALLOW_UNQUOTED_FIELD_NAMES,
+                    JsonReadFeature.ALLOW_JAVA_COMMENTS,
+                    JsonReadFeature.ALLOW_UNESCAPED_CONTROL_CHARS)
+            .configure(DeserializationFeature.FAIL_ON_UNKNOWN_PROPERTIES, false)
+            .build();
+
+    private static final Set<String> TRUE_WORDS = Set.of("true", "yes", "y", "1", "是", "对", "需要");
+    private static final Set<String> FALSE_WORDS = Set.of("false", "no", "n", "0", "否", "不", "不需要", "");
+
+    @Getter
+    @AllArgsConstructor
+    public static class Result<T> {
+        private final T value;
+        /** 做过的修复，空表示原样就是合法的 */
+        private final List<String> repairs;
+
+        public boolean isRepaired() {
+            return !repairs.isEmpty();
+        }
+    }
+
+    public static <T> Result<T> parse(String content, Class<T> type) {
+        if (content == null || content.isBlank()) {
+            throw new IllegalArgumentException("LLM 返回为空");
+        }
+        List<String> repairs = new ArrayList<>();
+        JsonNode node = strictTree(content.trim());
+        if (node == null) {
+            String extracted = extractObject(content, repairs);
+            if (extracted == null) {
+                throw new IllegalArgumentException("LLM 返回里找不到 JSON 对象");
+            }
+            node = strictTree(extracted);
+            if (node == null) {
+                try {
+                    node = LENIENT.readTree(extracted);
+                    repairs.add("lenient");
+                } catch (Exception e) {
+                    throw new IllegalArgumentException("LLM 返回的 JSON 修复失败: " + e.getMessage());
+                }
+            }
+        }
+        if (!node.isObject()) {
+            throw new IllegalArgumentException("LLM 返回的不是 JSON 对象");
+        }
+        coerce((ObjectNode) node, type, repairs);
+        try {
+            return new Result<>(LENIENT.treeToValue(node, type), repairs);
+        } catch (Exception e) {
+            throw new IllegalArgumentException("LLM 返回不符合 " + type.getSimpleName() + ": " + e.getMessage());
+        }
+    }
+
+    /**
+     * 单趟扫描取第一个完整对象；没闭合（输出被截断）就补上未闭合的字符串和括号
+     */
+    static String extractObject(String s, List<String> repairs) {
+        int start = s.indexOf('{');
+        if (start < 0) {
+            return null;
+        }
+        Deque<Character> closers = new ArrayDeque<>();
+        boolean inString = false;
+        boolean escaped = false;
+        char quote = 0;
+        for (int i = start; i < s.length(); i++) {
+            char c = s.charAt(i);
+            if (inString) {
+                if (escaped) {
+                    escaped = false;
+                } else if (c == '\\') {
+                    escaped = true;
+                } else if (c == quote) {
+                    inString = false;
+                }
+                continue;
+            }
+            if (c == '"' || c == '\'') {
+                inString = true;
+                quote = c;
+            } else if (c == '{') {
+                closers.push('}');
+            } else if (c == '[') {
+                closers.push(']');
+            } else if ((c == '}' || c == ']') && !closers.isEmpty() && closers.peek() == c) {
+                closers.pop();
+                if (closers.isEmpty()) {
+                    String obj = s.substring(start, i + 1);
+                    if (!obj.equals(s.trim())) {
+                        repairs.add(s.contains("```") ? "fence" : "extract");
+                    }
+                    return obj;
+                }
+            }
+        }
+
+        // 截断：补引号、去掉悬空的逗号 / 冒号，再按栈补括号
+        StringBuilder sb = new StringBuilder(s.substring(start));
+        if (inString) {
+            sb.append(quote);
+        }
+        while (sb.length() > 0 && ",: \t\r\n".indexOf(sb.charAt(sb.length() - 1)) >= 0) {
+            sb.setLength(sb.length() - 1);
+        }
+        while (!closers.isEmpty()) {
+            sb.append(closers.pop());
+        }
+        repairs.add("truncated");
+        return sb.toString();
+    }
+
+    /**
+     * 按目标类的字段纠正 key 和值的类型
+     */
+    static void coerce(ObjectNode node, Class<?> type, List<String> repairs) {
+        Map<String, Field> fields = new HashMap<>();
+        for (Class<?> c = type; c != null && c != Object.class; c = c.getSuperclass()) {
+            for (Field f : c.getDeclaredFields()) {
+                if (!Modifier.isStatic(f.getModifiers())) {
+                    fields.putIfAbsent(squash(f.getName()), f);
+                }
+            }
+        }
+
+        List<String> names = new ArrayList<>();
+        node.fieldNames().forEachRemaining(names::add);
+        for (String name : names) {
+            Field f = fields.get(squash(name));
+            if (f == null) {
+                continue; // 多余字段照旧忽略
+            }
+            JsonNode value = node.get(name);
+            if (!name.equals(f.getName())) {
+                node.remove(name);
+                node.set(f.getName(), value);
+                repairs.add("key:" + f.getName());
+            }
+            JsonNode fixed = coerceValue(value, f);
+            if (fixed != value) {
+                node.set(f.getName(), fixed);
+                repairs.add((f.getType().isEnum() ? "enum:" : "type:") + f.getName());
+            }
+        }
+    }
+
+    private static JsonNode coerceValue(JsonNode value, Field f) {
+        Class<?> t = f.getType();
+        if (value == null || value.isNull()) {
+            return value;
+        }
+        if (t.isEnum()) {
+            String want = squash(value.asText());
+            for (Object constant : t.getEnumConstants()) {
+                String name = ((Enum<?>) constant).name();
+                if (squash(name).equals(want)) {
+                    return name.equals(value.asText()) ? value : TextNode.valueOf(name);
+                }
+            }
+            return NullNode.getInstance(); // 认不出的交给默认值
+        }
+        if (t == boolean.class || t == Boolean.class) {
+            if (value.isBoolean()) {
+                return value;
+            }
+            String s = value.asText().trim().toLowerCase(Locale.ROOT);
+            if (TRUE_WORDS.contains(s)) {
+                return BooleanNode.TRUE;
+            }
+            if (FALSE_WORDS.contains(s)) {
+                return BooleanNode.FALSE;
+            }
+            return value;
+        }
+        if (Collection.class.isAssignableFrom(t)) {
+            if (value.isArray()) {
+                return value;
+            }
+            ArrayNode arr = STRICT.createArrayNode();
+            if (value.isTextual()) {
+                for (String part : value.asText().split("[,，、;；]")) {
+                    if (!part.isBlank()) {
+                        arr.add(part.trim());
+                    }
+                }
+            } else {
+                arr.add(value.asText());
+            }
+            return arr;
+        }
+        if (t == String.class && !value.isTextual() && value.isValueNode()) {
+            return TextNode.valueOf(value.asText());
+        }
+        return value;
+    }
+
+    private static JsonNode strictTree(String s) {
+        try {
+            JsonNode node = STRICT.readTree(s);
+            return node != null && node.isObject() ? node : null;
+        } catch (Exception e) {
+            return null;
+        }
+    }
+
+    // 比较用：只留字母数字、统一大写（eventTime / event_time / EventTime 都是 EVENTTIME）
+    private static String squash(String s) {
+        StringBuilder sb = new StringBuilder(s.length());
+        s.codePoints().filter(Character::isLetterOrDigit).map(Character::toUpperCase).forEach(sb::appendCodePoint);
+        return sb.toString();
+    }
+}
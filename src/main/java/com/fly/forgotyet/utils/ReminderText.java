@@ -0,0 +1,54 @@
+package com.fly.forgotyet.utils;
+
+import cn.hutool.core.convert.Convert;
+
+import java.util.regex.Pattern;
+
+/**
+ * 提醒原话的文本归一：去重和文案缓存共用
+ */
+public class ReminderText {
+
+    private static final Pattern NOISE = Pattern.compile("[\\p{P}\\p{S}\\s]+");
+
+    // 时间表达：日期词、时段词、几点几分、相对时间
+    private static final Pattern TIME_WORDS = Pattern.compile(
+            "(大?后天|今天|今日|明天|明日|今晚|明早|明晚|下个?(周|星期|礼拜|月)[一二三四五六日天]?|(周|星期|礼拜)[一二三四五六日天]"
+                    + "|凌晨|清晨|早上|上午|中午|下午|傍晚|晚上|夜里|半夜"
+                    + "|[0-9零一二两三四五六七八九十]+(点钟?|时)([0-9零一二三四五六七八九十]+分?|半|一刻|三刻)?"
+                    + "|[0-9零一二两三四五六七八九十半]+个?(分钟|小时|钟头|天|周)(之?后|以后)"
+                    + "|\\d{1,2}:\\d{2}|等一?会儿?|稍后|待会儿?)");
+
+    // 口头的提醒句式，对“提醒什么”没有信息量
+    private static final Pattern FILLER = Pattern.compile(
+            "^(请|麻烦)?(提醒我|提醒一下我?|叫我|记得|别忘了|帮我记一?下|帮我|我要|我得|要)+"
+                    + "|(提醒我|一下|哦|啊|呀|吧)+$");
+
+    /**
+     * 全角转半角、去掉标点和空白、统一小写：“明天 8 点，开会！”和“明天8点开会”算同一句
+     */
+    public static String normalize(String raw) {
+        if (raw == null) {
+            return "";
+        }
+        return NOISE.matcher(Convert.toDBC(raw)).replaceAll("").toLowerCase();
+    }
+
+    /**
+     * 提醒的核心事项：再去掉时间表达和口头句式，“明天8点提醒我喝水”“下午三点记得喝水”都是“喝水”
+     */
+    public static String core(String raw) {
+        if (raw == null) {
+            return "";
+        }
+        // 先去时间再去标点：14:30 里的冒号还在
+        String s = TIME_WORDS.matcher(Convert.toDBC(raw).replaceAll("\\s+", "")).replaceAll("");
+        s = NOISE.matcher(s).replaceAll("").toLowerCase();
+        String prev;
+        do {
+            prev = s;
+            s = FILLER.matcher(s).replaceAll("");
+        } while (!s.equals(prev) && !s.isEmpty());
+        return s;
+    }
+}
@@ -0,0 +1,31 @@
+package com.fly.forgotyet.common;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.Map;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class PromptTemplateTest {
+
+    @Test
+    void render_substitutesPlaceholders_butLeavesJsonBraces() {
+        PromptTemplate t = PromptTemplate.compile("复用他的原话 {raw_input}。示例：{\n  \"valid\": true\n}");
+        assertEquals("复用他的原话 喝水。示例：{\n  \"valid\": true\n}", t.render(Map.of("raw_input", "喝水")));
+        assertTrue(t.uses("raw_input"));
+    }
+
+    @Test
+    void staticTemplate_isByteStable_andVersionTracksContent() {
+        PromptTemplate t = PromptTemplate.compile("你是一个严格的解析器");
+        assertTrue(t.isStatic());
+        assertSame(t.render(Map.of("currentTime", "x")), t.render(Map.of("currentTime", "y")), "静态前缀每次都是同一个字符串");
+        assertEquals(t.getVersion(), PromptTemplate.compile("你是一个严格的解析器").getVersion());
+        assertNotEquals(t.getVersion(), PromptTemplate.compile("你是一个解析器").getVersion(), "改了 Prompt 就是新版本");
+    }
+
+    @Test
+    void missingVariable_keepsPlaceholder() {
+        assertEquals("now={currentTime}", PromptTemplate.compile("now={currentTime}").render(Map.of()));
+    }
+}
@@ -0,0 +1,185 @@
+package com.fly.forgotyet.common;
+
+import lombok.extern.slf4j.Slf4j;
+import org.junit.jupiter.api.Tag;
+import org.junit.jupiter.api.Test;
+
+import java.time.Clock;
+import java.time.Instant;
+import java.time.ZoneId;
+import java.time.ZoneOffset;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+@Slf4j
+class TokenBucketRateLimiterTest {
+
+    /** 可手动拨动的时钟，保证补令牌的断言是确定的 */
+    static class MutableClock extends Clock {
+        private final AtomicLong millis = new AtomicLong(Instant.parse("2026-01-27T20:00:00Z").toEpochMilli());
+
+        void advance(long ms) {
+            millis.addAndGet(ms);
+        }
+
+        @Override
+        public ZoneId getZone() {
+            return ZoneOffset.UTC;
+        }
+
+        @Override
+        public Clock withZone(ZoneId zone) {
+            return this;
+        }
+
+        @Override
+        public long millis() {
+            return millis.get();
+        }
+
+        @Override
+        public Instant instant() {
+            return Instant.ofEpochMilli(millis());
+        }
+    }
+
+    @Test
+    void burstUpToCapacity_thenRejectWithRetryAfter() {
+        MutableClock clock = new MutableClock();
+        TokenBucketRateLimiter limiter = new TokenBucketRateLimiter(clock);
+
+        for (int i = 0; i < 5; i++) {
+            assertEquals(0, limiter.tryAcquire("voice", "1.1.1.1", 5, 5), "容量内的突发应全部放行");
+        }
+
+        long wait = limiter.tryAcquire("voice", "1.1.1.1", 5, 5);
+        assertTrue(wait > 0, "超出容量必须拒绝");
+        assertEquals(12_000, wait, "每分钟 5 个令牌 => 12 秒补 1 个");
+
+        // 别的 key、别的命名空间互不影响
+        assertEquals(0, limiter.tryAcquire("voice", "2.2.2.2", 5, 5));
+        assertEquals(0, limiter.tryAcquire("event-add", "1.1.1.1", 5, 5));
+    }
+
+    @Test
+    void refillsOverTime_andNeverExceedsCapacity() {
+        MutableClock clock = new MutableClock();
+        TokenBucketRateLimiter limiter = new TokenBucketRateLimiter(clock);
+
+        for (int i = 0; i < 5; i++) limiter.tryAcquire("voice", "ip", 5, 5);
+        assertTrue(limiter.tryAcquire("voice", "ip", 5, 5) > 0);
+
+        clock.advance(12_000);
+        assertEquals(0, limiter.tryAcquire("voice", "ip", 5, 5), "12 秒后应补回 1 个令牌");
+        assertTrue(limiter.tryAcquire("voice", "ip", 5, 5) > 0);
+
+        // 空闲很久也只补满到容量
+        clock.advance(TimeUnit.HOURS.toMillis(10));
+        int ok = 0;
+        for (int i = 0; i < 20; i++) {
+            if (limiter.tryAcquire("voice", "ip", 5, 5) == 0) ok++;
+        }
+        assertEquals(5, ok, "补令牌不能超过桶容量");
+    }
+
+    @Test
+    void refund_givesTokenBack() {
+        MutableClock clock = new MutableClock();
+        TokenBucketRateLimiter limiter = new TokenBucketRateLimiter(clock);
+
+        assertEquals(0, limiter.tryAcquire("email-code", "a@b.com", 1, 1));
+        assertTrue(limiter.tryAcquire("email-code", "a@b.com", 1, 1) > 0);
+
+        limiter.refund("email-code", "a@b.com");
+        assertEquals(0, limiter.tryAcquire("email-code", "a@b.com", 1, 1), "归还后应能再取到令牌");
+    }
+
+    @Test
+    void idleBucketsAreEvicted_andMapStaysBounded() {
+        MutableClock clock = new MutableClock();
+        TokenBucketRateLimiter limiter = new TokenBucketRateLimiter(clock, 160);
+
+        for (int i = 0; i < 1000; i++) {
+            limiter.tryAcquire("voice", "ip-" + i, 5, 5);
+        }
+        assertTrue(limiter.size() <= 160, "分段 Map 必须有界，实际: " + limiter.size());
+
+        clock.advance(60_000);
+        limiter.evictIdle();
+        assertEquals(0, limiter.size(), "补满的桶应被后台清理");
+    }
+
+    @Test
+    void concurrentRequestsFromOneKey_neverSlipThrough() throws Exception {
+        MutableClock clock = new MutableClock();
+        TokenBucketRateLimiter limiter = new TokenBucketRateLimiter(clock);
+
+        int threads = 16;
+        int perThread = 1000;
+        AtomicInteger granted = new AtomicInteger();
+        CountDownLatch start = new CountDownLatch(1);
+        ExecutorService pool = Executors.newFixedThreadPool(threads);
+        List<Future<?>> futures = new ArrayList<>();
+        for (int t = 0; t < threads; t++) {
+            futures.add(pool.submit(() -> {
+                start.await();
+                for (int i = 0; i < perThread; i++) {
+                    if (limiter.tryAcquire("voice", "same-ip", 50, 5) == 0) granted.incrementAndGet();
+                }
+                return null;
+            }));
+        }
+        start.countDown();
+        for (Future<?> f : futures) f.get();
+        pool.shutdown();
+
+        assertEquals(50, granted.get(), "时钟不动时，并发放行数必须严格等于桶容量");
+    }
+
+    /**
+     * 竞争基准：多线程打同一个热点 key / 打分散 key，输出吞吐（ops/s）
+     * 只写日志，不做阈值断言，避免 CI 机器抖动导致误报；默认 mvn test 不跑，用 mvn test -Pbenchmark
+     */
+    @Test
+    @Tag("benchmark")
+    void contentionBenchmark() throws Exception {
+        TokenBucketRateLimiter limiter = new TokenBucketRateLimiter(Clock.systemUTC());
+        int threads = Math.max(4, Runtime.getRuntime().availableProcessors());
+        int opsPerThread = 200_000;
+
+        for (boolean hotKey : new boolean[]{true, false}) {
+            CountDownLatch start = new CountDownLatch(1);
+            ExecutorService pool = Executors.newFixedThreadPool(threads);
+            List<Future<?>> futures = new ArrayList<>();
+            for (int t = 0; t < threads; t++) {
+                final int tid = t;
+                futures.add(pool.submit(() -> {
+                    start.await();
+                    for (int i = 0; i < opsPerThread; i++) {
+                        String key = hotKey ? "hot" : "k-" + tid + "-" + (i & 1023);
+                        limiter.tryAcquire("bench", key, 1000, 60_000);
+                    }
+                    return null;
+                }));
+            }
+            long begin = System.nanoTime();
+            start.countDown();
+            for (Future<?> f : futures) f.get();
+            long elapsed = System.nanoTime() - begin;
+            pool.shutdown();
+
+            long ops = (long) threads * opsPerThread;
+            log.info("限流器基准 [{}] threads={} ops={} 耗时={}ms 吞吐={} ops/s",
+                    hotKey ? "热点key" : "分散key", threads, ops, elapsed / 1_000_000, Math.round(ops * 1e9 / elapsed));
+        }
+    }
+}
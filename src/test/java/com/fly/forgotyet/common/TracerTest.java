@@ -0,0 +1,59 @@
+package com.fly.forgotyet.common;
+
+import org.junit.jupiter.api.Test;
+import org.slf4j.MDC;
+
+import java.util.List;
+import java.util.Map;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class TracerTest {
+
+    @Test
+    void slowTrace_keptWithSpans_andMdcRestored() throws Exception {
+        Tracer tracer = new Tracer(true, 1.0, 0, 8);
+        try (Tracer.Scope ignored = tracer.begin("intake", 42L)) {
+            assertNotNull(MDC.get(Tracer.MDC_KEY), "trace 期间日志要带 traceId");
+            long t = System.nanoTime();
+            Thread.sleep(5);
+            t = Tracer.lap("llm", t);
+            Tracer.lap("persist", t);
+            Tracer.tag("status", "SILENT");
+        }
+        assertNull(MDC.get(Tracer.MDC_KEY), "结束后清掉 MDC");
+
+        List<Map<String, Object>> traces = tracer.slowest(10);
+        assertEquals(1, traces.size());
+        Map<String, Object> trace = traces.get(0);
+        assertEquals("intake", trace.get("operation"));
+        assertEquals(42L, trace.get("subject"));
+        assertEquals(2, ((List<?>) trace.get("spans")).size());
+        assertEquals("SILENT", ((Map<?, ?>) trace.get("tags")).get("status"));
+    }
+
+    @Test
+    void fastTrace_dropped_andRingOverwritesOldest() {
+        Tracer strict = new Tracer(true, 1.0, 60_000, 8);
+        try (Tracer.Scope ignored = strict.begin("fire", 1L)) {
+            Tracer.lap("claim", System.nanoTime());
+        }
+        assertTrue(strict.slowest(10).isEmpty(), "没超过阈值的不留");
+
+        Tracer tracer = new Tracer(true, 1.0, 0, 4);
+        for (long i = 0; i < 10; i++) {
+            tracer.begin("fire", i).close();
+        }
+        assertEquals(4, tracer.slowest(100).size(), "环形缓冲满了覆盖最老的，不会无限增长");
+    }
+
+    @Test
+    void disabled_isNoop() {
+        Tracer tracer = new Tracer(false, 1.0, 0, 4);
+        try (Tracer.Scope ignored = tracer.begin("fire", 1L)) {
+            Tracer.lap("claim", System.nanoTime());
+            assertNull(MDC.get(Tracer.MDC_KEY));
+        }
+        assertTrue(tracer.slowest(10).isEmpty());
+    }
+}
@@ -0,0 +1,77 @@
+package com.fly.forgotyet.service;
+
+import com.fly.forgotyet.entity.AppConfig;
+import com.fly.forgotyet.repository.AppConfigRepository;
+import org.junit.jupiter.api.Test;
+
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.*;
+import static org.mockito.Mockito.*;
+
+class ConfigServiceTest {
+
+    private final AppConfigRepository repo = mock(AppConfigRepository.class);
+    private final ConfigService configService = new ConfigService(repo);
+
+    @Test
+    void reload_swapsWholeSnapshot_andDropsRemovedKeys() {
+        when(repo.fingerprint()).thenReturn(fingerprint(2, 100L, 20L));
+        when(repo.findAll()).thenReturn(List.of(config("a", "1"), config("b", "2")));
+        configService.refreshCache();
+        ConfigService.Snapshot first = configService.snapshot();
+
+        when(repo.fingerprint()).thenReturn(fingerprint(1, 200L, 10L));
+        when(repo.findAll()).thenReturn(List.of(config("a", "1")));
+        configService.refreshCache();
+
+        assertEquals("2", first.get("b", null), "旧快照不受影响，正在用它的调用读到的还是同一版本");
+        assertNull(configService.getPrompt("b", null), "库里删掉的配置项不能残留");
+        assertNotEquals(first.getVersion(), configService.snapshot().getVersion());
+    }
+
+    @Test
+    void poll_reloadsOnlyWhenFingerprintChanges() {
+        AppConfigRepository.Fingerprint fp = fingerprint(1, 100L, 5L);
+        when(repo.fingerprint()).thenReturn(fp);
+        when(repo.findAll()).thenReturn(List.of(config("a", "hello")));
+        configService.refreshCache();
+
+        configService.checkForChanges();
+        verify(repo, times(1)).findAll();
+
+        when(repo.fingerprint()).thenReturn(fingerprint(1, 101L, 5L));
+        when(repo.findAll()).thenReturn(List.of(config("a", "world")));
+        configService.checkForChanges();
+
+        verify(repo, times(2)).findAll();
+        assertEquals("world", configService.getPrompt("a", null), "指纹变了要整表重载");
+    }
+
+    @Test
+    void sameContent_sameVersion() {
+        when(repo.fingerprint()).thenReturn(fingerprint(1, 100L, 1L));
+        when(repo.findAll()).thenReturn(List.of(config("a", "x")));
+        configService.refreshCache();
+        String v = configService.snapshot().getVersion();
+
+        ConfigService other = new ConfigService(repo);
+        other.refreshCache();
+        assertEquals(v, other.snapshot().getVersion(), "同样的内容在每个副本上版本号一致");
+    }
+
+    private static AppConfig config(String key, String value) {
+        AppConfig c = new AppConfig();
+        c.setConfigKey(key);
+        c.setConfigValue(value);
+        return c;
+    }
+
+    private static AppConfigRepository.Fingerprint fingerprint(long rows, Long lastUpdated, Long totalLength) {
+        AppConfigRepository.Fingerprint fp = mock(AppConfigRepository.Fingerprint.class);
+        when(fp.getRowCount()).thenReturn(rows);
+        when(fp.getLastUpdated()).thenReturn(lastUpdated);
+        when(fp.getTotalLength()).thenReturn(totalLength);
+        return fp;
+    }
+}
@@ -0,0 +1,75 @@
+package com.fly.forgotyet.service;
+
+import com.fly.forgotyet.entity.DeliveryRollup;
+import com.fly.forgotyet.entity.Event;
+import com.fly.forgotyet.enums.TriggerBucket;
+import com.fly.forgotyet.enums.TriggerFeedback;
+import com.fly.forgotyet.enums.TriggerIntent;
+import com.fly.forgotyet.repository.DeliveryRollupRepository;
+import org.junit.jupiter.api.Test;
+
+import java.time.Clock;
+import java.time.Instant;
+import java.time.ZoneId;
+import java.util.List;
+import java.util.Map;
+
+import static org.junit.jupiter.api.Assertions.*;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.anyLong;
+import static org.mockito.ArgumentMatchers.anyString;
+import static org.mockito.Mockito.*;
+
+class DeliveryAnalyticsTest {
+
+    private final DeliveryRollupRepository repo = mock(DeliveryRollupRepository.class);
+    private final DeliveryAnalytics analytics = new DeliveryAnalytics(repo,
+            Clock.fixed(Instant.parse("2026-03-01T04:00:00Z"), ZoneId.of("Asia/Shanghai")));
+
+    @Test
+    @SuppressWarnings("unchecked")
+    void report_lagPercentilesAndFeedbackRatios_perBucket() {
+        Instant trigger = Instant.parse("2026-03-01T03:00:00Z");
+        for (int i = 0; i < 9; i++) {
+            analytics.fired(event(TriggerBucket.H1, trigger), trigger.plusMillis(200));
+        }
+        analytics.fired(event(TriggerBucket.H1, trigger), trigger.plusSeconds(20));
+        analytics.feedback(TriggerBucket.H1, TriggerIntent.PREPARE, null, TriggerFeedback.LATE);
+        analytics.feedback(TriggerBucket.H1, TriggerIntent.PREPARE, TriggerFeedback.LATE, TriggerFeedback.GOOD);
+        analytics.feedback(TriggerBucket.H1, TriggerIntent.PREPARE, null, TriggerFeedback.EARLY);
+        when(repo.findByStatDayGreaterThanEqual(any())).thenReturn(List.of());
+
+        Map<String, Object> h1 = (Map<String, Object>) ((Map<String, Object>) analytics.report(7).get("byBucket")).get("H1");
+        assertEquals(10L, h1.get("fired"));
+        Map<String, Object> lag = (Map<String, Object>) h1.get("fireLagMs");
+        assertEquals(250L, lag.get("p50"));
+        assertEquals(30_000L, lag.get("p99"), "慢的那一条落在 30 秒档");
+        assertNull(((Map<String, Object>) h1.get("sendLagMs")).get("p50"), "还没有发送数据，分位数为空而不是 0 ms");
+        assertEquals(2L, h1.get("feedbacks"), "改反馈不重复计数");
+        assertEquals(0.5, h1.get("goodRatio"));
+        assertEquals(0.0, h1.get("lateRatio"));
+    }
+
+    @Test
+    void flush_writesDeltas_insertingMissingRows() {
+        Instant trigger = Instant.parse("2026-03-01T03:00:00Z");
+        analytics.fired(event(TriggerBucket.M0, trigger), trigger.plusMillis(100));
+        analytics.fired(event(TriggerBucket.M0, trigger), trigger.plusMillis(120));
+        when(repo.increment(anyString(), anyLong())).thenReturn(0);
+
+        analytics.flush();
+        verify(repo).increment(anyString(), eq(2L));
+        verify(repo).saveAndFlush(argThat((DeliveryRollup r) -> r.getHits() == 2 && r.getBin() == 0));
+
+        analytics.flush();
+        verify(repo, times(1)).increment(anyString(), anyLong()); // 没有新增量就不写库
+    }
+
+    private static Event event(TriggerBucket bucket, Instant trigger) {
+        Event e = new Event();
+        e.setTriggerBucket(bucket);
+        e.setTriggerIntent(TriggerIntent.PREPARE);
+        e.setTriggerTime(trigger);
+        return e;
+    }
+}
@@ -0,0 +1,52 @@
+package com.fly.forgotyet.service;
+
+import com.fly.forgotyet.config.SchedulerProperties;
+import com.fly.forgotyet.entity.Event;
+import com.fly.forgotyet.enums.TriggerBucket;
+import org.junit.jupiter.api.Test;
+
+import java.time.Instant;
+import java.util.Map;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class DeliveryDeadlinesTest {
+
+    private final DeliveryDeadlines deadlines = new DeliveryDeadlines(new SchedulerProperties());
+
+    @Test
+    void deadline_usesBucketSlack_butNeverPassesEventTime() {
+        Instant trigger = Instant.parse("2026-01-01T08:00:00Z");
+
+        Event m0 = event(TriggerBucket.M0, trigger, trigger);
+        assertEquals(trigger.plusSeconds(5), deadlines.deadlineFor(m0), "M0 触发即事件，按分钟级宽限算");
+
+        Event h1 = event(TriggerBucket.H1, trigger, trigger.plusSeconds(3600));
+        assertEquals(trigger.plusSeconds(30), deadlines.deadlineFor(h1));
+
+        Event d1 = event(TriggerBucket.D1, trigger, trigger.plusSeconds(60));
+        assertEquals(trigger.plusSeconds(60), deadlines.deadlineFor(d1), "截止不能晚于事件本身");
+    }
+
+    @Test
+    @SuppressWarnings("unchecked")
+    void record_countsMissesPerBucket() {
+        Instant deadline = Instant.now();
+        deadlines.record(TriggerBucket.M1, deadline, deadline.minusMillis(10), false);
+        deadlines.record(TriggerBucket.M1, deadline, deadline.plusMillis(1500), true);
+
+        Map<String, Object> m1 = (Map<String, Object>) deadlines.stats().get("M1");
+        assertEquals(2L, m1.get("delivered"));
+        assertEquals(1L, m1.get("missed"), "晚于截止的才算超时");
+        assertEquals(1L, m1.get("fallback"));
+        assertEquals(1500L, m1.get("maxLateMs"));
+    }
+
+    private static Event event(TriggerBucket bucket, Instant trigger, Instant eventTime) {
+        Event e = new Event();
+        e.setTriggerBucket(bucket);
+        e.setTriggerTime(trigger);
+        e.setEventTime(eventTime);
+        return e;
+    }
+}
@@ -0,0 +1,48 @@
+package com.fly.forgotyet.service;
+
+import com.fly.forgotyet.entity.Event;
+import com.fly.forgotyet.repository.EventRepository;
+import org.junit.jupiter.api.Test;
+
+import java.time.Instant;
+import java.util.Optional;
+
+import static org.junit.jupiter.api.Assertions.*;
+import static org.mockito.ArgumentMatchers.anyString;
+import static org.mockito.Mockito.*;
+
+class EventDedupeServiceTest {
+
+    private final EventRepository repo = mock(EventRepository.class);
+    private final EventDedupeService dedupe = new EventDedupeService(repo, 120, 1000, 0.01);
+
+    @Test
+    void unseenKey_skipsDatabase() {
+        assertTrue(dedupe.findDuplicate("a@b.com", "明天8点开会", null, Instant.now()).isEmpty());
+        verify(repo, never()).findByDedupeKey(anyString());
+    }
+
+    @Test
+    void rememberedContent_isFoundWithinWindow() {
+        Instant now = Instant.now();
+        String key = dedupe.keyFor("a@b.com", "明天8点开会", null, now);
+        dedupe.remember(key);
+
+        Event existing = new Event();
+        existing.setId(7L);
+        when(repo.findByDedupeKey(key)).thenReturn(Optional.of(existing));
+
+        Optional<Event> dup = dedupe.findDuplicate("a@b.com", "明天 8 点开会。", null, now.plusSeconds(5));
+        assertEquals(7L, dup.map(Event::getId).orElse(null), "窗口内同一句话应命中已有事件");
+        assertTrue(dedupe.findDuplicate("c@d.com", "明天8点开会", null, now).isEmpty(), "不同用户不算重复");
+    }
+
+    @Test
+    void idempotencyKey_overridesContentHash() {
+        Instant now = Instant.now();
+        assertNotEquals(dedupe.keyFor("a@b.com", "喝水", "k1", now),
+                dedupe.keyFor("a@b.com", "喝水", "k2", now), "客户端换了幂等键就是新的提交");
+        assertEquals(dedupe.keyFor("a@b.com", "喝水", "k1", now),
+                dedupe.keyFor("a@b.com", "吃饭", "k1", now.plusSeconds(3600)), "同一个幂等键不看内容和时间");
+    }
+}
@@ -0,0 +1,148 @@
+package com.fly.forgotyet.service;
+
+import com.fly.forgotyet.entity.Event;
+import com.fly.forgotyet.enums.EventStatus;
+import com.fly.forgotyet.enums.TriggerBucket;
+import com.fly.forgotyet.repository.EventRepository;
+import lombok.extern.slf4j.Slf4j;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Tag;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.autoconfigure.jdbc.AutoConfigureTestDatabase;
+import org.springframework.boot.test.autoconfigure.orm.jpa.DataJpaTest;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.annotation.Propagation;
+import org.springframework.transaction.annotation.Transactional;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import java.time.Instant;
+import java.time.temporal.ChronoUnit;
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.function.IntConsumer;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * 插入吞吐基准：文件型 H2 上，逐条 save（每条一个事务）vs 写合并批量刷盘
+ * 吞吐用例打了 benchmark 标签，默认 mvn test 不跑（mvn test -Pbenchmark 单独跑），数字只写日志不断言
+ * 其余用例只管正确性：条数、主键唯一、submit 拿得到主键
+ */
+@Slf4j
+@DataJpaTest(properties = {
+        "spring.datasource.url=jdbc:h2:file:./target/h2/insert-bench;DB_CLOSE_DELAY=-1",
+        "spring.jpa.hibernate.ddl-auto=create-drop"
+})
+@AutoConfigureTestDatabase(replace = AutoConfigureTestDatabase.Replace.NONE)
+@Transactional(propagation = Propagation.NOT_SUPPORTED) // 每批真实提交，才测得到落盘开销
+class EventInsertBenchmarkTest {
+
+    private static final int THREADS = 8;
+    private static final int PER_THREAD = 500;
+    private static final int SMOKE_PER_THREAD = 25;
+
+    @Autowired
+    private EventRepository eventRepository;
+
+    @Autowired
+    private PlatformTransactionManager transactionManager;
+
+    private EventWriteBehind writeBehind;
+
+    @BeforeEach
+    void setUp() {
+        eventRepository.deleteAll();
+        writeBehind = new EventWriteBehind(eventRepository, new TransactionTemplate(transactionManager), 50, 10, 10_000);
+        writeBehind.start();
+    }
+
+    @AfterEach
+    void tearDown() throws Exception {
+        writeBehind.stop();
+    }
+
+    @Test
+    @Tag("benchmark")
+    void insertThroughput_singleSaveVsWriteBehind() throws Exception {
+        int total = THREADS * PER_THREAD;
+
+        long singleMs = run(PER_THREAD, i -> eventRepository.save(event(i)));
+        assertEquals(total, eventRepository.count());
+        eventRepository.deleteAll();
+
+        long batchedMs = run(PER_THREAD, i -> writeBehind.save(event(i)));
+        assertEquals(total, eventRepository.count());
+
+        Set<Long> ids = new HashSet<>();
+        eventRepository.findAll().forEach(e -> ids.add(e.getId()));
+        assertEquals(total, ids.size(), "序列分配的主键不应重复");
+
+        double avgBatch = (double) writeBehind.stats().get("avgBatch");
+        assertTrue(avgBatch > 1, "并发写入应当被合并成批，实际平均批大小=" + avgBatch);
+
+        log.info("📊 插入 {} 条（{} 线程）：逐条 save {} ms（{} 条/s），写合并 {} ms（{} 条/s），平均批大小 {}",
+                total, THREADS,
+                singleMs, Math.round(total * 1000.0 / Math.max(1, singleMs)),
+                batchedMs, Math.round(total * 1000.0 / Math.max(1, batchedMs)),
+                String.format("%.1f", avgBatch));
+    }
+
+    @Test
+    void concurrentSave_allRowsPersistedWithUniqueIds() throws Exception {
+        int total = THREADS * SMOKE_PER_THREAD;
+
+        run(SMOKE_PER_THREAD, i -> writeBehind.save(event(i)));
+
+        assertEquals(total, eventRepository.count(), "并发写合并不能丢行");
+        Set<Long> ids = new HashSet<>();
+        eventRepository.findAll().forEach(e -> ids.add(e.getId()));
+        assertEquals(total, ids.size(), "序列分配的主键不应重复");
+    }
+
+    @Test
+    void submit_returnsSavedEntityWithId() {
+        CompletableFuture<Event> f = writeBehind.submit(event(1));
+        Event saved = f.join();
+        assertNotNull(saved.getId());
+        assertTrue(eventRepository.findById(saved.getId()).isPresent());
+    }
+
+    private long run(int perThread, IntConsumer insert) throws Exception {
+        ExecutorService pool = Executors.newFixedThreadPool(THREADS);
+        long start = System.currentTimeMillis();
+        List<Future<?>> futures = new ArrayList<>();
+        for (int t = 0; t < THREADS; t++) {
+            int base = t * perThread;
+            futures.add(pool.submit(() -> {
+                for (int i = 0; i < perThread; i++) {
+                    insert.accept(base + i);
+                }
+            }));
+        }
+        for (Future<?> f : futures) {
+            f.get();
+        }
+        long cost = System.currentTimeMillis() - start;
+        pool.shutdown();
+        return cost;
+    }
+
+    private static Event event(int i) {
+        Event e = new Event();
+        e.setRawInput("提醒我喝水 #" + i);
+        e.setUserEmail("u" + (i % 50) + "@t.com");
+        e.setStatus(EventStatus.SILENT);
+        e.setEventTime(Instant.now().plus(1, ChronoUnit.DAYS));
+        e.setTriggerTime(Instant.now().plus(20, ChronoUnit.HOURS));
+        e.setTriggerBucket(TriggerBucket.H4);
+        return e;
+    }
+}
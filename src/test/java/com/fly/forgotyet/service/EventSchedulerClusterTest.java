@@ -0,0 +1,183 @@
+package com.fly.forgotyet.service;
+
+import com.fly.forgotyet.common.PipelineMetrics;
+import com.fly.forgotyet.common.Tracer;
+import com.fly.forgotyet.config.SchedulerProperties;
+import com.fly.forgotyet.entity.Event;
+import com.fly.forgotyet.enums.EventStatus;
+import com.fly.forgotyet.repository.DeliveryRollupRepository;
+import com.fly.forgotyet.repository.EventRepository;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.autoconfigure.jdbc.AutoConfigureTestDatabase;
+import org.springframework.boot.test.autoconfigure.orm.jpa.DataJpaTest;
+import org.springframework.scheduling.concurrent.ThreadPoolTaskExecutor;
+import org.springframework.scheduling.concurrent.ThreadPoolTaskScheduler;
+import org.springframework.transaction.annotation.Propagation;
+import org.springframework.transaction.annotation.Transactional;
+
+import java.time.Clock;
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+
+import static org.junit.jupiter.api.Assertions.*;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.anyString;
+import static org.mockito.Mockito.*;
+
+/**
+ * 多副本调度：几个进程内的 EventSchedulerService 共享同一个文件型 H2，模拟集群部署
+ */
+@DataJpaTest(properties = {
+        "spring.datasource.url=jdbc:h2:file:./target/h2/scheduler-cluster;DB_CLOSE_DELAY=-1;AUTO_SERVER=TRUE",
+        "spring.jpa.hibernate.ddl-auto=create-drop"
+})
+@AutoConfigureTestDatabase(replace = AutoConfigureTestDatabase.Replace.NONE)
+@Transactional(propagation = Propagation.NOT_SUPPORTED) // 认领是跨线程、跨实例的，必须真实提交
+class EventSchedulerClusterTest {
+
+    @Autowired
+    private EventRepository eventRepository;
+
+    private final List<ThreadPoolTaskScheduler> schedulers = new ArrayList<>();
+    private final List<ThreadPoolTaskExecutor> executors = new ArrayList<>();
+
+    // 谁、给哪个用户发了几封邮件
+    private final Map<String, Map<String, Integer>> sentByNode = new ConcurrentHashMap<>();
+
+    @BeforeEach
+    void setUp() {
+        eventRepository.deleteAll();
+    }
+
+    @AfterEach
+    void tearDown() {
+        schedulers.forEach(ThreadPoolTaskScheduler::shutdown);
+        executors.forEach(ThreadPoolTaskExecutor::shutdown);
+    }
+
+    @Test
+    void replicasSplitWorkload_andDeliverEachEventExactlyOnce() throws Exception {
+        for (int i = 0; i < 30; i++) {
+            silentEvent("u" + i + "@t.com", Instant.now().plusSeconds(3));
+        }
+
+        // 每个节点每轮最多认领 10 个：三个节点依次启动，各分到 10 个
+        List<EventSchedulerService> nodes = new ArrayList<>();
+        for (int i = 0; i < 3; i++) {
+            EventSchedulerService node = newNode("node-" + i, 10, 30);
+            node.recoverSilentTasksOnBoot();
+            nodes.add(node);
+        }
+        for (EventSchedulerService node : nodes) {
+            assertEquals(10, node.scheduledCount(), node.getNodeId() + " 应分到 10 个任务");
+        }
+
+        // 再并发跑几轮认领：已认领的不会被抢
+        List<Thread> threads = new ArrayList<>();
+        for (EventSchedulerService node : nodes) {
+            Thread t = new Thread(node::claimTick);
+            threads.add(t);
+            t.start();
+        }
+        for (Thread t : threads) t.join();
+
+        awaitDelivered(30);
+
+        Map<String, Integer> total = new ConcurrentHashMap<>();
+        sentByNode.values().forEach(m -> m.forEach((k, v) -> total.merge(k, v, Integer::sum)));
+        assertEquals(30, total.size(), "每个事件都应该被送达");
+        total.forEach((user, count) -> assertEquals(1, count, user + " 只能收到一封提醒"));
+        assertEquals(3, sentByNode.size(), "三个节点都应该分担到触发任务");
+    }
+
+    @Test
+    void survivorTakesOverLeasesOfDeadNode() throws Exception {
+        for (int i = 0; i < 5; i++) {
+            silentEvent("v" + i + "@t.com", Instant.now().plusSeconds(5));
+        }
+
+        // A 认领全部后“宕机”：内存任务丢失，但不释放租约
+        EventSchedulerService a = newNode("node-a", 100, 2);
+        a.recoverSilentTasksOnBoot();
+        assertEquals(5, a.scheduledCount());
+        schedulers.get(0).shutdown();
+
+        // B 启动时 A 的租约还有效，不能抢
+        EventSchedulerService b = newNode("node-b", 100, 2);
+        b.recoverSilentTasksOnBoot();
+        assertEquals(0, b.scheduledCount(), "租约未过期，不能接管");
+
+        // 租约过期后，B 的下一轮认领接管全部任务
+        Thread.sleep(2500);
+        assertEquals(5, b.claimTick());
+
+        awaitDelivered(5);
+        assertNull(sentByNode.get("node-a"), "宕机节点不应再发送");
+        assertEquals(5, sentByNode.get("node-b").size());
+    }
+
+    private EventSchedulerService newNode(String nodeId, int batch, int leaseSeconds) {
+        ThreadPoolTaskScheduler taskScheduler = new ThreadPoolTaskScheduler();
+        taskScheduler.setPoolSize(4);
+        taskScheduler.initialize();
+        schedulers.add(taskScheduler);
+        ThreadPoolTaskExecutor triggerExecutor = new ThreadPoolTaskExecutor();
+        triggerExecutor.setCorePoolSize(4);
+        triggerExecutor.initialize();
+        executors.add(triggerExecutor);
+
+        SchedulerProperties props = new SchedulerProperties();
+        props.setNodeId(nodeId);
+        props.setClaimBatchSize(batch);
+        props.setLeaseSeconds(leaseSeconds);
+        props.setSnapshotEnabled(false); // 多个模拟节点共用一个工作目录，不写本地快照
+
+        LlmService llm = mock(LlmService.class);
+        when(llm.generateEmailContent(anyString())).thenReturn("别忘了");
+        when(llm.generateSoother(anyString(), any())).thenReturn("别忘了");
+        SootherCache soother = new SootherCache(llm, eventRepository, 100, 1, 1, 16, 0);
+
+        EmailService email = mock(EmailService.class);
+        doAnswer(inv -> {
+            sentByNode.computeIfAbsent(nodeId, k -> new ConcurrentHashMap<>())
+                    .merge(inv.getArgument(0), 1, Integer::sum);
+            return CompletableFuture.completedFuture(Instant.now());
+        }).when(email).sendReminderEmail(anyString(), anyString(), anyString());
+
+        EventSchedulerService node = new EventSchedulerService(taskScheduler, triggerExecutor, eventRepository, soother, email, props,
+                new ScheduleSnapshot(props), new DeliveryDeadlines(props), PipelineMetrics.noop(),
+                new Tracer(false, 1.0, 1000, 16),
+                new DeliveryAnalytics(mock(DeliveryRollupRepository.class), Clock.systemUTC()));
+        node.init();
+        return node;
+    }
+
+    private void silentEvent(String user, Instant triggerTime) {
+        Event e = new Event();
+        e.setRawInput("提醒我喝水");
+        e.setUserEmail(user);
+        e.setStatus(EventStatus.SILENT);
+        e.setEventTime(triggerTime.plusSeconds(300));
+        e.setTriggerTime(triggerTime);
+        eventRepository.save(e);
+    }
+
+    private void awaitDelivered(int expected) throws InterruptedException {
+        long deadline = System.currentTimeMillis() + 15_000;
+        while (System.currentTimeMillis() < deadline) {
+            long delivered = eventRepository.findAll().stream()
+                    .filter(e -> e.is(EventStatus.DELIVERED))
+                    .count();
+            if (delivered >= expected) return;
+            Thread.sleep(200);
+        }
+        fail("等待送达超时");
+    }
+}
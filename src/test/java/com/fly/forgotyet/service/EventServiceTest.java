@@ -1,7 +1,11 @@
 package com.fly.forgotyet.service;
 
+import com.fly.forgotyet.common.PipelineMetrics;
+import com.fly.forgotyet.common.StageTimer;
+import com.fly.forgotyet.common.Tracer;
 import com.fly.forgotyet.entity.*;
 import com.fly.forgotyet.enums.Complexity;
+import com.fly.forgotyet.enums.EventStatus;
 import com.fly.forgotyet.enums.TriggerBucket;
 import com.fly.forgotyet.enums.TriggerIntent;
 import com.fly.forgotyet.repository.EventRepository;
@@ -20,6 +24,22 @@ import static org.mockito.Mockito.*;
 @ExtendWith(MockitoExtension.class)
 class EventServiceTest {
 
+    /** 写合并层直接透传到 repository.save，断言仍然落在 repository 上 */
+    private static Event intake(String rawInput, String userEmail) {
+        Event e = new Event();
+        e.setRawInput(rawInput);
+        e.setUserEmail(userEmail);
+        e.setStatus(EventStatus.PARSING);
+        return e;
+    }
+
+    private static EventWriteBehind writeBehindOver(EventRepository eventRepository) {
+        EventWriteBehind writeBehind = mock(EventWriteBehind.class);
+        lenient().when(writeBehind.save(any(Event.class)))
+                .thenAnswer(inv -> eventRepository.save(inv.getArgument(0)));
+        return writeBehind;
+    }
+
     @Test
     void createEvent_shouldSaveAndSchedule_withTriggerFields() {
         // mocks
@@ -37,7 +57,9 @@ class EventServiceTest {
 
         // ✅ constructor with clock
         EventService eventService = new EventService(
-                llmService, eventRepository, schedulerService, triggerPlanService, clock
+                llmService, eventRepository, schedulerService, triggerPlanService, clock,
+                mock(EventArchiveService.class), writeBehindOver(eventRepository), new StageTimer(PipelineMetrics.noop()),
+                new Tracer(false, 1.0, 1000, 16), mock(DeliveryAnalytics.class)
         );
 
         String rawInput = "今晚9点提醒我开会";
@@ -75,7 +97,7 @@ class EventServiceTest {
         when(eventRepository.save(any(Event.class))).thenAnswer(inv -> inv.getArgument(0));
 
         // when
-        eventService.createEvent(rawInput, userEmail);
+        eventService.processIntake(intake(rawInput, userEmail));
 
         // then: capture saved event
         ArgumentCaptor<Event> captor = ArgumentCaptor.forClass(Event.class);
@@ -85,22 +107,21 @@ class EventServiceTest {
         assertNotNull(saved);
         assertEquals(rawInput, saved.getRawInput());
         assertEquals(userEmail, saved.getUserEmail());
-        assertEquals("SILENT", saved.getStatus());
+        assertEquals(EventStatus.SILENT, saved.getStatus());
 
-        // eventTime 写入正确（来自 parseResult/normalizer）
-        assertEquals(eventLdt, saved.getEventTime());
+        // eventTime 写入正确（来自 parseResult/normalizer，落库为时间戳）
+        assertEquals(eventInstant, saved.getEventTime());
 
-        // triggerTime 写入正确（来自 plan.triggerTime 转 LocalDateTime）
-        LocalDateTime expectedTriggerLdt = LocalDateTime.ofInstant(plan.getTriggerTime(), zoneId);
-        assertEquals(expectedTriggerLdt, saved.getTriggerTime());
+        // triggerTime 写入正确（直接取 plan.triggerTime）
+        assertEquals(plan.getTriggerTime(), saved.getTriggerTime());
 
-        // 回放字段（你如果没加这些字段，就把对应断言删掉）
-        assertEquals("M15", saved.getTriggerBucket());
-        assertEquals("AT_TIME", saved.getTriggerIntent());
-        assertEquals("MEDIUM", saved.getComplexity());
+        // 回放字段
+        assertEquals(TriggerBucket.M15, saved.getTriggerBucket());
+        assertEquals(TriggerIntent.AT_TIME, saved.getTriggerIntent());
+        assertEquals(Complexity.MEDIUM, saved.getComplexity());
         assertEquals(Boolean.FALSE, saved.getPrepRequired());
-        assertNotNull(saved.getDependenciesJson());
-        assertEquals("test-reason", saved.getTriggerReason());
+        assertEquals(0, saved.getDependencyMask(), "无依赖时掩码应为 0");
+        assertEquals("llm_eventTime_used", saved.getPlanReason().getTimeSource());
 
         // scheduler 被调用
         verify(schedulerService, times(1)).scheduleEvent(any(Event.class));
@@ -123,7 +144,9 @@ class EventServiceTest {
         );
 
         EventService eventService = new EventService(
-                llmService, eventRepository, schedulerService, triggerPlanService, clock
+                llmService, eventRepository, schedulerService, triggerPlanService, clock,
+                mock(EventArchiveService.class), writeBehindOver(eventRepository), new StageTimer(PipelineMetrics.noop()),
+                new Tracer(false, 1.0, 1000, 16), mock(DeliveryAnalytics.class)
         );
 
         String rawInput = "这不是提醒";
@@ -134,11 +157,46 @@ class EventServiceTest {
 
         when(llmService.parseInput(eq(rawInput))).thenReturn(parseResult);
 
-        eventService.createEvent(rawInput, userEmail);
+        eventService.processIntake(intake(rawInput, userEmail));
 
         verify(eventRepository, never()).save(any());
         verify(schedulerService, never()).scheduleEvent(any());
         verify(triggerPlanService, never()).plan(anyString(), any(), any());
     }
-}
 
+    @Test
+    void processIntake_shouldQueueReparse_whenAllProvidersDown() {
+        EventRepository eventRepository = mock(EventRepository.class);
+        LlmService llmService = mock(LlmService.class);
+        EventSchedulerService schedulerService = mock(EventSchedulerService.class);
+        TriggerPlanService triggerPlanService = mock(TriggerPlanService.class);
+
+        ZoneId zoneId = ZoneId.systemDefault();
+        Clock clock = Clock.fixed(
+                LocalDateTime.of(2026, 1, 27, 10, 0, 0).atZone(zoneId).toInstant(),
+                zoneId
+        );
+
+        EventService eventService = new EventService(
+                llmService, eventRepository, schedulerService, triggerPlanService, clock,
+                mock(EventArchiveService.class), writeBehindOver(eventRepository), new StageTimer(PipelineMetrics.noop()),
+                new Tracer(false, 1.0, 1000, 16), mock(DeliveryAnalytics.class)
+        );
+
+        String rawInput = "明天8点提醒我开会";
+        EventParseResult outage = new EventParseResult();
+        outage.setValid(false);
+        outage.setProviderOutage(true);
+        when(llmService.parseInput(eq(rawInput))).thenReturn(outage);
+        when(eventRepository.save(any(Event.class))).thenAnswer(inv -> inv.getArgument(0));
+
+        eventService.processIntake(intake(rawInput, "a@b.com"));
+
+        ArgumentCaptor<Event> captor = ArgumentCaptor.forClass(Event.class);
+        verify(eventRepository, times(1)).save(captor.capture());
+        assertEquals(EventStatus.REPARSE, captor.getValue().getStatus(), "模型故障不能当成输入模糊存成 PENDING");
+        assertEquals(EventService.REPARSE_REASON, captor.getValue().getPlanReason().getTimeSource());
+        verify(triggerPlanService, never()).plan(anyString(), any(), any());
+        verify(schedulerService, never()).scheduleEvent(any());
+    }
+}
@@ -0,0 +1,82 @@
+package com.fly.forgotyet.service;
+
+import com.fly.forgotyet.config.SchedulerProperties;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.nio.file.Path;
+import java.util.Collection;
+import java.util.Map;
+import java.util.stream.Collectors;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class ScheduleSnapshotTest {
+
+    @TempDir
+    Path dir;
+
+    private SchedulerProperties props(int maxBytes) {
+        SchedulerProperties props = new SchedulerProperties();
+        props.setSnapshotPath(dir.resolve("schedule.snap").toString());
+        props.setSnapshotMaxBytes(maxBytes);
+        return props;
+    }
+
+    private static Map<Long, ScheduleSnapshot.Entry> byId(Collection<ScheduleSnapshot.Entry> entries) {
+        return entries.stream().collect(Collectors.toMap(ScheduleSnapshot.Entry::getId, e -> e));
+    }
+
+    @Test
+    void replay_restoresLiveEntriesAfterRestart() {
+        SchedulerProperties props = props(1024 * 1024);
+
+        ScheduleSnapshot first = new ScheduleSnapshot(props);
+        assertTrue(first.load().isEmpty(), "首次启动应为空快照");
+        first.added(1L, 1_000L, 0);
+        first.added(2L, 2_000L, 1);
+        first.added(3L, 3_000L, 2);
+        first.removed(2L);
+        first.close();
+
+        Map<Long, ScheduleSnapshot.Entry> live = byId(new ScheduleSnapshot(props).load());
+        assertEquals(2, live.size(), "被摘除的任务不应回放");
+        assertEquals(1_000L, live.get(1L).getTriggerEpochMillis());
+        assertEquals(2, live.get(3L).getLane());
+    }
+
+    @Test
+    void unflushedCloseStillReplays_becausePageCacheSurvivesProcess() {
+        SchedulerProperties props = props(1024 * 1024);
+
+        ScheduleSnapshot crashed = new ScheduleSnapshot(props);
+        crashed.load();
+        crashed.added(7L, 7_000L, 0);
+        // 不调用 close()：模拟进程直接被杀
+
+        assertTrue(byId(new ScheduleSnapshot(props).load()).containsKey(7L), "进程崩溃后快照仍应可回放");
+    }
+
+    @Test
+    void fullFile_compactsInsteadOfGrowing() {
+        // 最小容量：1024 条记录
+        SchedulerProperties props = props(0);
+        ScheduleSnapshot snapshot = new ScheduleSnapshot(props);
+        snapshot.load();
+
+        // 远超容量的挂载/摘除交替写入，存活集合始终很小
+        for (long i = 0; i < 10_000; i++) {
+            snapshot.added(i, i * 1000, 1);
+            if (i >= 10) {
+                snapshot.removed(i - 10);
+            }
+        }
+        assertTrue(snapshot.isEnabled(), "压缩后应继续可用");
+        assertEquals(10, snapshot.liveCount());
+        snapshot.close();
+
+        Map<Long, ScheduleSnapshot.Entry> live = byId(new ScheduleSnapshot(props).load());
+        assertEquals(10, live.size());
+        assertTrue(live.containsKey(9_999L));
+    }
+}
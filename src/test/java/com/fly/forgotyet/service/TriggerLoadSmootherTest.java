@@ -0,0 +1,63 @@
+package com.fly.forgotyet.service;
+
+import com.fly.forgotyet.entity.TriggerPlan;
+import com.fly.forgotyet.enums.TriggerBucket;
+import com.fly.forgotyet.enums.TriggerIntent;
+import com.fly.forgotyet.repository.EventRepository;
+import org.junit.jupiter.api.Test;
+
+import java.time.Duration;
+import java.time.Instant;
+
+import static org.junit.jupiter.api.Assertions.*;
+import static org.mockito.Mockito.mock;
+
+class TriggerLoadSmootherTest {
+
+    private final Instant now = Instant.parse("2026-01-27T20:00:00Z");
+    private final Instant eventTime = Instant.parse("2026-01-29T09:00:00Z");
+    private final Instant trigger = eventTime.minus(Duration.ofDays(1));
+
+    private final TriggerLoadSmoother smoother =
+            new TriggerLoadSmoother(mock(EventRepository.class), true, 30, 0.1, 30, 31);
+
+    @Test
+    void crowdedMinute_flexibleTriggerMovesEarlierWithinTolerance() {
+        for (int i = 0; i < 40; i++) {
+            smoother.record(trigger);
+        }
+        TriggerPlan plan = plan(TriggerIntent.CUSHION);
+        smoother.smooth(plan, now);
+
+        Instant t = plan.getTriggerTime();
+        assertTrue(t.isBefore(trigger), "拥挤的整点应往前错开");
+        assertFalse(t.isBefore(trigger.minus(Duration.ofMinutes(30))), "D1 最多提前 30 分钟");
+        assertTrue(t.isBefore(eventTime) && t.isAfter(now), "不能破坏 now < triggerTime < eventTime");
+    }
+
+    @Test
+    void atTimeOrQuietMinute_keepsOriginalTrigger() {
+        for (int i = 0; i < 40; i++) {
+            smoother.record(trigger);
+        }
+        TriggerPlan atTime = plan(TriggerIntent.AT_TIME);
+        smoother.smooth(atTime, now);
+        assertEquals(trigger, atTime.getTriggerTime(), "AT_TIME 是用户指定的点，不挪");
+
+        Instant quiet = trigger.plus(Duration.ofHours(2));
+        TriggerPlan plan = plan(TriggerIntent.CUSHION);
+        plan.setTriggerTime(quiet);
+        smoother.smooth(plan, now);
+        assertEquals(quiet, plan.getTriggerTime(), "没过阈值的分钟不动");
+    }
+
+    private TriggerPlan plan(TriggerIntent intent) {
+        TriggerPlan p = new TriggerPlan();
+        p.setIntent(intent);
+        p.setBucket(TriggerBucket.D1);
+        p.setEventTime(eventTime);
+        p.setTriggerTime(trigger);
+        p.setReason("test");
+        return p;
+    }
+}
@@ -26,7 +26,9 @@ class TriggerPlanServiceTest {
 
     private TriggerPlanService newService() {
         UserBiasService userBiasService = mock(UserBiasService.class);
-        return new TriggerPlanService(FIXED_CLOCK,userBiasService);
+        // 削峰关掉：这里只验证提前量策略本身
+        TriggerLoadSmoother smoother = new TriggerLoadSmoother(mock(EventRepository.class), false, 30, 0.1, 30, 31);
+        return new TriggerPlanService(FIXED_CLOCK,userBiasService, smoother);
     }
 
     private static EventParseResult baseParseResult() {
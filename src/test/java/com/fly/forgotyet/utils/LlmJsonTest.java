@@ -0,0 +1,52 @@
+package com.fly.forgotyet.utils;
+
+import com.fly.forgotyet.entity.EventParseResult;
+import com.fly.forgotyet.enums.Complexity;
+import com.fly.forgotyet.enums.TriggerIntent;
+import org.junit.jupiter.api.Test;
+
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+public class LlmJsonTest {
+
+    @Test
+    void validJson_isNotCountedAsRepair() {
+        LlmJson.Result<EventParseResult> r = LlmJson.parse(
+                "{\"valid\":true,\"eventTime\":\"2026-01-28T08:00:00\",\"intent\":\"AT_TIME\"}", EventParseResult.class);
+        assertFalse(r.isRepaired());
+        assertEquals(TriggerIntent.AT_TIME, r.getValue().getIntent());
+    }
+
+    @Test
+    void proseFenceTrailingCommaAndEnumCase_areRepairedLocally() {
+        String content = "好的，结果如下：\n```\n{\"valid\":true,\"eventTime\":\"2026-01-28T08:00:00\","
+                + "\"intent\":\"at_time\",\"complexity\":\"low\",}\n```\n希望有帮助";
+        LlmJson.Result<EventParseResult> r = LlmJson.parse(content, EventParseResult.class);
+
+        assertTrue(r.isRepaired());
+        assertTrue(r.getValue().isValid());
+        assertEquals(TriggerIntent.AT_TIME, r.getValue().getIntent(), "枚举大小写要纠正");
+        assertEquals(Complexity.LOW, r.getValue().getComplexity());
+    }
+
+    @Test
+    void looseTypesAndTruncation_areCoerced() {
+        EventParseResult v = LlmJson.parse(
+                "{'valid': 'true', event_time: '2026-01-28T08:00:00', 'dependencies': '车票、身份证', intent: 'whatever'}",
+                EventParseResult.class).getValue();
+        assertTrue(v.isValid());
+        assertEquals("2026-01-28T08:00:00", v.getEventTime(), "下划线 key 也要认");
+        assertEquals(List.of("车票", "身份证"), v.getDependencies());
+        assertNull(v.getIntent(), "认不出的枚举置空，交给默认值");
+
+        EventParseResult cut = LlmJson.parse("{\"valid\":true,\"dependencies\":[\"a\",\"b", EventParseResult.class).getValue();
+        assertEquals(List.of("a", "b"), cut.getDependencies(), "被截断的输出补齐后仍可用");
+    }
+
+    @Test
+    void noJsonAtAll_throwsForFailover() {
+        assertThrows(IllegalArgumentException.class, () -> LlmJson.parse("抱歉，我无法理解", EventParseResult.class));
+    }
+}
@@ -0,0 +1,24 @@
+package com.fly.forgotyet.utils;
+
+import org.junit.jupiter.api.Test;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+public class ReminderTextTest {
+
+    @Test
+    void normalize_ignoresPunctuationSpacesAndWidth() {
+        assertEquals(ReminderText.normalize("明天8点开会"),
+                ReminderText.normalize("明天 ８ 点，开会！"), "全角/标点/空白不应影响去重");
+    }
+
+    @Test
+    void core_stripsTimeAndFiller() {
+        assertEquals("喝水", ReminderText.core("明天8点提醒我喝水"));
+        assertEquals("喝水", ReminderText.core("下午三点记得喝水！"));
+        assertEquals("吃药", ReminderText.core("提醒我 14:30 吃药"));
+        assertEquals("关火", ReminderText.core("10分钟后提醒我关火"));
+        assertEquals("开会", ReminderText.core("下周一上午九点半开会"));
+        assertEquals("给妈妈打电话", ReminderText.core("今晚记得给妈妈打电话"), "事项本身的内容要保留");
+    }
+}